@@ -0,0 +1,109 @@
+package cm.aptoide.com.nostra13.universalimageloader.benchmark;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.EvictionListener;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.EvictionPolicy;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.policy.FIFOEvictionPolicy;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.policy.LFUEvictionPolicy;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.policy.LRUEvictionPolicy;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.policy.LargestEvictionPolicy;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.policy.UsingFreqEvictionPolicy;
+
+/**
+ * Eviction policies of limited memory caches. Every policy creates {@link LimitedMemoryCache} of {@link Payload
+ * payloads} which works exactly like corresponding bitmap cache (i.e. LRU - like
+ * {@link cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl.LRULimitedMemoryCache LRULimitedMemoryCache}).
+ */
+enum CachePolicy {
+
+	LRU {
+		@Override
+		LimitedMemoryCache<String, Payload> newCache(int sizeLimit) {
+			return new PayloadCache(sizeLimit) {
+				@Override
+				protected EvictionPolicy<String, Payload> createEvictionPolicy() {
+					return new LRUEvictionPolicy<String, Payload>();
+				}
+			};
+		}
+	},
+	LFU {
+		@Override
+		LimitedMemoryCache<String, Payload> newCache(int sizeLimit) {
+			return new PayloadCache(sizeLimit) {
+				@Override
+				protected EvictionPolicy<String, Payload> createEvictionPolicy() {
+					return new LFUEvictionPolicy<String, Payload>();
+				}
+			};
+		}
+	},
+	USING_FREQ {
+		@Override
+		LimitedMemoryCache<String, Payload> newCache(int sizeLimit) {
+			return new PayloadCache(sizeLimit) {
+				@Override
+				protected EvictionPolicy<String, Payload> createEvictionPolicy() {
+					return new UsingFreqEvictionPolicy<String, Payload>();
+				}
+			};
+		}
+	},
+	FIFO {
+		@Override
+		LimitedMemoryCache<String, Payload> newCache(int sizeLimit) {
+			return new PayloadCache(sizeLimit) {
+				@Override
+				protected EvictionPolicy<String, Payload> createEvictionPolicy() {
+					return new FIFOEvictionPolicy<String, Payload>();
+				}
+			};
+		}
+	},
+	LARGEST {
+		@Override
+		LimitedMemoryCache<String, Payload> newCache(int sizeLimit) {
+			return new PayloadCache(sizeLimit) {
+				@Override
+				protected EvictionPolicy<String, Payload> createEvictionPolicy() {
+					return new LargestEvictionPolicy<String, Payload>(Payload.SIZER);
+				}
+			};
+		}
+	};
+
+	/** Evicted payloads are taken by listener, so cache doesn't return them (like bitmaps taken by BitmapPool) */
+	private static final EvictionListener<String, Payload> DROP_EVICTED = new EvictionListener<String, Payload>() {
+		@Override
+		public boolean onEvicted(String key, Payload value) {
+			return true;
+		}
+	};
+
+	/**
+	 * Creates cache which returns only values which weren't evicted (benchmark keeps all payloads reachable, so weak
+	 * references of evicted values wouldn't be cleared)
+	 */
+	LimitedMemoryCache<String, Payload> create(int sizeLimit) {
+		LimitedMemoryCache<String, Payload> cache = newCache(sizeLimit);
+		cache.setEvictionListener(DROP_EVICTED);
+		return cache;
+	}
+
+	abstract LimitedMemoryCache<String, Payload> newCache(int sizeLimit);
+
+	private abstract static class PayloadCache extends LimitedMemoryCache<String, Payload> {
+
+		PayloadCache(int sizeLimit) {
+			super(sizeLimit, Payload.SIZER);
+		}
+
+		@Override
+		protected Reference<Payload> createReference(Payload value) {
+			return new WeakReference<Payload>(value);
+		}
+	}
+}
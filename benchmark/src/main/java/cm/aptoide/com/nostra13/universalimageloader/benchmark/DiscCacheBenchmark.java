@@ -0,0 +1,120 @@
+package cm.aptoide.com.nostra13.universalimageloader.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.disc.impl.TotalSizeLimitedDiscCache;
+
+/**
+ * Cost of disc cache operations on real file system (in temporary directory): saving of downloaded image, saving
+ * together with eviction of the oldest images and lookup of cached image.<br />
+ * Cache is trimmed in background thread, so {@link #save()} measures only writing and registering of file.
+ * {@link #saveAndTrim()} also trims cache in benchmark thread (or waits for background trimming), so eviction cost is
+ * amortized over saves.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiscCacheBenchmark {
+
+	private static final int CACHE_SIZE = 16 * 1024 * 1024;
+	private static final int FILE_SIZE = 16 * 1024;
+	/** Number of different images. Their summary size is twice as cache size, so saving leads to trimming. */
+	private static final int IMAGE_COUNT = 2 * CACHE_SIZE / FILE_SIZE;
+
+	@Param({ "HASH_CODE", "MD5", "SHARDED_MD5" })
+	FileNaming naming;
+
+	private File cacheDir;
+	private TotalSizeLimitedDiscCache discCache;
+	private String[] uris;
+	private byte[] image;
+	private int savePosition;
+	private int lookupPosition;
+	private int containsPosition;
+
+	@Setup(Level.Trial)
+	public void createCache() throws IOException {
+		cacheDir = File.createTempFile("uil-disc-cache", "");
+		if (!cacheDir.delete() || !cacheDir.mkdir()) throw new IOException("Can't create " + cacheDir);
+
+		discCache = new TotalSizeLimitedDiscCache(cacheDir, naming.create(), CACHE_SIZE);
+		uris = new String[IMAGE_COUNT];
+		for (int i = 0; i < IMAGE_COUNT; i++) {
+			uris[i] = "http://cdn.example.com/icons/" + i + ".png";
+		}
+		image = new byte[FILE_SIZE];
+		new Random(13).nextBytes(image);
+		// Cache is filled by the first half of images
+		for (int i = 0; i < IMAGE_COUNT / 2; i++) {
+			saveImage(uris[i]);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteCache() {
+		discCache.clear();
+		cacheDir.delete();
+	}
+
+	@Benchmark
+	public File save() throws IOException {
+		String uri = uris[savePosition];
+		savePosition = (savePosition + 1) % IMAGE_COUNT;
+		return saveImage(uri);
+	}
+
+	@Benchmark
+	public File saveAndTrim() throws IOException {
+		File file = save();
+		discCache.trim();
+		return file;
+	}
+
+	@Benchmark
+	public boolean lookup() {
+		String uri = uris[lookupPosition];
+		lookupPosition = (lookupPosition + 1) % IMAGE_COUNT;
+		return discCache.get(uri).exists();
+	}
+
+	@Benchmark
+	public boolean contains() {
+		String uri = uris[containsPosition];
+		containsPosition = (containsPosition + 1) % IMAGE_COUNT;
+		return discCache.contains(uri);
+	}
+
+	private File saveImage(String uri) throws IOException {
+		File file = discCache.get(uri);
+		OutputStream os = new FileOutputStream(file);
+		try {
+			os.write(image);
+		} finally {
+			os.close();
+		}
+		discCache.put(uri, file);
+		return file;
+	}
+}
@@ -0,0 +1,52 @@
+package cm.aptoide.com.nostra13.universalimageloader.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
+
+/** Cost of generating of cached file name by image URI */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileNameGeneratorBenchmark {
+
+	private static final int URI_COUNT = 1024;
+
+	@Param({ "HASH_CODE", "MD5", "SHARDED_MD5" })
+	FileNaming naming;
+
+	private FileNameGenerator generator;
+	private String[] uris;
+	private int position;
+
+	@Setup
+	public void createGenerator() {
+		generator = naming.create();
+		uris = new String[URI_COUNT];
+		for (int i = 0; i < URI_COUNT; i++) {
+			uris[i] = "http://cdn.example.com/icons/" + i + ".png";
+		}
+	}
+
+	@Benchmark
+	public String generate() {
+		String uri = uris[position];
+		position = (position + 1) % URI_COUNT;
+		return generator.generate(uri);
+	}
+}
@@ -0,0 +1,31 @@
+package cm.aptoide.com.nostra13.universalimageloader.benchmark;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
+import cm.aptoide.com.nostra13.universalimageloader.cache.disc.naming.HashCodeFileNameGenerator;
+import cm.aptoide.com.nostra13.universalimageloader.cache.disc.naming.Md5FileNameGenerator;
+import cm.aptoide.com.nostra13.universalimageloader.cache.disc.naming.ShardedFileNameGenerator;
+
+/** File name generators of disc cache */
+enum FileNaming {
+
+	HASH_CODE {
+		@Override
+		FileNameGenerator create() {
+			return new HashCodeFileNameGenerator();
+		}
+	},
+	MD5 {
+		@Override
+		FileNameGenerator create() {
+			return new Md5FileNameGenerator();
+		}
+	},
+	SHARDED_MD5 {
+		@Override
+		FileNameGenerator create() {
+			return new ShardedFileNameGenerator(new Md5FileNameGenerator());
+		}
+	};
+
+	abstract FileNameGenerator create();
+}
@@ -0,0 +1,80 @@
+package cm.aptoide.com.nostra13.universalimageloader.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
+
+/**
+ * Hit ratio of eviction policies on the same request traces (i.e. LFU vs. "using frequency" policies on trace with
+ * scans). Every invocation replays the whole trace on empty cache; numbers of hits and misses are reported as
+ * secondary results <i>hits</i> and <i>misses</i>. Traces are deterministic, so counts don't depend on run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HitRatioBenchmark {
+
+	private static final int TRACE_LENGTH = 200000;
+	private static final int POPULAR_IMAGE_COUNT = 5000;
+
+	@Param({ "LRU", "LFU", "USING_FREQ", "FIFO", "LARGEST" })
+	CachePolicy policy;
+
+	@Param({ "ZIPFIAN", "SCAN" })
+	Trace.Type traceType;
+
+	@Param({ "2097152", "8388608" })
+	int cacheSize;
+
+	private Trace trace;
+
+	@Setup(Level.Trial)
+	public void recordTrace() {
+		trace = Trace.record(traceType, TRACE_LENGTH, POPULAR_IMAGE_COUNT);
+	}
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Counters {
+		public long hits;
+		public long misses;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			hits = 0;
+			misses = 0;
+		}
+	}
+
+	@Benchmark
+	public LimitedMemoryCache<String, Payload> replayTrace(Counters counters) {
+		LimitedMemoryCache<String, Payload> cache = policy.create(cacheSize);
+		for (int id : trace.requests) {
+			String key = trace.keys[id];
+			if (cache.get(key) != null) {
+				counters.hits++;
+			} else {
+				counters.misses++;
+				cache.put(key, trace.payloads[id]);
+			}
+		}
+		return cache;
+	}
+}
@@ -0,0 +1,104 @@
+package cm.aptoide.com.nostra13.universalimageloader.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
+
+/**
+ * Single-threaded cost of memory cache operations for every eviction policy: getting of cached image, putting of new
+ * image (with eviction of old ones) and replaying of request trace (get, put on miss).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryCacheBenchmark {
+
+	private static final int CACHE_SIZE = 4 * 1024 * 1024;
+	private static final int TRACE_LENGTH = 100000;
+	private static final int POPULAR_IMAGE_COUNT = 5000;
+
+	@Param({ "LRU", "LFU", "USING_FREQ", "FIFO", "LARGEST" })
+	CachePolicy policy;
+
+	@Param({ "ZIPFIAN", "SCAN" })
+	Trace.Type traceType;
+
+	private Trace trace;
+	private LimitedMemoryCache<String, Payload> cache;
+	/** Keys of images which are in cache at start of iteration */
+	private String[] cachedKeys;
+	private int hitPosition;
+	private int putPosition;
+	private int tracePosition;
+
+	@Setup(Level.Trial)
+	public void recordTrace() {
+		trace = Trace.record(traceType, TRACE_LENGTH, POPULAR_IMAGE_COUNT);
+	}
+
+	@Setup(Level.Iteration)
+	public void fillCache() {
+		cache = policy.create(CACHE_SIZE);
+		for (int id : trace.requests) {
+			if (cache.get(trace.keys[id]) == null) {
+				cache.put(trace.keys[id], trace.payloads[id]);
+			}
+		}
+		int cachedCount = 0;
+		String[] keys = new String[trace.keys.length];
+		for (String key : trace.keys) {
+			if (cache.get(key) != null) {
+				keys[cachedCount++] = key;
+			}
+		}
+		cachedKeys = new String[cachedCount];
+		System.arraycopy(keys, 0, cachedKeys, 0, cachedCount);
+		hitPosition = 0;
+		putPosition = 0;
+		tracePosition = 0;
+	}
+
+	@Benchmark
+	public Payload getHit() {
+		String key = cachedKeys[hitPosition];
+		hitPosition = (hitPosition + 1) % cachedKeys.length;
+		return cache.get(key);
+	}
+
+	@Benchmark
+	public boolean putWithEviction() {
+		// Keys go in circle, so every put evicts something when cache is full
+		int id = putPosition;
+		putPosition = (putPosition + 1) % trace.keys.length;
+		return cache.put(trace.keys[id], trace.payloads[id]);
+	}
+
+	@Benchmark
+	public Payload replayTrace() {
+		int id = trace.requests[tracePosition];
+		tracePosition = (tracePosition + 1) % trace.requests.length;
+		String key = trace.keys[id];
+		Payload payload = cache.get(key);
+		if (payload == null) {
+			payload = trace.payloads[id];
+			cache.put(key, payload);
+		}
+		return payload;
+	}
+}
@@ -0,0 +1,76 @@
+package cm.aptoide.com.nostra13.universalimageloader.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
+
+/**
+ * Latency of getting of cached image by one thread (UI thread, which must not be blocked) while loading threads put
+ * decoded images into the same cache. Look at percentiles of <i>uiGet</i> result.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemoryCacheContentionBenchmark {
+
+	private static final int CACHE_SIZE = 4 * 1024 * 1024;
+	private static final int TRACE_LENGTH = 100000;
+	private static final int POPULAR_IMAGE_COUNT = 5000;
+	/** Number of images which UI thread gets (they're never evicted because they are requested constantly) */
+	private static final int VISIBLE_IMAGE_COUNT = 20;
+
+	@Param({ "LRU", "LFU", "USING_FREQ", "FIFO", "LARGEST" })
+	CachePolicy policy;
+
+	private Trace trace;
+	private LimitedMemoryCache<String, Payload> cache;
+
+	@Setup
+	public void createCache() {
+		trace = Trace.record(Trace.Type.ZIPFIAN, TRACE_LENGTH, POPULAR_IMAGE_COUNT);
+		cache = policy.create(CACHE_SIZE);
+		for (int id = 0; id < VISIBLE_IMAGE_COUNT; id++) {
+			cache.put(trace.keys[id], trace.payloads[id]);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int position;
+	}
+
+	@Benchmark
+	@Group("contention")
+	@GroupThreads(1)
+	public Payload uiGet(Cursor cursor) {
+		int id = cursor.position;
+		cursor.position = (cursor.position + 1) % VISIBLE_IMAGE_COUNT;
+		return cache.get(trace.keys[id]);
+	}
+
+	@Benchmark
+	@Group("contention")
+	@GroupThreads(8)
+	public boolean loaderPut(Cursor cursor) {
+		int id = trace.requests[cursor.position];
+		cursor.position = (cursor.position + 1) % trace.requests.length;
+		return cache.put(trace.keys[id], trace.payloads[id]);
+	}
+}
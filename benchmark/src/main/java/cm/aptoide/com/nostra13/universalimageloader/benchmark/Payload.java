@@ -0,0 +1,20 @@
+package cm.aptoide.com.nostra13.universalimageloader.benchmark;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.ValueSizer;
+
+/** Stand-in for decoded bitmap: cached value which only declares its size */
+final class Payload {
+
+	static final ValueSizer<Payload> SIZER = new ValueSizer<Payload>() {
+		@Override
+		public int getSize(Payload value) {
+			return value.size;
+		}
+	};
+
+	final int size;
+
+	Payload(int size) {
+		this.size = size;
+	}
+}
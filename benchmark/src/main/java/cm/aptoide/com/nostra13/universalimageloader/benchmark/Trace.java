@@ -0,0 +1,94 @@
+package cm.aptoide.com.nostra13.universalimageloader.benchmark;
+
+import java.util.Random;
+
+/**
+ * Recorded sequence of image requests. Traces are generated by fixed seed, so every run replays the same requests.
+ * Keys look like memory cache keys of catalogue icons, sizes of payloads are spread from 8 to 64 Kb.
+ */
+final class Trace {
+
+	/** Type of request sequence */
+	enum Type {
+		/** Popularity of images follows Zipf distribution (exponent 0.99) */
+		ZIPFIAN,
+		/**
+		 * Zipfian requests interrupted by scans: every 4th block of 1000 requests goes through images which are
+		 * requested only once (like fast scrolling through long catalogue)
+		 */
+		SCAN
+	}
+
+	private static final long SEED = 13;
+	private static final double ZIPF_EXPONENT = 0.99;
+	private static final int SCAN_BLOCK_LENGTH = 1000;
+	private static final int MIN_PAYLOAD_SIZE = 8 * 1024;
+	private static final int MAX_PAYLOAD_SIZE = 64 * 1024;
+
+	/** Image IDs in order of requesting */
+	final int[] requests;
+	/** Keys by image ID */
+	final String[] keys;
+	/** Payloads by image ID */
+	final Payload[] payloads;
+
+	private Trace(int[] requests, int imageCount) {
+		this.requests = requests;
+		keys = new String[imageCount];
+		payloads = new Payload[imageCount];
+		Random random = new Random(SEED);
+		for (int id = 0; id < imageCount; id++) {
+			keys[id] = "http://cdn.example.com/icons/" + id + ".png_96x96";
+			payloads[id] = new Payload(MIN_PAYLOAD_SIZE + random.nextInt(MAX_PAYLOAD_SIZE - MIN_PAYLOAD_SIZE));
+		}
+	}
+
+	/**
+	 * @param type Type of trace
+	 * @param length Number of requests
+	 * @param popularImageCount Number of images which are requested repeatedly
+	 */
+	static Trace record(Type type, int length, int popularImageCount) {
+		Random random = new Random(SEED);
+		double[] zipfDistribution = createZipfDistribution(popularImageCount);
+		int[] requests = new int[length];
+		int nextScannedId = popularImageCount;
+		for (int i = 0; i < length; i++) {
+			if (type == Type.SCAN && (i / SCAN_BLOCK_LENGTH) % 4 == 3) {
+				requests[i] = nextScannedId++;
+			} else {
+				requests[i] = sample(zipfDistribution, random);
+			}
+		}
+		return new Trace(requests, nextScannedId);
+	}
+
+	/** Returns cumulative distribution of Zipf law */
+	private static double[] createZipfDistribution(int count) {
+		double[] distribution = new double[count];
+		double sum = 0;
+		for (int rank = 1; rank <= count; rank++) {
+			sum += 1 / Math.pow(rank, ZIPF_EXPONENT);
+			distribution[rank - 1] = sum;
+		}
+		for (int i = 0; i < count; i++) {
+			distribution[i] /= sum;
+		}
+		return distribution;
+	}
+
+	private static int sample(double[] distribution, Random random) {
+		double value = random.nextDouble();
+		int low = 0;
+		int high = distribution.length - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (distribution[middle] < value) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,418 @@
+package cm.aptoide.com.nostra13.universalimageloader.core.download;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.PartialFile;
+
+/**
+ * Tests of resumed downloading and revalidation of all HTTP downloaders against local stub server. Image is saved the
+ * same way as loading task saves it: into {@link PartialFile} which is committed only when the whole image is received.
+ */
+public class ImageDownloaderTest {
+
+	private static final int IMAGE_SIZE = 200 * 1024;
+	private static final int DROP_AFTER = 70 * 1024;
+	private static final String ETAG = "\"v1\"";
+	private static final String MAX_AGE = "max-age=600";
+
+	private StubServer server;
+	private URI imageUri;
+	private File cacheDir;
+	private File imageFile;
+	private byte[] image;
+
+	@Before
+	public void setUp() throws IOException {
+		image = createImage(IMAGE_SIZE, 1);
+		server = new StubServer(image, ETAG);
+		imageUri = URI.create("http://127.0.0.1:" + server.getPort() + "/screenshot.png");
+
+		cacheDir = File.createTempFile("uil-downloader", "");
+		cacheDir.delete();
+		cacheDir.mkdirs();
+		imageFile = new File(cacheDir, "screenshot");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.stop();
+		File[] files = cacheDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		cacheDir.delete();
+	}
+
+	@Test
+	public void interruptedDownloadingIsResumedByRangeRequest() throws IOException {
+		// Buffering downloader receives the whole entity or nothing, so only streaming downloaders are checked
+		ImageDownloader[] downloaders = { new URLConnectionImageDownloader(), new StreamingHttpClientImageDownloader(2) };
+		for (ImageDownloader downloader : downloaders) {
+			reset();
+			server.dropNextResponseAfter(DROP_AFTER);
+
+			assertFalse(download(downloader));
+			assertFalse(imageFile.exists());
+			long downloaded = new PartialFile(imageFile).getLength();
+			assertTrue("Partial content isn't kept: " + downloader, downloaded > 0 && downloaded <= DROP_AFTER);
+
+			assertTrue(download(downloader));
+			assertEquals(206, server.getLastStatus());
+			assertEquals("bytes=" + downloaded + "-", server.getLastRange());
+			assertArrayEquals(image, readFile(imageFile));
+			shutdown(downloader);
+		}
+	}
+
+	@Test
+	public void partialContentIsResumedFromOffset() throws IOException {
+		for (ImageDownloader downloader : createDownloaders()) {
+			reset();
+			writePartialFile(copyOf(image, DROP_AFTER), ETAG);
+
+			assertTrue(download(downloader));
+			assertEquals(206, server.getLastStatus());
+			assertEquals("bytes=" + DROP_AFTER + "-", server.getLastRange());
+			assertArrayEquals(image, readFile(imageFile));
+			shutdown(downloader);
+		}
+	}
+
+	@Test
+	public void modifiedImageIsDownloadedFromBeginning() throws IOException {
+		for (ImageDownloader downloader : createDownloaders()) {
+			reset();
+			// Partial content of previous version of image
+			writePartialFile(copyOf(createImage(IMAGE_SIZE, 2), DROP_AFTER), "\"v0\"");
+
+			assertTrue(download(downloader));
+			assertEquals(200, server.getLastStatus());
+			assertArrayEquals(image, readFile(imageFile));
+			shutdown(downloader);
+		}
+	}
+
+	@Test
+	public void stalePartialContentIsReplacedAfterUnsatisfiableRange() throws IOException {
+		for (ImageDownloader downloader : createDownloaders()) {
+			reset();
+			// Image was shortened but its ETag wasn't changed, so partial content is longer than image
+			byte[] stale = createImage(IMAGE_SIZE + 1024, 3);
+			writePartialFile(stale, ETAG);
+
+			assertTrue(download(downloader));
+			List<Integer> statuses = server.getStatuses();
+			assertEquals(2, statuses.size());
+			assertEquals(416, statuses.get(0).intValue());
+			assertEquals(200, statuses.get(1).intValue());
+			assertArrayEquals(image, readFile(imageFile));
+			shutdown(downloader);
+		}
+	}
+
+	@Test
+	public void notModifiedImageIsRevalidated() throws IOException {
+		for (ImageDownloader downloader : createDownloaders()) {
+			reset();
+			CacheValidators validators = new CacheValidators();
+			InputStream imageStream = downloader.getStreamIfModified(imageUri, validators);
+			assertNotNull(imageStream);
+			assertArrayEquals(image, readStream(imageStream));
+			assertEquals(ETAG, validators.getETag());
+			assertEquals(600, validators.getMaxAge());
+
+			assertNull(downloader.getStreamIfModified(imageUri, validators));
+			assertEquals(304, server.getLastStatus());
+			assertEquals(ETAG, server.getLastIfNoneMatch());
+			assertEquals(ETAG, validators.getETag());
+			shutdown(downloader);
+		}
+	}
+
+	@Test
+	public void modifiedImageIsDownloadedOnRevalidation() throws IOException {
+		for (ImageDownloader downloader : createDownloaders()) {
+			reset();
+			CacheValidators validators = new CacheValidators("\"v0\"", null, 600);
+			InputStream imageStream = downloader.getStreamIfModified(imageUri, validators);
+			assertNotNull(imageStream);
+			assertArrayEquals(image, readStream(imageStream));
+			assertEquals(200, server.getLastStatus());
+			assertEquals("\"v0\"", server.getLastIfNoneMatch());
+			assertEquals(ETAG, validators.getETag());
+			shutdown(downloader);
+		}
+	}
+
+	private ImageDownloader[] createDownloaders() {
+		return new ImageDownloader[] { new URLConnectionImageDownloader(), new StreamingHttpClientImageDownloader(2),
+				new HttpClientImageDownloader(new DefaultHttpClient()) };
+	}
+
+	private void reset() {
+		new PartialFile(imageFile).discard();
+		imageFile.delete();
+		server.clearLog();
+	}
+
+	/**
+	 * Downloads image into partial file (resuming previous downloading if it's possible) and commits it. Incomplete
+	 * content is kept for resuming.
+	 *
+	 * @return <b>true</b> - if the whole image was saved in image file
+	 */
+	private boolean download(ImageDownloader downloader) throws IOException {
+		PartialFile partialFile = new PartialFile(imageFile);
+		CacheValidators validators = partialFile.getValidators();
+		ContentRange range = new ContentRange(partialFile.getLength());
+		InputStream imageStream = downloader.getStreamFromOffset(imageUri, range, validators);
+
+		long received = 0;
+		try {
+			OutputStream os = partialFile.openForWriting(range, validators);
+			try {
+				byte[] buffer = new byte[8 * 1024];
+				int count;
+				while ((count = imageStream.read(buffer)) != -1) {
+					os.write(buffer, 0, count);
+					received += count;
+				}
+			} finally {
+				os.close();
+			}
+		} catch (IOException e) {
+			// Connection was dropped
+			partialFile.keepForResuming();
+			return false;
+		} finally {
+			imageStream.close();
+		}
+		if (range.getOffset() + received != range.getTotalLength()) {
+			// Connection was closed before the end of image
+			partialFile.keepForResuming();
+			return false;
+		}
+		return partialFile.commit();
+	}
+
+	private void writePartialFile(byte[] content, String eTag) throws IOException {
+		PartialFile partialFile = new PartialFile(imageFile);
+		OutputStream os = partialFile.openForWriting(new ContentRange(0), new CacheValidators(eTag, null, -1));
+		try {
+			os.write(content);
+		} finally {
+			os.close();
+		}
+		partialFile.keepForResuming();
+	}
+
+	private static void shutdown(ImageDownloader downloader) {
+		if (downloader instanceof StreamingHttpClientImageDownloader) {
+			((StreamingHttpClientImageDownloader) downloader).shutdown();
+		}
+	}
+
+	private static byte[] createImage(int size, long seed) {
+		byte[] content = new byte[size];
+		new Random(seed).nextBytes(content);
+		return content;
+	}
+
+	private static byte[] copyOf(byte[] content, int length) {
+		byte[] copy = new byte[length];
+		System.arraycopy(content, 0, copy, 0, length);
+		return copy;
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		return readStream(new FileInputStream(file));
+	}
+
+	private static byte[] readStream(InputStream is) throws IOException {
+		try {
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8 * 1024];
+			int count;
+			while ((count = is.read(buffer)) != -1) {
+				content.write(buffer, 0, count);
+			}
+			return content.toByteArray();
+		} finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * HTTP server which serves one image by any URI. It answers conditional requests by <b>304</b>, range requests by
+	 * <b>206</b> (or by <b>416</b> if range starts beyond the end of image) and can drop connection in the middle of
+	 * response body. Every connection is closed after response.
+	 */
+	private static class StubServer implements Runnable {
+
+		private final ServerSocket serverSocket;
+		private final byte[] content;
+		private final String eTag;
+
+		private final List<Integer> statuses = Collections.synchronizedList(new ArrayList<Integer>());
+		private volatile String lastRange;
+		private volatile String lastIfNoneMatch;
+		private volatile int dropAfter = -1;
+
+		StubServer(byte[] content, String eTag) throws IOException {
+			this.content = content;
+			this.eTag = eTag;
+			serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+			Thread thread = new Thread(this, "stub-http-server");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		int getPort() {
+			return serverSocket.getLocalPort();
+		}
+
+		/** Next response is dropped after incoming number of body bytes */
+		void dropNextResponseAfter(int bytes) {
+			dropAfter = bytes;
+		}
+
+		List<Integer> getStatuses() {
+			synchronized (statuses) {
+				return new ArrayList<Integer>(statuses);
+			}
+		}
+
+		int getLastStatus() {
+			synchronized (statuses) {
+				return statuses.isEmpty() ? -1 : statuses.get(statuses.size() - 1);
+			}
+		}
+
+		String getLastRange() {
+			return lastRange;
+		}
+
+		String getLastIfNoneMatch() {
+			return lastIfNoneMatch;
+		}
+
+		void clearLog() {
+			statuses.clear();
+			lastRange = null;
+			lastIfNoneMatch = null;
+		}
+
+		void stop() throws IOException {
+			serverSocket.close();
+		}
+
+		@Override
+		public void run() {
+			while (!serverSocket.isClosed()) {
+				try {
+					Socket socket = serverSocket.accept();
+					try {
+						serve(socket);
+					} finally {
+						socket.close();
+					}
+				} catch (IOException e) {
+					// Server is stopped or client closed connection
+				}
+			}
+		}
+
+		private void serve(Socket socket) throws IOException {
+			Map<String, String> headers = readRequestHeaders(socket.getInputStream());
+			String range = headers.get("range");
+			String ifNoneMatch = headers.get("if-none-match");
+			lastRange = range;
+			lastIfNoneMatch = ifNoneMatch;
+
+			OutputStream os = socket.getOutputStream();
+			if (eTag.equals(ifNoneMatch)) {
+				writeHeaders(os, 304, "Not Modified", -1, null);
+				return;
+			}
+
+			int from = 0;
+			if (range != null && eTag.equals(headers.get("if-range"))) {
+				// Only "bytes=<from>-" ranges are requested by downloaders
+				from = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+				if (from >= content.length) {
+					writeHeaders(os, 416, "Requested Range Not Satisfiable", 0, "bytes */" + content.length);
+					return;
+				}
+			}
+
+			int length = content.length - from;
+			if (from > 0) {
+				writeHeaders(os, 206, "Partial Content", length, "bytes " + from + "-" + (content.length - 1) + "/" + content.length);
+			} else {
+				writeHeaders(os, 200, "OK", length, null);
+			}
+			int drop = dropAfter;
+			dropAfter = -1;
+			os.write(content, from, drop >= 0 ? Math.min(drop, length) : length);
+			os.flush();
+		}
+
+		private void writeHeaders(OutputStream os, int status, String reason, int contentLength, String contentRange) throws IOException {
+			statuses.add(status);
+			StringBuilder response = new StringBuilder();
+			response.append("HTTP/1.1 ").append(status).append(' ').append(reason).append("\r\n");
+			response.append("ETag: ").append(eTag).append("\r\n");
+			response.append("Cache-Control: ").append(MAX_AGE).append("\r\n");
+			if (contentLength >= 0) response.append("Content-Length: ").append(contentLength).append("\r\n");
+			if (contentRange != null) response.append("Content-Range: ").append(contentRange).append("\r\n");
+			response.append("Connection: close\r\n\r\n");
+			os.write(response.toString().getBytes("US-ASCII"));
+			os.flush();
+		}
+
+		private static Map<String, String> readRequestHeaders(InputStream is) throws IOException {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(is, "US-ASCII"));
+			Map<String, String> headers = new HashMap<String, String>();
+			reader.readLine(); // request line
+			String line;
+			while ((line = reader.readLine()) != null && line.length() > 0) {
+				int colonIndex = line.indexOf(':');
+				if (colonIndex > 0) {
+					headers.put(line.substring(0, colonIndex).trim().toLowerCase(), line.substring(colonIndex + 1).trim());
+				}
+			}
+			return headers;
+		}
+	}
+}
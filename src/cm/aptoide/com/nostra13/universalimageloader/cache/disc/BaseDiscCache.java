@@ -1,13 +1,27 @@
 package cm.aptoide.com.nostra13.universalimageloader.cache.disc;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import cm.aptoide.com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
 import cm.aptoide.com.nostra13.universalimageloader.core.DefaultConfigurationFactory;
 
 
 /**
- * Base disc cache. Implements common functionality for disc cache.
+ * Base disc cache. Implements common functionality for disc cache. File name generator can place files into
+ * subdirectories of cache directory (e.g.
+ * {@link cm.aptoide.com.nostra13.universalimageloader.cache.disc.naming.ShardedFileNameGenerator ShardedFileNameGenerator}
+ * does it), such subdirectories are created on demand.<br />
+ * Keeps in-memory index of cached files, so {@link #contains(String)} doesn't touch file system. Index is loaded in
+ * background thread on first {@link #contains(String)} call, subclasses keep it actual by calling
+ * {@link #put(String, File) super.put(...)}, {@link #remove(String) super.remove(...)} and {@link #onFileRemoved(File)}.
+ * <br />
+ * Entries are {@linkplain #lockEntry(String) locked} while they're written, so subclasses which delete files in
+ * background don't delete file which is written at this moment.
  * 
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see DiscCacheAware
@@ -15,10 +29,26 @@ import cm.aptoide.com.nostra13.universalimageloader.core.DefaultConfigurationFac
  */
 public abstract class BaseDiscCache implements DiscCacheAware {
 
+	/**
+	 * Suffixes of files which are kept next to cached images but aren't images: interrupted downloadings (".part") and
+	 * their metadata, validators of cached images (".meta") and files which are written at this moment (".tmp")
+	 */
+	private static final String[] SERVICE_FILE_SUFFIXES = { ".part", ".meta", ".tmp" };
+
 	private File cacheDir;
 
 	private FileNameGenerator fileNameGenerator;
 
+	/** Subdirectories of cache directory which are known to exist */
+	private final Map<File, Boolean> createdDirs = new ConcurrentHashMap<File, Boolean>();
+
+	/** Paths (relative to cache directory) of cached files */
+	private final Map<String, Boolean> fileIndex = new ConcurrentHashMap<String, Boolean>();
+	private final AtomicBoolean indexLoadingStarted = new AtomicBoolean(false);
+	private volatile boolean indexLoaded = false;
+
+	private final DiscEntryLocks entryLocks = new DiscEntryLocks();
+
 	public BaseDiscCache(File cacheDir) {
 		this(cacheDir, DefaultConfigurationFactory.createFileNameGenerator());
 	}
@@ -31,20 +61,169 @@ public abstract class BaseDiscCache implements DiscCacheAware {
 	@Override
 	public File get(String key) {
 		String fileName = fileNameGenerator.generate(key);
-		return new File(cacheDir, fileName);
+		File file = new File(cacheDir, fileName);
+		File parentDir = file.getParentFile();
+		if (!parentDir.equals(cacheDir) && !createdDirs.containsKey(parentDir)) {
+			if (parentDir.mkdirs() || parentDir.isDirectory()) {
+				createdDirs.put(parentDir, Boolean.TRUE);
+			}
+		}
+		return file;
+	}
+
+	/** Adds file to index of cached files. Subclasses should call it when they override this method. */
+	@Override
+	public void put(String key, File file) {
+		fileIndex.put(getRelativePath(file), Boolean.TRUE);
+	}
+
+	/**
+	 * Checks whether image for incoming key is cached. Unlike {@link #get(String)} this method doesn't create
+	 * directories and doesn't change anything, it takes answer from in-memory index, so it can be called on UI thread.
+	 * Until index is loaded existence of file is checked.<br />
+	 * Answer is a hint: file can be removed from cache directory by another application or by loading task after its
+	 * failure.
+	 */
+	public boolean contains(String key) {
+		String fileName = getFileName(key);
+		if (indexLoaded) {
+			return fileIndex.containsKey(fileName);
+		}
+		startIndexLoading();
+		return new File(cacheDir, fileName).exists();
+	}
+
+	/**
+	 * Removes cached file for incoming key (e.g. file turned out to be broken) and updates index of cached files.
+	 * Subclasses which keep own state of cached files should override this method and call
+	 * {@link #remove(String) super.remove(...)}.
+	 */
+	public void remove(String key) {
+		File file = new File(cacheDir, getFileName(key));
+		file.delete();
+		onFileRemoved(file);
+	}
+
+	/**
+	 * Waits until entry for incoming key isn't written by another thread and locks it for writing. Lock must be
+	 * released by {@link #unlockEntry(String)} in the same thread.
+	 */
+	public void lockEntry(String key) {
+		entryLocks.lock(getFileName(key));
+	}
+
+	/** Releases lock of entry which was taken by {@link #lockEntry(String)} */
+	public void unlockEntry(String key) {
+		entryLocks.unlock(getFileName(key));
 	}
 
 	@Override
 	public void clear() {
-		File[] files = cacheDir.listFiles();
+		createdDirs.clear();
+		fileIndex.clear();
+		deleteContent(cacheDir);
+	}
+
+	/** Removes file from index of cached files. Must be called by subclasses when they delete cached file. */
+	protected void onFileRemoved(File file) {
+		fileIndex.remove(getRelativePath(file));
+	}
+
+	protected File getCacheDir() {
+		return cacheDir;
+	}
+
+	/** Returns path of file for incoming key relative to cache directory */
+	protected String getFileName(String key) {
+		return fileNameGenerator.generate(key);
+	}
+
+	/**
+	 * Locks entry of cached file only if it isn't written or locked by another thread at this moment. It's used to
+	 * delete files in background.
+	 * 
+	 * @return <b>true</b> - if entry was locked (it must be released by {@link #unlockFile(File)}); <b>false</b> - if
+	 *         entry is busy
+	 */
+	protected boolean tryLockFile(File file) {
+		return entryLocks.tryLock(getRelativePath(file));
+	}
+
+	/** Releases lock of entry which was taken by {@link #tryLockFile(File)} */
+	protected void unlockFile(File file) {
+		entryLocks.unlock(getRelativePath(file));
+	}
+
+	/**
+	 * Checks whether file is cached image and not a temporary or sidecar file (interrupted downloading, metadata of
+	 * image, file which is written at this moment)
+	 */
+	protected static boolean isImageFile(File file) {
+		String fileName = file.getName();
+		for (String suffix : SERVICE_FILE_SUFFIXES) {
+			if (fileName.endsWith(suffix)) return false;
+		}
+		return true;
+	}
+
+	/** Returns all files in cache directory and its subdirectories */
+	protected List<File> listCachedFiles() {
+		List<File> cachedFiles = new ArrayList<File>();
+		collectFiles(cacheDir, cachedFiles);
+		return cachedFiles;
+	}
+
+	/** Returns path of cached file relative to cache directory */
+	protected String getRelativePath(File file) {
+		String cacheDirPath = cacheDir.getPath();
+		String filePath = file.getPath();
+		if (filePath.startsWith(cacheDirPath) && filePath.length() > cacheDirPath.length() + 1) {
+			return filePath.substring(cacheDirPath.length() + 1);
+		}
+		return file.getName();
+	}
+
+	private void startIndexLoading() {
+		if (!indexLoadingStarted.compareAndSet(false, true)) return;
+
+		Thread indexThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (File cachedFile : listCachedFiles()) {
+					if (isImageFile(cachedFile)) {
+						fileIndex.put(getRelativePath(cachedFile), Boolean.TRUE);
+					}
+				}
+				indexLoaded = true;
+			}
+		}, "Disc cache indexer");
+		indexThread.setPriority(Thread.MIN_PRIORITY);
+		indexThread.setDaemon(true);
+		indexThread.start();
+	}
+
+	private void collectFiles(File dir, List<File> files) {
+		File[] dirFiles = dir.listFiles();
+		if (dirFiles != null) {
+			for (File f : dirFiles) {
+				if (f.isDirectory()) {
+					collectFiles(f, files);
+				} else {
+					files.add(f);
+				}
+			}
+		}
+	}
+
+	private void deleteContent(File dir) {
+		File[] files = dir.listFiles();
 		if (files != null) {
 			for (File f : files) {
+				if (f.isDirectory()) {
+					deleteContent(f);
+				}
 				f.delete();
 			}
 		}
 	}
-
-	protected File getCacheDir() {
-		return cacheDir;
-	}
 }
\ No newline at end of file
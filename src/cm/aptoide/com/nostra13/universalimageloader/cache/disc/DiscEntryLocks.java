@@ -0,0 +1,71 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.disc;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Locks of disc cache entries. Entry is locked while its file is downloaded, written or deleted, so one image isn't
+ * written by several threads and file isn't deleted while it's written. Lock is kept in table only while some thread
+ * holds it or waits for it.
+ */
+public final class DiscEntryLocks {
+
+	/** Guarded by itself */
+	private final Map<String, EntryLock> locks = new HashMap<String, EntryLock>();
+
+	/**
+	 * Waits until entry isn't locked by another thread and locks it. Lock must be released by {@link #unlock(String)}
+	 * in the same thread.
+	 */
+	public void lock(String entryName) {
+		EntryLock entryLock;
+		synchronized (locks) {
+			entryLock = locks.get(entryName);
+			if (entryLock == null) {
+				entryLock = new EntryLock();
+				locks.put(entryName, entryLock);
+			}
+			entryLock.holderCount++;
+		}
+		entryLock.lock.lock();
+	}
+
+	/**
+	 * Locks entry only if it isn't locked by another thread
+	 *
+	 * @return <b>true</b> - if entry was locked (it must be released by {@link #unlock(String)}); <b>false</b> - if
+	 *         entry is busy
+	 */
+	public boolean tryLock(String entryName) {
+		synchronized (locks) {
+			EntryLock entryLock = locks.get(entryName);
+			if (entryLock == null) {
+				entryLock = new EntryLock();
+				locks.put(entryName, entryLock);
+			}
+			if (!entryLock.lock.tryLock()) return false;
+
+			entryLock.holderCount++;
+			return true;
+		}
+	}
+
+	/** Releases lock of entry which was taken by {@link #lock(String)} or {@link #tryLock(String)} */
+	public void unlock(String entryName) {
+		synchronized (locks) {
+			EntryLock entryLock = locks.get(entryName);
+			entryLock.lock.unlock();
+			if (--entryLock.holderCount == 0) {
+				locks.remove(entryName);
+			}
+		}
+	}
+
+	private static final class EntryLock {
+
+		final ReentrantLock lock = new ReentrantLock();
+		/** Guarded by table of locks */
+		int holderCount;
+	}
+}
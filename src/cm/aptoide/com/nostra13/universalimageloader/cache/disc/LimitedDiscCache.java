@@ -1,32 +1,61 @@
 package cm.aptoide.com.nostra13.universalimageloader.cache.disc;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import cm.aptoide.com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
 import cm.aptoide.com.nostra13.universalimageloader.core.DefaultConfigurationFactory;
 
 
 /**
- * Abstract disc cache limited by some parameter. If cache exceeds specified limit then file with the most oldest last
- * usage date will be deleted.
- * 
+ * Abstract disc cache limited by some parameter. If cache exceeds specified limit then files with the most oldest last
+ * usage date will be deleted.<br />
+ * Files are deleted in background low-priority thread, so {@link #put(String, File)} doesn't wait for it: when cache
+ * exceeds limit (high watermark) then the oldest files are deleted until cache is reduced to
+ * {@value #LOW_WATERMARK_PERCENT}% of limit (low watermark). Size of existing cache is calculated in the same thread,
+ * so constructor doesn't scan cache directory. Only cached images are counted: temporary and sidecar files aren't
+ * counted and aren't deleted, file which is written at this moment isn't deleted.
+ *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see BaseDiscCache
  * @see FileNameGenerator
  */
 public abstract class LimitedDiscCache extends BaseDiscCache {
 
-	private int cacheSize = 0;
+	/** Size of cache after trimming (in percents of limit): {@value} */
+	private static final int LOW_WATERMARK_PERCENT = 90;
+
+	/** Executor which trims all limited disc caches */
+	private static final ExecutorService trimExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Disc cache trimmer");
+			t.setPriority(Thread.MIN_PRIORITY);
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private final AtomicInteger cacheSize = new AtomicInteger();
 
 	private int sizeLimit;
 
 	private final Map<File, Long> lastUsageDates = Collections.synchronizedMap(new HashMap<File, Long>());
 
+	private final AtomicBoolean trimScheduled = new AtomicBoolean(false);
+
+	/** Only one thread trims cache at a time */
+	private final Object trimLock = new Object();
+
 	/**
 	 * @param cacheDir Directory for file caching. <b>Important:</b> Specify separate folder for cached files. It's
 	 *            needed for right cache limit work.
@@ -47,32 +76,49 @@ public abstract class LimitedDiscCache extends BaseDiscCache {
 	public LimitedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, int sizeLimit) {
 		super(cacheDir, fileNameGenerator);
 		this.sizeLimit = sizeLimit;
-		calculateCacheSizeAndFillUsageMap();
+		trimExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				calculateCacheSizeAndFillUsageMap();
+				trimToLowWatermark();
+			}
+		});
 	}
 
+	/** Adds existing cached images to cache size. Files which were put while directory was scanned are counted already. */
 	private void calculateCacheSizeAndFillUsageMap() {
 		int size = 0;
-		File[] cachedFiles = getCacheDir().listFiles();
-		for (File cachedFile : cachedFiles) {
+		for (File cachedFile : listCachedFiles()) {
+			if (!isImageFile(cachedFile)) continue;
+
+			synchronized (lastUsageDates) {
+				if (lastUsageDates.containsKey(cachedFile)) continue;
+				lastUsageDates.put(cachedFile, cachedFile.lastModified());
+			}
 			size += getSize(cachedFile);
-			lastUsageDates.put(cachedFile, cachedFile.lastModified());
 		}
-		cacheSize = size;
+		cacheSize.addAndGet(size);
 	}
 
 	@Override
 	public void put(String key, File file) {
-		int valueSize = getSize(file);
-		while (cacheSize + valueSize > sizeLimit) {
-			int freedSize = removeNext();
-			if (freedSize == 0) break; // cache is empty (have nothing to delete)
-			cacheSize -= freedSize;
-		}
-		cacheSize += valueSize;
+		super.put(key, file);
+		cacheSize.addAndGet(getSize(file));
 
 		Long currentTime = System.currentTimeMillis();
 		file.setLastModified(currentTime);
 		lastUsageDates.put(file, currentTime);
+
+		// Evict files in background if cache exceeds limit
+		if (cacheSize.get() > sizeLimit && trimScheduled.compareAndSet(false, true)) {
+			trimExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					trimScheduled.set(false);
+					trimToLowWatermark();
+				}
+			});
+		}
 	}
 
 	@Override
@@ -86,42 +132,79 @@ public abstract class LimitedDiscCache extends BaseDiscCache {
 		return file;
 	}
 
+	@Override
+	public void remove(String key) {
+		File file = new File(getCacheDir(), getFileName(key));
+		int fileSize = getSize(file);
+		super.remove(key);
+		if (lastUsageDates.remove(file) != null) {
+			cacheSize.addAndGet(-fileSize);
+		}
+	}
+
+	/**
+	 * Deletes the oldest files in calling thread if cache exceeds limit. If cache is trimmed in background at this
+	 * moment then method waits until trimming is finished.
+	 */
+	public void trim() {
+		if (cacheSize.get() > sizeLimit) {
+			trimToLowWatermark();
+		}
+	}
+
 	@Override
 	public void clear() {
 		lastUsageDates.clear();
-		cacheSize = 0;
+		cacheSize.set(0);
 		super.clear();
 	}
 
-	/** Remove next file and returns it's size */
-	private int removeNext() {
-		if (lastUsageDates.isEmpty()) {
-			return 0;
+	/** Deletes the most long used files until cache size is reduced to low watermark. Files are sorted once. */
+	private void trimToLowWatermark() {
+		synchronized (trimLock) {
+			trimToLowWatermark((int) ((long) sizeLimit * LOW_WATERMARK_PERCENT / 100));
 		}
+	}
 
-		Long oldestUsage = null;
-		File mostLongUsedFile = null;
-		Set<Entry<File, Long>> entries = lastUsageDates.entrySet();
+	private void trimToLowWatermark(int lowWatermark) {
+		if (cacheSize.get() <= lowWatermark) return;
+
+		final Map<File, Long> usageDates;
 		synchronized (lastUsageDates) {
-			for (Entry<File, Long> entry : entries) {
-				if (mostLongUsedFile == null) {
-					mostLongUsedFile = entry.getKey();
-					oldestUsage = entry.getValue();
-				} else {
-					Long lastValueUsage = entry.getValue();
-					if (lastValueUsage < oldestUsage) {
-						oldestUsage = lastValueUsage;
-						mostLongUsedFile = entry.getKey();
+			usageDates = new HashMap<File, Long>(lastUsageDates);
+		}
+		File[] files = usageDates.keySet().toArray(new File[usageDates.size()]);
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File lhs, File rhs) {
+				long lhsDate = usageDates.get(lhs);
+				long rhsDate = usageDates.get(rhs);
+				return lhsDate < rhsDate ? -1 : (lhsDate == rhsDate ? 0 : 1);
+			}
+		});
+
+		for (File file : files) {
+			if (cacheSize.get() <= lowWatermark) break;
+
+			Long lastUsageDate = lastUsageDates.get(file);
+			if (lastUsageDate == null || !lastUsageDate.equals(usageDates.get(file))) {
+				continue; // File was used or removed after sorting
+			}
+			if (!tryLockFile(file)) {
+				continue; // File is written at this moment
+			}
+			try {
+				int fileSize = getSize(file);
+				if (file.delete() || !file.exists()) {
+					onFileRemoved(file);
+					if (lastUsageDates.remove(file) != null) {
+						cacheSize.addAndGet(-fileSize);
 					}
 				}
+			} finally {
+				unlockFile(file);
 			}
 		}
-
-		int fileSize = getSize(mostLongUsedFile);
-		if (mostLongUsedFile.delete()) {
-			lastUsageDates.remove(mostLongUsedFile);
-		}
-		return fileSize;
 	}
 
 	protected abstract int getSize(File file);
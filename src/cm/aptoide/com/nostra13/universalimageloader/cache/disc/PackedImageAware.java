@@ -0,0 +1,20 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.disc;
+
+import java.io.InputStream;
+
+/**
+ * Disc cache which packs small images into shared storage instead of separate files. File which is returned by
+ * {@link DiscCacheAware#get(String)} for packed image doesn't exist, packed image is read by
+ * {@link #openPackedImage(String)}. Image is packed when its file is {@linkplain DiscCacheAware#put(String, java.io.File)
+ * put} into cache (file is deleted then).
+ *
+ * @see cm.aptoide.com.nostra13.universalimageloader.cache.disc.impl.PackedDiscCache
+ */
+public interface PackedImageAware {
+
+	/** Returns <b>true</b> if image for incoming key is packed */
+	boolean isPacked(String key);
+
+	/** Opens stream of packed image for incoming key. Returns <b>null</b> if image isn't packed. */
+	InputStream openPackedImage(String key);
+}
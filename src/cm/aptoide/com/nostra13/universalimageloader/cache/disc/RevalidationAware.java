@@ -0,0 +1,22 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.disc;
+
+import cm.aptoide.com.nostra13.universalimageloader.core.download.CacheValidators;
+
+/**
+ * Disc cache which keeps {@linkplain CacheValidators HTTP validators} of cached files. Expired file which has
+ * validators isn't deleted, it stays in cache until it's revalidated by conditional request: if server answers
+ * <b>304 Not Modified</b> then age of file is refreshed, otherwise file is replaced by downloaded image.
+ *
+ * @see cm.aptoide.com.nostra13.universalimageloader.cache.disc.impl.LimitedAgeDiscCache
+ */
+public interface RevalidationAware {
+
+	/** Returns <b>true</b> if cached file for incoming key is expired and should be revalidated before using */
+	boolean isExpired(String key);
+
+	/** Returns validators of cached file for incoming key or <b>null</b> if file has no validators */
+	CacheValidators getValidators(String key);
+
+	/** Stores validators of cached file for incoming key and refreshes age of file */
+	void putValidators(String key, CacheValidators validators);
+}
@@ -0,0 +1,425 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.disc.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import android.os.Process;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.disc.BaseDiscCache;
+import cm.aptoide.com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
+import cm.aptoide.com.nostra13.universalimageloader.core.DefaultConfigurationFactory;
+import cm.aptoide.com.nostra13.universalimageloader.utils.L;
+
+/**
+ * Disc cache limited by total cache size. If cache size exceeds specified limit then the least recently used file is
+ * deleted.<br />
+ * Unlike {@link TotalSizeLimitedDiscCache} this cache doesn't scan cache directory on creation and doesn't change
+ * modification dates of files on every usage. Usages of files are kept in in-memory LRU index and are recorded into
+ * append-only journal file (<b>{@value #JOURNAL_FILE_NAME}</b> in cache directory). Index is restored from journal
+ * in background thread, journal is written by the same thread and is compacted when it contains too many redundant
+ * records. If journal is absent (e.g. on first start) then index is built by scanning of cache directory (in
+ * background too).
+ *
+ * @see TotalSizeLimitedDiscCache
+ */
+public class JournaledDiscCache extends BaseDiscCache {
+
+	private static final String JOURNAL_FILE_NAME = "journal";
+	private static final String JOURNAL_TEMP_FILE_NAME = "journal.tmp";
+	private static final String JOURNAL_HEADER = "cm.aptoide.com.nostra13.universalimageloader.JournaledDiscCache 1";
+
+	private static final String PUT = "PUT";
+	private static final String READ = "READ";
+	private static final String REMOVE = "REMOVE";
+
+	/** Journal is compacted when number of redundant records exceeds this value (and number of files in index) */
+	private static final int REDUNDANT_RECORDS_COMPACT_THRESHOLD = 2000;
+
+	private static final String LOG_JOURNAL_CORRUPTED = "Disc cache journal is corrupted. Cache directory is scanned [%s]";
+
+	private static final int INITIAL_CAPACITY = 64;
+	private static final float LOAD_FACTOR = 0.75f;
+
+	private final long sizeLimit;
+	private final File journalFile;
+	private final File journalTempFile;
+
+	/** File names and sizes of cached files in order of usage (the least recently used first). Guarded by this. */
+	private final LinkedHashMap<String, Long> index = new LinkedHashMap<String, Long>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+	private long cacheSize = 0;
+	private boolean indexLoaded = false;
+	/** Whether cache was cleared before index was loaded (so loaded index is out of date). Guarded by this. */
+	private boolean clearedBeforeLoading = false;
+	private int redundantRecordCount = 0;
+
+	/** Journal records and commands for journal thread */
+	private final BlockingQueue<String> journalQueue = new LinkedBlockingQueue<String>();
+	private static final String COMMAND_COMPACT = "#compact";
+	private static final String COMMAND_RESET = "#reset";
+
+	/**
+	 * @param cacheDir Directory for file caching. <b>Important:</b> Specify separate folder for cached files. It's
+	 *            needed for right cache limit work.
+	 * @param maxCacheSize Maximum cache directory size (in bytes). If cache size exceeds this limit then the least
+	 *            recently used file will be deleted.
+	 */
+	public JournaledDiscCache(File cacheDir, int maxCacheSize) {
+		this(cacheDir, DefaultConfigurationFactory.createFileNameGenerator(), maxCacheSize);
+	}
+
+	/**
+	 * @param cacheDir Directory for file caching. <b>Important:</b> Specify separate folder for cached files. It's
+	 *            needed for right cache limit work.
+	 * @param fileNameGenerator Name generator for cached files
+	 * @param maxCacheSize Maximum cache directory size (in bytes). If cache size exceeds this limit then the least
+	 *            recently used file will be deleted.
+	 */
+	public JournaledDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, int maxCacheSize) {
+		super(cacheDir, fileNameGenerator);
+		this.sizeLimit = maxCacheSize;
+		journalFile = new File(cacheDir, JOURNAL_FILE_NAME);
+		journalTempFile = new File(cacheDir, JOURNAL_TEMP_FILE_NAME);
+
+		Thread journalThread = new Thread(new JournalWorker(), "Disc cache journal");
+		journalThread.setDaemon(true);
+		journalThread.start();
+	}
+
+	@Override
+	public void put(String key, File file) {
+		String fileName = getRelativePath(file);
+		long fileSize = file.length();
+		List<File> evictedFiles;
+		synchronized (this) {
+			Long oldSize = index.put(fileName, fileSize);
+			if (oldSize != null) {
+				cacheSize -= oldSize;
+				redundantRecordCount++;
+			}
+			cacheSize += fileSize;
+			journalQueue.add(PUT + ' ' + fileName + ' ' + fileSize);
+
+			evictedFiles = trimToSize();
+			onJournalRecordAdded();
+		}
+		deleteFiles(evictedFiles);
+	}
+
+	@Override
+	public File get(String key) {
+		File file = super.get(key);
+		String fileName = getRelativePath(file);
+		synchronized (this) {
+			// "get" updates usage order of index
+			if (index.get(fileName) != null) {
+				journalQueue.add(READ + ' ' + fileName);
+				redundantRecordCount++;
+				onJournalRecordAdded();
+			}
+		}
+		return file;
+	}
+
+	@Override
+	public void remove(String key) {
+		String fileName = getFileName(key);
+		synchronized (this) {
+			Long size = index.remove(fileName);
+			if (size != null) {
+				cacheSize -= size;
+				journalQueue.add(REMOVE + ' ' + fileName);
+				redundantRecordCount += 2;
+				onJournalRecordAdded();
+			}
+		}
+		super.remove(key);
+	}
+
+	@Override
+	public void clear() {
+		synchronized (this) {
+			index.clear();
+			cacheSize = 0;
+			redundantRecordCount = 0;
+			if (!indexLoaded) {
+				clearedBeforeLoading = true;
+			}
+			journalQueue.add(COMMAND_RESET);
+		}
+		for (File cachedFile : listCachedFiles()) {
+			if (!isJournal(cachedFile)) {
+				cachedFile.delete();
+			}
+		}
+	}
+
+	/** Takes answer from journal index. Existence of file is checked until index is loaded. */
+	@Override
+	public boolean contains(String key) {
+		String fileName = getFileName(key);
+		synchronized (this) {
+			if (indexLoaded) {
+				return index.containsKey(fileName);
+			}
+		}
+		return new File(getCacheDir(), fileName).exists();
+	}
+
+	/** Returns current size of cached files (in bytes). Size is exact only after index was loaded. */
+	public synchronized long getSize() {
+		return cacheSize;
+	}
+
+	/** Evicts the least recently used files while cache size exceeds limit. Must be called under lock. */
+	private List<File> trimToSize() {
+		if (!indexLoaded || cacheSize <= sizeLimit) {
+			return null; // Evicting will be done after index loading
+		}
+
+		List<File> evictedFiles = new ArrayList<File>();
+		Iterator<Entry<String, Long>> it = index.entrySet().iterator();
+		while (cacheSize > sizeLimit && it.hasNext()) {
+			Entry<String, Long> entry = it.next();
+			it.remove();
+			cacheSize -= entry.getValue();
+			evictedFiles.add(new File(getCacheDir(), entry.getKey()));
+			journalQueue.add(REMOVE + ' ' + entry.getKey());
+			redundantRecordCount += 2;
+		}
+		return evictedFiles;
+	}
+
+	/** Must be called under lock */
+	private void onJournalRecordAdded() {
+		if (redundantRecordCount >= REDUNDANT_RECORDS_COMPACT_THRESHOLD && redundantRecordCount >= index.size()) {
+			redundantRecordCount = 0;
+			journalQueue.add(COMMAND_COMPACT);
+		}
+	}
+
+	private void deleteFiles(List<File> files) {
+		if (files != null) {
+			for (File file : files) {
+				// File which is written at this moment will be put into index again
+				if (tryLockFile(file)) {
+					try {
+						file.delete();
+					} finally {
+						unlockFile(file);
+					}
+				}
+			}
+		}
+	}
+
+	private boolean isJournal(File file) {
+		String fileName = file.getName();
+		return JOURNAL_FILE_NAME.equals(fileName) || JOURNAL_TEMP_FILE_NAME.equals(fileName);
+	}
+
+	/** Merges loaded index with files which were put and read while loading */
+	private void onIndexLoaded(LinkedHashMap<String, Long> loadedIndex) {
+		List<File> evictedFiles;
+		synchronized (this) {
+			if (clearedBeforeLoading) {
+				loadedIndex.clear();
+			}
+			// Files used while loading are the most recently used
+			for (Entry<String, Long> entry : index.entrySet()) {
+				loadedIndex.remove(entry.getKey());
+				loadedIndex.put(entry.getKey(), entry.getValue());
+			}
+			index.clear();
+			cacheSize = 0;
+			for (Entry<String, Long> entry : loadedIndex.entrySet()) {
+				index.put(entry.getKey(), entry.getValue());
+				cacheSize += entry.getValue();
+			}
+			indexLoaded = true;
+			evictedFiles = trimToSize();
+		}
+		deleteFiles(evictedFiles);
+	}
+
+	/** Reads journal. Returns <b>null</b> if journal is absent or corrupted. */
+	private LinkedHashMap<String, Long> readJournal() {
+		if (!journalFile.exists()) return null;
+
+		LinkedHashMap<String, Long> loadedIndex = new LinkedHashMap<String, Long>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(journalFile));
+			if (!JOURNAL_HEADER.equals(reader.readLine())) {
+				return null;
+			}
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] parts = line.split(" ");
+				if (parts.length == 3 && PUT.equals(parts[0])) {
+					try {
+						loadedIndex.remove(parts[1]);
+						loadedIndex.put(parts[1], Long.parseLong(parts[2]));
+					} catch (NumberFormatException e) {
+						// Record was written partially. Skip it.
+					}
+				} else if (parts.length == 2 && READ.equals(parts[0])) {
+					loadedIndex.get(parts[1]);
+				} else if (parts.length == 2 && REMOVE.equals(parts[0])) {
+					loadedIndex.remove(parts[1]);
+				}
+			}
+			return loadedIndex;
+		} catch (IOException e) {
+			L.e(e);
+			return null;
+		} finally {
+			closeSilently(reader);
+		}
+	}
+
+	/**
+	 * Builds index by cache directory content. Files are ordered by modification date. Only cached images are indexed.
+	 */
+	private LinkedHashMap<String, Long> scanCacheDir() {
+		LinkedHashMap<String, Long> scannedIndex = new LinkedHashMap<String, Long>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+		final Map<File, Long> modificationDates = new LinkedHashMap<File, Long>();
+		for (File cachedFile : listCachedFiles()) {
+			// Temporary and sidecar files aren't cached images
+			if (isImageFile(cachedFile) && !isJournal(cachedFile)) {
+				modificationDates.put(cachedFile, cachedFile.lastModified());
+			}
+		}
+		File[] files = modificationDates.keySet().toArray(new File[modificationDates.size()]);
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File lhs, File rhs) {
+				long lhsDate = modificationDates.get(lhs);
+				long rhsDate = modificationDates.get(rhs);
+				return lhsDate < rhsDate ? -1 : (lhsDate == rhsDate ? 0 : 1);
+			}
+		});
+		for (File file : files) {
+			scannedIndex.put(getRelativePath(file), file.length());
+		}
+		return scannedIndex;
+	}
+
+	/** Writes journal which contains current index only */
+	private Writer rewriteJournal(Writer journalWriter) throws IOException {
+		closeSilently(journalWriter);
+
+		List<String> records;
+		synchronized (this) {
+			records = new ArrayList<String>(index.size());
+			for (Entry<String, Long> entry : index.entrySet()) {
+				records.add(PUT + ' ' + entry.getKey() + ' ' + entry.getValue());
+			}
+		}
+
+		Writer tempWriter = new BufferedWriter(new FileWriter(journalTempFile));
+		try {
+			tempWriter.write(JOURNAL_HEADER);
+			tempWriter.write('\n');
+			for (String record : records) {
+				tempWriter.write(record);
+				tempWriter.write('\n');
+			}
+		} finally {
+			tempWriter.close();
+		}
+		if (!journalTempFile.renameTo(journalFile)) {
+			journalFile.delete();
+			if (!journalTempFile.renameTo(journalFile)) {
+				throw new IOException("Can't rename " + journalTempFile);
+			}
+		}
+		return new BufferedWriter(new FileWriter(journalFile, true));
+	}
+
+	private static void closeSilently(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// Do nothing
+			}
+		}
+	}
+
+	/** Loads index and then writes journal records in order of their adding */
+	private class JournalWorker implements Runnable {
+
+		@Override
+		public void run() {
+			Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+			getCacheDir().mkdirs();
+			LinkedHashMap<String, Long> loadedIndex = readJournal();
+			boolean rewriteNeeded = loadedIndex == null;
+			if (loadedIndex == null) {
+				if (journalFile.exists()) L.w(LOG_JOURNAL_CORRUPTED, getCacheDir());
+				loadedIndex = scanCacheDir();
+			}
+			onIndexLoaded(loadedIndex);
+
+			Writer journalWriter = null;
+			try {
+				journalWriter = rewriteNeeded ? rewriteJournal(null) : new BufferedWriter(new FileWriter(journalFile, true));
+			} catch (IOException e) {
+				L.e(e);
+			}
+			try {
+				while (true) {
+					journalWriter = writeRecords(journalWriter, journalQueue.take());
+				}
+			} catch (InterruptedException e) {
+				// Thread is stopped
+			} finally {
+				closeSilently(journalWriter);
+			}
+		}
+
+		/**
+		 * Writes incoming record and all queued records. Returns writer for next records or <b>null</b> if journal can't
+		 * be written (records are dropped until next journal rewriting).
+		 */
+		private Writer writeRecords(Writer journalWriter, String record) {
+			try {
+				do {
+					if (COMMAND_COMPACT.equals(record) || COMMAND_RESET.equals(record)) {
+						journalWriter = rewriteJournal(journalWriter);
+					} else if (journalWriter != null) {
+						journalWriter.write(record);
+						journalWriter.write('\n');
+					}
+					record = journalQueue.poll();
+				} while (record != null);
+				// Queue is drained, flush written records
+				if (journalWriter != null) {
+					journalWriter.flush();
+				}
+				return journalWriter;
+			} catch (IOException e) {
+				L.e(e);
+				closeSilently(journalWriter);
+				return null;
+			}
+		}
+	}
+}
@@ -1,22 +1,40 @@
 package cm.aptoide.com.nostra13.universalimageloader.cache.disc.impl;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 
 import cm.aptoide.com.nostra13.universalimageloader.cache.disc.BaseDiscCache;
+import cm.aptoide.com.nostra13.universalimageloader.cache.disc.RevalidationAware;
 import cm.aptoide.com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
 import cm.aptoide.com.nostra13.universalimageloader.core.DefaultConfigurationFactory;
+import cm.aptoide.com.nostra13.universalimageloader.core.download.CacheValidators;
+import cm.aptoide.com.nostra13.universalimageloader.utils.FileUtils;
+import cm.aptoide.com.nostra13.universalimageloader.utils.L;
 
 
 /**
- * Cache which deletes files which were loaded more than defined time. Cache size is unlimited.
+ * Cache which deletes files which were loaded more than defined time. Cache size is unlimited.<br />
+ * If {@linkplain CacheValidators HTTP validators} were stored for file (they're kept in sidecar <b>.meta</b> file)
+ * then expired file isn't deleted but is {@linkplain RevalidationAware revalidated} by conditional request. File is
+ * fresh until the larger of max file age and <b>max-age</b> received from server.
  * 
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see BaseDiscCache
  */
-public class LimitedAgeDiscCache extends BaseDiscCache {
+public class LimitedAgeDiscCache extends BaseDiscCache implements RevalidationAware {
+
+	private static final String META_FILE_SUFFIX = ".meta";
+	private static final String META_ETAG = "etag";
+	private static final String META_LAST_MODIFIED = "lastModified";
+	private static final String META_MAX_AGE = "maxAge";
 
 	private final long maxFileAge;
 
@@ -47,6 +65,7 @@ public class LimitedAgeDiscCache extends BaseDiscCache {
 		long currentTime = System.currentTimeMillis();
 		file.setLastModified(currentTime);
 		loadingDates.put(file, currentTime);
+		super.put(key, file);
 	}
 
 	@Override
@@ -62,13 +81,100 @@ public class LimitedAgeDiscCache extends BaseDiscCache {
 				cached = true;
 			}
 
-			if (System.currentTimeMillis() - loadingDate > maxFileAge) {
+			if (System.currentTimeMillis() - loadingDate > maxFileAge && !getMetaFile(file).exists()) {
 				file.delete();
 				loadingDates.remove(file);
+				onFileRemoved(file);
 			} else if (!cached) {
 				loadingDates.put(file, loadingDate);
 			}
 		}
 		return file;
 	}
+
+	@Override
+	public boolean isExpired(String key) {
+		File file = super.get(key);
+		Long loadingDate = loadingDates.get(file);
+		long age = System.currentTimeMillis() - (loadingDate == null ? file.lastModified() : loadingDate);
+		if (age <= maxFileAge) return false;
+
+		CacheValidators validators = getValidators(key);
+		return validators == null || age > validators.getMaxAge() * 1000;
+	}
+
+	@Override
+	public CacheValidators getValidators(String key) {
+		File metaFile = getMetaFile(super.get(key));
+		if (!metaFile.exists()) return null;
+
+		Properties meta = new Properties();
+		try {
+			InputStream is = new FileInputStream(metaFile);
+			try {
+				meta.load(is);
+			} finally {
+				is.close();
+			}
+			String maxAge = meta.getProperty(META_MAX_AGE);
+			return new CacheValidators(meta.getProperty(META_ETAG), meta.getProperty(META_LAST_MODIFIED), maxAge == null ? -1 : Long.parseLong(maxAge));
+		} catch (IOException e) {
+			L.e(e);
+		} catch (NumberFormatException e) {
+			L.e(e);
+		}
+		metaFile.delete();
+		return null;
+	}
+
+	@Override
+	public void putValidators(String key, CacheValidators validators) {
+		File file = super.get(key);
+		File metaFile = getMetaFile(file);
+		if (validators.canRevalidate()) {
+			Properties meta = new Properties();
+			if (validators.getETag() != null) meta.setProperty(META_ETAG, validators.getETag());
+			if (validators.getLastModified() != null) meta.setProperty(META_LAST_MODIFIED, validators.getLastModified());
+			meta.setProperty(META_MAX_AGE, String.valueOf(validators.getMaxAge()));
+
+			File tempFile = FileUtils.getTempFile(metaFile);
+			try {
+				OutputStream os = new FileOutputStream(tempFile);
+				try {
+					meta.store(os, null);
+				} finally {
+					os.close();
+				}
+				FileUtils.commitTempFile(tempFile, metaFile);
+			} catch (IOException e) {
+				L.e(e);
+				tempFile.delete();
+				metaFile.delete();
+			}
+		} else {
+			metaFile.delete();
+		}
+
+		long currentTime = System.currentTimeMillis();
+		file.setLastModified(currentTime);
+		loadingDates.put(file, currentTime);
+	}
+
+	@Override
+	public void remove(String key) {
+		File file = new File(getCacheDir(), getFileName(key));
+		loadingDates.remove(file);
+		getMetaFile(file).delete();
+		super.remove(key);
+	}
+
+	@Override
+	public void clear() {
+		loadingDates.clear();
+		super.clear();
+	}
+
+	private static File getMetaFile(File file) {
+		return new File(file.getPath() + META_FILE_SUFFIX);
+	}
 }
\ No newline at end of file
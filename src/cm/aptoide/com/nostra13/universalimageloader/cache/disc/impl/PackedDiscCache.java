@@ -0,0 +1,619 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.disc.impl;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.disc.BaseDiscCache;
+import cm.aptoide.com.nostra13.universalimageloader.cache.disc.PackedImageAware;
+import cm.aptoide.com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
+import cm.aptoide.com.nostra13.universalimageloader.core.DefaultConfigurationFactory;
+import cm.aptoide.com.nostra13.universalimageloader.utils.L;
+
+/**
+ * Disc cache which packs small images (e.g. icons) into segment files, so thousands of small images don't waste blocks
+ * of file system and aren't opened one by one. Size of segments is limited: when it exceeds limit then the oldest
+ * segment is deleted with all its images. Size of larger images is unlimited.<br />
+ * Image which isn't larger than packing threshold is appended into active segment (segments are located in
+ * <b>{@value #SEGMENTS_DIR_NAME}</b> subdirectory of cache directory) and its file is deleted. Larger images stay in
+ * separate files like in {@link UnlimitedDiscCache}. Segments are memory-mapped: images are written into mapping of
+ * active segment and {@linkplain #openPackedImage(String) are read} right from mappings without copying into heap.
+ * Index of packed images (offsets in segments) is kept in memory, it's restored by scanning of segments in background
+ * thread. Cache doesn't wait for index: until it's loaded packed images aren't found and new images are kept in separate
+ * files.<br />
+ * Record is committed by writing of its key length after image data is {@linkplain MappedByteBuffer#force() forced} to
+ * storage, so segment doesn't contain committed record with incomplete data after crash. Commit itself isn't forced: the
+ * latest images can be lost on crash (they're loaded again then).<br />
+ * Image which is cached again leaves dead record in its old segment. Segment which has more than
+ * {@value #COMPACTION_THRESHOLD_PERCENT}% of dead bytes is compacted in background thread: its live images are moved
+ * into active segment and segment file is deleted.
+ *
+ * @see PackedImageAware
+ */
+public class PackedDiscCache extends BaseDiscCache implements PackedImageAware {
+
+	/** {@value} */
+	public static final int DEFAULT_PACKING_THRESHOLD = 16 * 1024; // bytes
+	/** {@value} */
+	public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024; // bytes
+	/** {@value} */
+	public static final long DEFAULT_MAX_PACKED_SIZE = 32 * 1024 * 1024; // bytes
+
+	private static final String SEGMENTS_DIR_NAME = ".packed";
+	private static final String SEGMENT_FILE_SUFFIX = ".seg";
+
+	/** Segment is compacted when dead records take this part of its used space: {@value} */
+	private static final int COMPACTION_THRESHOLD_PERCENT = 50;
+
+	/** Size of record header: key length and data length */
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	private static final String LOG_SEGMENT_NOT_LOADED = "Segment of packed disc cache can't be loaded [%s]";
+
+	/** Executor which compacts segments of all packed disc caches */
+	private static final ExecutorService compactionExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Disc cache compactor");
+			t.setPriority(Thread.MIN_PRIORITY);
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private final File segmentsDir;
+	private final int packingThreshold;
+	private final int segmentSize;
+	private final long maxPackedSize;
+
+	/** Packed images by keys */
+	private final Map<String, PackedImage> index = new ConcurrentHashMap<String, PackedImage>();
+	/** All segments in order of creation. Guarded by "this". */
+	private final List<Segment> segments = new ArrayList<Segment>();
+	/** Segment which images are appended into. Guarded by "this". */
+	private Segment activeSegment;
+	/** Guarded by "this" */
+	private int nextSegmentId = 1;
+	private volatile boolean indexLoaded = false;
+	/** Keys of images which were removed or were put into separate files while index was loading. Guarded by "this". */
+	private final Set<String> keysChangedWhileLoading = new HashSet<String>();
+	/** Whether cache was cleared before index was loaded (so loaded index is out of date). Guarded by "this". */
+	private boolean clearedWhileLoading = false;
+
+	private final AtomicBoolean compactionScheduled = new AtomicBoolean(false);
+
+	/** @param cacheDir Directory for file caching */
+	public PackedDiscCache(File cacheDir) {
+		this(cacheDir, DefaultConfigurationFactory.createFileNameGenerator());
+	}
+
+	/**
+	 * @param cacheDir Directory for file caching
+	 * @param fileNameGenerator Name generator for cached files
+	 */
+	public PackedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator) {
+		this(cacheDir, fileNameGenerator, DEFAULT_PACKING_THRESHOLD, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param cacheDir Directory for file caching
+	 * @param fileNameGenerator Name generator for cached files
+	 * @param packingThreshold Max size of packed image (in bytes). Larger images are kept in separate files.
+	 * @param segmentSize Size of segment file (in bytes). It must be larger than packing threshold.
+	 */
+	public PackedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, int packingThreshold, int segmentSize) {
+		this(cacheDir, fileNameGenerator, packingThreshold, segmentSize, DEFAULT_MAX_PACKED_SIZE);
+	}
+
+	/**
+	 * @param cacheDir Directory for file caching
+	 * @param fileNameGenerator Name generator for cached files
+	 * @param packingThreshold Max size of packed image (in bytes). Larger images are kept in separate files.
+	 * @param segmentSize Size of segment file (in bytes). It must be larger than packing threshold.
+	 * @param maxPackedSize Max summary size of segment files (in bytes). It must be at least twice as segment size.
+	 */
+	public PackedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, int packingThreshold, int segmentSize, long maxPackedSize) {
+		super(cacheDir, fileNameGenerator);
+		if (packingThreshold <= 0) throw new IllegalArgumentException("packingThreshold must be a positive number");
+		if (segmentSize < packingThreshold * 2) throw new IllegalArgumentException("segmentSize must be at least twice as packingThreshold");
+		if (maxPackedSize < segmentSize * 2L) throw new IllegalArgumentException("maxPackedSize must be at least twice as segmentSize");
+
+		this.packingThreshold = packingThreshold;
+		this.segmentSize = segmentSize;
+		this.maxPackedSize = maxPackedSize;
+		segmentsDir = new File(cacheDir, SEGMENTS_DIR_NAME);
+		startIndexLoading();
+	}
+
+	@Override
+	public void put(String key, File file) {
+		long fileLength = file.length();
+		if (fileLength > packingThreshold || !indexLoaded) {
+			// Image is kept in separate file, its packed copy (if there is one) is out of date
+			removePackedImage(key);
+			super.put(key, file);
+			return;
+		}
+
+		try {
+			synchronized (this) {
+				PackedImage image = append(key, file, (int) fileLength);
+				PackedImage oldImage = index.put(key, image);
+				if (oldImage != null) {
+					markDead(oldImage);
+				}
+			}
+		} catch (IOException e) {
+			L.e(e);
+			super.put(key, file);
+			return;
+		}
+		file.delete();
+		onFileRemoved(file);
+	}
+
+	@Override
+	public boolean contains(String key) {
+		return (indexLoaded && index.containsKey(key)) || super.contains(key);
+	}
+
+	/** Returns <b>false</b> until index is loaded */
+	@Override
+	public boolean isPacked(String key) {
+		return indexLoaded && index.containsKey(key);
+	}
+
+	@Override
+	public InputStream openPackedImage(String key) {
+		if (!indexLoaded) return null;
+
+		PackedImage image = index.get(key);
+		if (image == null) return null;
+
+		// Segment isn't unmapped after compaction, so image can be read even if segment was deleted meanwhile
+		ByteBuffer data = image.segment.buffer.duplicate();
+		data.limit(image.dataOffset + image.dataLength);
+		data.position(image.dataOffset);
+		return new ByteBufferInputStream(data);
+	}
+
+	@Override
+	public void remove(String key) {
+		removePackedImage(key);
+		super.remove(key);
+	}
+
+	@Override
+	public void clear() {
+		synchronized (this) {
+			index.clear();
+			segments.clear();
+			activeSegment = null;
+			if (!indexLoaded) {
+				clearedWhileLoading = true;
+			}
+		}
+		super.clear();
+	}
+
+	/**
+	 * Appends image from file into active segment. New segment is created if image doesn't fit into active one. Must be
+	 * called under "this" lock.
+	 */
+	private PackedImage append(String key, File file, int dataLength) throws IOException {
+		int dataOffset = reserveRecord(key, dataLength);
+		ByteBuffer data = activeSegment.buffer.duplicate();
+		data.limit(dataOffset + dataLength);
+		data.position(dataOffset);
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			while (data.hasRemaining()) {
+				if (channel.read(data) < 0) throw new EOFException("File was truncated: " + file);
+			}
+		} finally {
+			in.close();
+		}
+		return commitRecord(key, dataOffset, dataLength);
+	}
+
+	/** Appends packed image into active segment. Must be called under "this" lock. */
+	private PackedImage append(String key, ByteBuffer source) throws IOException {
+		int dataLength = source.remaining();
+		int dataOffset = reserveRecord(key, dataLength);
+		ByteBuffer data = activeSegment.buffer.duplicate();
+		data.position(dataOffset);
+		data.put(source);
+		return commitRecord(key, dataOffset, dataLength);
+	}
+
+	/** Writes key of record into active segment and returns offset of record data */
+	private int reserveRecord(String key, int dataLength) throws IOException {
+		int recordSize = getRecordSize(key, dataLength);
+		if (activeSegment == null || activeSegment.usedBytes + recordSize > activeSegment.buffer.capacity()) {
+			Segment sealedSegment = activeSegment;
+			activeSegment = createSegment();
+			if (sealedSegment != null && isWasteful(sealedSegment)) {
+				scheduleCompaction();
+			}
+		}
+		ByteBuffer buffer = activeSegment.buffer;
+		int position = activeSegment.usedBytes;
+		int keyOffset = position + 4;
+		for (int i = 0; i < key.length(); i++) {
+			buffer.putChar(keyOffset + i * 2, key.charAt(i));
+		}
+		int dataLengthOffset = keyOffset + key.length() * 2;
+		buffer.putInt(dataLengthOffset, dataLength);
+		return dataLengthOffset + 4;
+	}
+
+	/**
+	 * Completes record by writing key length: record with zero key length is the end of segment. Record data is forced
+	 * to storage before, so committed record is never read with incomplete data.
+	 */
+	private PackedImage commitRecord(String key, int dataOffset, int dataLength) {
+		int recordSize = getRecordSize(key, dataLength);
+		int position = activeSegment.usedBytes;
+		activeSegment.buffer.force();
+		activeSegment.buffer.putInt(position, key.length());
+		activeSegment.usedBytes = position + recordSize;
+		return new PackedImage(activeSegment, dataOffset, dataLength, recordSize);
+	}
+
+	private static int getRecordSize(String key, int dataLength) {
+		return RECORD_HEADER_SIZE + key.length() * 2 + dataLength;
+	}
+
+	private Segment createSegment() throws IOException {
+		if (!segmentsDir.isDirectory() && !segmentsDir.mkdirs()) throw new IOException("Can't create directory " + segmentsDir);
+
+		int id = nextSegmentId++;
+		Segment segment = mapSegment(id, new File(segmentsDir, id + SEGMENT_FILE_SUFFIX), segmentSize);
+		segments.add(segment);
+		evictSegments();
+		return segment;
+	}
+
+	/**
+	 * Deletes the oldest segments with all their images while summary size of segments exceeds limit. The newest
+	 * segment isn't deleted. Must be called under "this" lock.
+	 */
+	private void evictSegments() {
+		while (segments.size() > 1 && getPackedSize() > maxPackedSize) {
+			Segment oldestSegment = segments.remove(0);
+			Iterator<PackedImage> it = index.values().iterator();
+			while (it.hasNext()) {
+				if (it.next().segment == oldestSegment) {
+					it.remove();
+				}
+			}
+			// Mapping stays valid, so images which are read at this moment are read to the end
+			oldestSegment.file.delete();
+		}
+	}
+
+	/** Returns summary size of segment files. Must be called under "this" lock. */
+	private long getPackedSize() {
+		long size = 0;
+		for (Segment segment : segments) {
+			size += segment.buffer.capacity();
+		}
+		return size;
+	}
+
+	/** Maps segment file into memory. File is extended to incoming size if it's smaller. */
+	private static Segment mapSegment(int id, File file, long size) throws IOException {
+		RandomAccessFile segmentFile = new RandomAccessFile(file, "rw");
+		try {
+			if (segmentFile.length() < size) {
+				segmentFile.setLength(size);
+			}
+			MappedByteBuffer buffer = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentFile.length());
+			return new Segment(id, file, buffer);
+		} finally {
+			segmentFile.close();
+		}
+	}
+
+	private void removePackedImage(String key) {
+		synchronized (this) {
+			if (!indexLoaded) {
+				// Packed copy will be removed from loaded index
+				keysChangedWhileLoading.add(key);
+				return;
+			}
+			PackedImage image = index.remove(key);
+			if (image != null) {
+				markDead(image);
+			}
+		}
+	}
+
+	/** Accounts record of image as dead. Must be called under "this" lock. */
+	private void markDead(PackedImage image) {
+		Segment segment = image.segment;
+		segment.deadBytes += image.recordSize;
+		if (segment != activeSegment && isWasteful(segment)) {
+			scheduleCompaction();
+		}
+	}
+
+	private static boolean isWasteful(Segment segment) {
+		return segment.deadBytes > 0 && segment.deadBytes * 100L >= segment.usedBytes * (long) COMPACTION_THRESHOLD_PERCENT;
+	}
+
+	private void scheduleCompaction() {
+		if (compactionScheduled.compareAndSet(false, true)) {
+			compactionExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					compactionScheduled.set(false);
+					compact();
+				}
+			});
+		}
+	}
+
+	/** Moves live images of wasteful segments into active segment and deletes wasteful segments */
+	private void compact() {
+		Set<Segment> wastefulSegments = new HashSet<Segment>();
+		synchronized (this) {
+			for (Segment segment : segments) {
+				if (segment != activeSegment && isWasteful(segment)) {
+					wastefulSegments.add(segment);
+				}
+			}
+		}
+		if (wastefulSegments.isEmpty()) return;
+
+		for (Map.Entry<String, PackedImage> entry : index.entrySet()) {
+			PackedImage image = entry.getValue();
+			if (!wastefulSegments.contains(image.segment)) continue;
+
+			String key = entry.getKey();
+			synchronized (this) {
+				// Image could be replaced (or cache could be cleared) meanwhile
+				if (index.get(key) != image) continue;
+
+				ByteBuffer data = image.segment.buffer.duplicate();
+				data.limit(image.dataOffset + image.dataLength);
+				data.position(image.dataOffset);
+				try {
+					index.put(key, append(key, data));
+				} catch (IOException e) {
+					L.e(e);
+					return;
+				}
+			}
+		}
+
+		synchronized (this) {
+			for (Segment segment : wastefulSegments) {
+				if (segments.remove(segment)) {
+					segment.file.delete();
+				}
+			}
+		}
+	}
+
+	private void startIndexLoading() {
+		Thread indexThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				loadSegments();
+			}
+		}, "Packed disc cache indexer");
+		indexThread.setPriority(Thread.MIN_PRIORITY);
+		indexThread.setDaemon(true);
+		indexThread.start();
+	}
+
+	/**
+	 * Maps existing segments and restores index by their records. Segments are scanned without lock, loaded index is
+	 * merged with changes which were made while loading.
+	 */
+	private void loadSegments() {
+		List<Segment> loadedSegments = new ArrayList<Segment>();
+		Map<String, PackedImage> loadedIndex = new HashMap<String, PackedImage>();
+		int lastSegmentId = 0;
+		File[] files = segmentsDir.listFiles();
+		if (files == null) {
+			files = new File[0];
+		}
+
+		int[] ids = new int[files.length];
+		int count = 0;
+		for (File file : files) {
+			String name = file.getName();
+			if (!name.endsWith(SEGMENT_FILE_SUFFIX)) continue;
+			try {
+				ids[count++] = Integer.parseInt(name.substring(0, name.length() - SEGMENT_FILE_SUFFIX.length()));
+			} catch (NumberFormatException e) {
+				// Not a segment
+			}
+		}
+		Arrays.sort(ids, 0, count);
+
+		for (int i = 0; i < count; i++) {
+			File file = new File(segmentsDir, ids[i] + SEGMENT_FILE_SUFFIX);
+			lastSegmentId = ids[i];
+			if (file.length() == 0) {
+				file.delete();
+				continue;
+			}
+			Segment segment;
+			try {
+				segment = mapSegment(ids[i], file, 0);
+			} catch (IOException e) {
+				L.w(LOG_SEGMENT_NOT_LOADED, file);
+				continue;
+			}
+			readRecords(segment, loadedIndex);
+			loadedSegments.add(segment);
+		}
+
+		synchronized (this) {
+			if (!clearedWhileLoading) {
+				// Nothing was packed while loading, images which were changed meanwhile are kept in separate files
+				for (String key : keysChangedWhileLoading) {
+					PackedImage image = loadedIndex.remove(key);
+					if (image != null) {
+						image.segment.deadBytes += image.recordSize;
+					}
+				}
+				index.putAll(loadedIndex);
+				segments.addAll(loadedSegments);
+				if (!segments.isEmpty()) {
+					activeSegment = segments.get(segments.size() - 1);
+				}
+				nextSegmentId = lastSegmentId + 1;
+				evictSegments();
+			}
+			keysChangedWhileLoading.clear();
+			indexLoaded = true;
+
+			for (Segment segment : segments) {
+				if (segment != activeSegment && isWasteful(segment)) {
+					scheduleCompaction();
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds images of segment into loaded index. Reading is stopped at the end of records or at incomplete record. Must
+	 * be called by loading thread only.
+	 */
+	private void readRecords(Segment segment, Map<String, PackedImage> loadedIndex) {
+		ByteBuffer buffer = segment.buffer;
+		int capacity = buffer.capacity();
+		int position = 0;
+		while (position + RECORD_HEADER_SIZE <= capacity) {
+			int keyLength = buffer.getInt(position);
+			if (keyLength <= 0 || keyLength > (capacity - position - RECORD_HEADER_SIZE) / 2) break;
+
+			int dataLengthOffset = position + 4 + keyLength * 2;
+			int dataLength = buffer.getInt(dataLengthOffset);
+			int dataOffset = dataLengthOffset + 4;
+			if (dataLength < 0 || dataLength > capacity - dataOffset) break;
+
+			char[] key = new char[keyLength];
+			for (int i = 0; i < keyLength; i++) {
+				key[i] = buffer.getChar(position + 4 + i * 2);
+			}
+			int recordSize = dataOffset + dataLength - position;
+			PackedImage oldImage = loadedIndex.put(new String(key), new PackedImage(segment, dataOffset, dataLength, recordSize));
+			if (oldImage != null) {
+				oldImage.segment.deadBytes += oldImage.recordSize;
+			}
+			position += recordSize;
+		}
+		segment.usedBytes = position;
+	}
+
+	/** Memory-mapped segment file */
+	private static final class Segment {
+
+		final int id;
+		final File file;
+		final MappedByteBuffer buffer;
+		/** Guarded by cache */
+		int usedBytes;
+		/** Guarded by cache */
+		int deadBytes;
+
+		Segment(int id, File file, MappedByteBuffer buffer) {
+			this.id = id;
+			this.file = file;
+			this.buffer = buffer;
+		}
+	}
+
+	/** Location of packed image in segment */
+	private static final class PackedImage {
+
+		final Segment segment;
+		final int dataOffset;
+		final int dataLength;
+		final int recordSize;
+
+		PackedImage(Segment segment, int dataOffset, int dataLength, int recordSize) {
+			this.segment = segment;
+			this.dataOffset = dataOffset;
+			this.dataLength = dataLength;
+			this.recordSize = recordSize;
+		}
+	}
+
+	/** Stream which reads image right from mapping of segment */
+	private static final class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!buffer.hasRemaining()) return -1;
+
+			int count = Math.min(len, buffer.remaining());
+			buffer.get(b, off, count);
+			return count;
+		}
+
+		@Override
+		public long skip(long n) {
+			int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+
+		@Override
+		public boolean markSupported() {
+			return true;
+		}
+
+		@Override
+		public synchronized void mark(int readLimit) {
+			buffer.mark();
+		}
+
+		@Override
+		public synchronized void reset() {
+			buffer.reset();
+		}
+	}
+}
@@ -32,6 +32,6 @@ public class UnlimitedDiscCache extends BaseDiscCache {
 
 	@Override
 	public void put(String key, File file) {
-		// Do nothing
+		super.put(key, file);
 	}
 }
@@ -0,0 +1,45 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.disc.naming;
+
+import java.io.File;
+
+/**
+ * Decorator for {@link FileNameGenerator}. Places files into subdirectories of cache directory (shards): name generated
+ * by wrapped generator is prefixed by shard directory chosen by hash of this name (<b>i.e.:</b> "3f/1234567").<br />
+ * Small directories are faster to look up than one large directory (especially on FAT-formatted SD cards).
+ * Subdirectories are created by disc cache when they are needed.
+ *
+ * @see cm.aptoide.com.nostra13.universalimageloader.cache.disc.BaseDiscCache
+ */
+public class ShardedFileNameGenerator implements FileNameGenerator {
+
+	/** Default number of shards: {@value} */
+	public static final int DEFAULT_SHARD_COUNT = 256;
+
+	private final FileNameGenerator fileNameGenerator;
+	private final int shardCount;
+
+	/** Uses {@link #DEFAULT_SHARD_COUNT default} number of shards */
+	public ShardedFileNameGenerator(FileNameGenerator fileNameGenerator) {
+		this(fileNameGenerator, DEFAULT_SHARD_COUNT);
+	}
+
+	/**
+	 * @param fileNameGenerator Wrapped generator of file names
+	 * @param shardCount Number of subdirectories files are distributed among (1..4096)
+	 */
+	public ShardedFileNameGenerator(FileNameGenerator fileNameGenerator, int shardCount) {
+		if (shardCount <= 0 || shardCount > 0x1000) throw new IllegalArgumentException("shardCount must be in range 1..4096");
+
+		this.fileNameGenerator = fileNameGenerator;
+		this.shardCount = shardCount;
+	}
+
+	@Override
+	public String generate(String imageUri) {
+		String fileName = fileNameGenerator.generate(imageUri);
+		int hash = fileName.hashCode();
+		hash ^= (hash >>> 16);
+		int shard = (hash & 0x7FFFFFFF) % shardCount;
+		return Integer.toHexString(shard) + File.separatorChar + fileName;
+	}
+}
@@ -2,23 +2,24 @@ package cm.aptoide.com.nostra13.universalimageloader.cache.memory;
 
 import java.lang.ref.Reference;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Base memory cache. Implements common functionality for memory cache. Provides object references (
- * {@linkplain Reference not strong}) storing.
+ * {@linkplain Reference not strong}) storing. Cache is thread-safe, getting of object never blocks.
  * 
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  */
 public abstract class BaseMemoryCache<K, V> implements MemoryCacheAware<K, V> {
 
 	/** Stores not strong references to objects */
-	private final Map<K, Reference<V>> softMap = Collections.synchronizedMap(new HashMap<K, Reference<V>>());
+	private final Map<K, Reference<V>> softMap = new ConcurrentHashMap<K, Reference<V>>();
 
 	@Override
 	public V get(K key) {
+		if (key == null) return null;
+
 		V result = null;
 		Reference<V> reference = softMap.get(key);
 		if (reference != null) {
@@ -29,12 +30,16 @@ public abstract class BaseMemoryCache<K, V> implements MemoryCacheAware<K, V> {
 
 	@Override
 	public boolean put(K key, V value) {
+		if (key == null || value == null) return false;
+
 		softMap.put(key, createReference(value));
 		return true;
 	}
 
 	@Override
 	public void remove(K key) {
+		if (key == null) return;
+
 		softMap.remove(key);
 	}
 
@@ -0,0 +1,170 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.memory;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+/**
+ * Pool of {@link Bitmap bitmaps} which can be reused for decoding of new images (see
+ * {@link BitmapFactory.Options#inBitmap}). Bitmaps are grouped by size and {@link Bitmap.Config config}. Total size of
+ * pooled bitmaps will not exceed size limit: when pool reaches limit then the oldest pooled bitmap is dropped.<br />
+ * Pool receives bitmaps which were evicted from {@link LimitedMemoryCache limited memory cache} (pool is an
+ * {@link EvictionListener} for it).<br />
+ * <b>NOTE:</b> Bitmap reusing is supported since Android 3.0 (API 11). Pooled bitmap is overwritten by new image, so
+ * use the pool only if bitmaps evicted from memory cache aren't displayed anymore (i.e. memory cache is large enough
+ * to keep all visible images).
+ * 
+ * @see LimitedMemoryCache#setEvictionListener(EvictionListener)
+ */
+public class BitmapPool implements EvictionListener<String, Bitmap> {
+
+	private final int sizeLimit;
+	private final ValueSizer<Bitmap> sizer = new BitmapSizer();
+	private int size = 0;
+
+	/** Pooled bitmaps grouped by size and config */
+	private final Map<Long, LinkedList<Bitmap>> buckets = new HashMap<Long, LinkedList<Bitmap>>();
+	/** All pooled bitmaps in order of their pooling (oldest first) */
+	private final Map<Bitmap, Long> pooledBitmaps = new LinkedHashMap<Bitmap, Long>();
+
+	private int hitCount = 0;
+	private int missCount = 0;
+	private int putCount = 0;
+	private int evictionCount = 0;
+
+	/**
+	 * @param sizeLimit Maximum total size of pooled bitmaps (in bytes)
+	 */
+	public BitmapPool(int sizeLimit) {
+		this.sizeLimit = sizeLimit;
+	}
+
+	/** Returns <b>true</b> - if current platform supports decoding into existing bitmaps */
+	public static boolean isReuseSupported() {
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+	}
+
+	@Override
+	public boolean onEvicted(String key, Bitmap value) {
+		return put(value);
+	}
+
+	/**
+	 * Puts bitmap into pool. Bitmap should be <b>mutable</b> and shouldn't be used by anybody after pooling.
+	 * 
+	 * @return <b>true</b> - if bitmap was pooled; <b>false</b> - if bitmap can't be reused (and it wasn't pooled)
+	 */
+	public synchronized boolean put(Bitmap bitmap) {
+		if (!isReuseSupported() || bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+			return false;
+		}
+		int bitmapSize = getSize(bitmap);
+		if (bitmapSize > sizeLimit || pooledBitmaps.containsKey(bitmap)) {
+			return false;
+		}
+
+		Long bucketKey = getBucketKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+		LinkedList<Bitmap> bucket = buckets.get(bucketKey);
+		if (bucket == null) {
+			bucket = new LinkedList<Bitmap>();
+			buckets.put(bucketKey, bucket);
+		}
+		bucket.addLast(bitmap);
+		pooledBitmaps.put(bitmap, bucketKey);
+		size += bitmapSize;
+		putCount++;
+
+		trimToSize(sizeLimit);
+		return true;
+	}
+
+	/**
+	 * Takes bitmap of defined size and config from pool.
+	 * 
+	 * @return Pooled bitmap (it's removed from pool) or <b>null</b> if pool hasn't appropriate bitmap
+	 */
+	public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+		Long bucketKey = getBucketKey(width, height, config);
+		LinkedList<Bitmap> bucket = buckets.get(bucketKey);
+		if (bucket == null || bucket.isEmpty()) {
+			missCount++;
+			return null;
+		}
+
+		Bitmap bitmap = bucket.removeLast();
+		if (bucket.isEmpty()) {
+			buckets.remove(bucketKey);
+		}
+		pooledBitmaps.remove(bitmap);
+		size -= getSize(bitmap);
+		hitCount++;
+		return bitmap;
+	}
+
+	/** Removes all bitmaps from pool */
+	public synchronized void clear() {
+		buckets.clear();
+		pooledBitmaps.clear();
+		size = 0;
+	}
+
+	/** Returns total size of pooled bitmaps (in bytes) */
+	public synchronized int getSize() {
+		return size;
+	}
+
+	public int getSizeLimit() {
+		return sizeLimit;
+	}
+
+	/** Returns count of {@link #get(int, int, Bitmap.Config)} calls which returned pooled bitmap */
+	public synchronized int getHitCount() {
+		return hitCount;
+	}
+
+	/** Returns count of {@link #get(int, int, Bitmap.Config)} calls which didn't find appropriate bitmap */
+	public synchronized int getMissCount() {
+		return missCount;
+	}
+
+	/** Returns count of bitmaps which were pooled */
+	public synchronized int getPutCount() {
+		return putCount;
+	}
+
+	/** Returns count of bitmaps which were dropped from pool because of size limit */
+	public synchronized int getEvictionCount() {
+		return evictionCount;
+	}
+
+	private void trimToSize(int maxSize) {
+		Iterator<Map.Entry<Bitmap, Long>> it = pooledBitmaps.entrySet().iterator();
+		while (size > maxSize && it.hasNext()) {
+			Map.Entry<Bitmap, Long> oldest = it.next();
+			Bitmap bitmap = oldest.getKey();
+			LinkedList<Bitmap> bucket = buckets.get(oldest.getValue());
+			bucket.remove(bitmap);
+			if (bucket.isEmpty()) {
+				buckets.remove(oldest.getValue());
+			}
+			it.remove();
+			size -= getSize(bitmap);
+			evictionCount++;
+		}
+	}
+
+	private int getSize(Bitmap bitmap) {
+		return sizer.getSize(bitmap);
+	}
+
+	private static Long getBucketKey(int width, int height, Bitmap.Config config) {
+		long configIndex = config == null ? 0 : config.ordinal() + 1;
+		return ((long) width << 36) | ((long) height << 8) | configIndex;
+	}
+}
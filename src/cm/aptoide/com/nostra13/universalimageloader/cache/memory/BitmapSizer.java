@@ -0,0 +1,12 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.memory;
+
+import android.graphics.Bitmap;
+
+/** Measures size of {@link Bitmap} as number of bytes of its pixels */
+public final class BitmapSizer implements ValueSizer<Bitmap> {
+
+	@Override
+	public int getSize(Bitmap value) {
+		return value.getRowBytes() * value.getHeight();
+	}
+}
@@ -0,0 +1,20 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.memory;
+
+/**
+ * Listener for evictions of values from {@link LimitedMemoryCache limited memory cache}.
+ * 
+ * @see LimitedMemoryCache#setEvictionListener(EvictionListener)
+ * @see BitmapPool
+ */
+public interface EvictionListener<K, V> {
+
+	/**
+	 * Is called when value was evicted from limited cache to free space for new value.
+	 * 
+	 * @param key Key of evicted value
+	 * @param value Evicted value
+	 * @return <b>true</b> - if listener took evicted value for itself (e.g. for reusing). In this case cache forgets
+	 *         this value completely and won't return it for <b>key</b> anymore; <b>false</b> - otherwise.
+	 */
+	boolean onEvicted(K key, V value);
+}
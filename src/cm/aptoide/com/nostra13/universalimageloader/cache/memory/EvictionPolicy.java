@@ -0,0 +1,43 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.memory;
+
+/**
+ * Policy which chooses values to evict from one segment of {@link LimitedMemoryCache limited memory cache}. Each
+ * segment has its own policy instance (see {@link LimitedMemoryCache#createEvictionPolicy()}). All methods are called
+ * under lock of segment, so implementations don't need to be thread-safe.<br />
+ * Cache evicts value from segment whose {@linkplain #getCandidatePriority() candidate for eviction} has the lowest
+ * priority, so eviction order is kept across segments.
+ *
+ * @see LimitedMemoryCache
+ */
+public interface EvictionPolicy<K, V> {
+
+	/** Is called when value is put into segment (previous value for the same key is {@linkplain #onRemove removed} before) */
+	void onPut(K key, V value);
+
+	/**
+	 * Is called when value is got from cache. Calls are lossy: access isn't recorded if segment is busy at this moment,
+	 * so getting never blocks.
+	 */
+	void onAccess(K key, V value);
+
+	/** Is called when value is removed from segment not by eviction */
+	void onRemove(K key, V value);
+
+	/**
+	 * Chooses value to evict and forgets it.
+	 *
+	 * @return Key of value which should be evicted or <b>null</b> if policy doesn't track any values
+	 */
+	K evict();
+
+	/**
+	 * Returns priority of value which would be evicted by {@link #evict()} now. Priorities of policies of one cache are
+	 * compared with each other: candidate with the lowest priority is evicted first.
+	 *
+	 * @return Priority of candidate or {@link Long#MAX_VALUE} if policy doesn't track any values
+	 */
+	long getCandidatePriority();
+
+	/** Forgets all values */
+	void clear();
+}
@@ -1,61 +1,108 @@
 package cm.aptoide.com.nostra13.universalimageloader.cache.memory;
 
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import cm.aptoide.com.nostra13.universalimageloader.utils.L;
 
 /**
  * Limited cache. Provides object storing. Size of all stored bitmaps will not to exceed size limit (
- * {@link #getSizeLimit()}).
- * 
+ * {@link #getSizeLimit()}).<br />
+ * Strong references to stored objects are split into segments by key. Each segment has its own lock and its own
+ * {@link EvictionPolicy}, so threads working with different segments don't block each other and getting of object
+ * never waits for lock. Size of cache is accounted globally: if size limit is exceeded then candidates for eviction of
+ * all segments are compared by {@linkplain EvictionPolicy#getCandidatePriority() priority} and the best one is
+ * evicted, so eviction order of policy is kept for the whole cache. Priority of candidate is remembered by segment and
+ * is refreshed only after segment was changed and only if segment isn't locked by another thread at this moment, so
+ * eviction locks only segment which value is evicted from. Choice is approximate while some segment is busy.<br />
+ * Sizes of values are measured by {@link ValueSizer} (or by overridden {@link #getSize(Object)}).
+ *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see BaseMemoryCache
+ * @see EvictionPolicy
  */
 public abstract class LimitedMemoryCache<K, V> extends BaseMemoryCache<K, V> {
 
 	private static final int MAX_NORMAL_CACHE_SIZE_IN_MB = 16;
 	private static final int MAX_NORMAL_CACHE_SIZE = 16 * 1024 * 1024;
 
+	/** Number of segments. Should be power of 2. */
+	private static final int SEGMENT_COUNT = 4;
+
 	private final int sizeLimit;
+	private final ValueSizer<V> sizer;
 
-	private int cacheSize = 0;
+	private final AtomicInteger cacheSize = new AtomicInteger();
 
 	/**
-	 * Contains strong references to stored objects. Each next object is added last. If hard cache size will exceed
-	 * limit then first object is deleted (but it continue exist at {@link #softMap} and can be collected by GC at any
-	 * time)
+	 * Contain strong references to stored objects (and their keys). If hard cache size will exceed limit then object
+	 * chosen by {@link EvictionPolicy#evict()} is deleted (but it continue exist at {@link #softMap} and can be
+	 * collected by GC at any time)
 	 */
-	private final List<V> hardCache = Collections.synchronizedList(new LinkedList<V>());
+	private final Segment<K, V>[] segments;
+
+	private volatile EvictionListener<K, V> evictionListener;
 
 	/**
+	 * Subclass must override {@link #getSize(Object)}.
+	 *
 	 * @param sizeLimit Maximum size for cache (in bytes)
 	 */
 	public LimitedMemoryCache(int sizeLimit) {
+		this(sizeLimit, null);
+	}
+
+	/**
+	 * @param sizeLimit Maximum size for cache (in bytes)
+	 * @param sizer Sizer of cached values
+	 */
+	@SuppressWarnings("unchecked")
+	public LimitedMemoryCache(int sizeLimit, ValueSizer<V> sizer) {
 		this.sizeLimit = sizeLimit;
+		this.sizer = sizer;
 		if (sizeLimit > MAX_NORMAL_CACHE_SIZE) {
 			L.w("You set too large memory cache size (more than %1$d Mb)", MAX_NORMAL_CACHE_SIZE_IN_MB);
 		}
+		segments = new Segment[SEGMENT_COUNT];
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			segments[i] = new Segment<K, V>(createEvictionPolicy());
+		}
 	}
 
 	@Override
 	public boolean put(K key, V value) {
+		if (key == null || value == null) return false;
+
 		boolean putSuccessfully = false;
 		// Try to add value to hard cache
 		int valueSize = getSize(value);
 		int sizeLimit = getSizeLimit();
 		if (valueSize < sizeLimit) {
-			while (cacheSize + valueSize > sizeLimit) {
-				V removedValue = removeNext();
-				if (hardCache.remove(removedValue)) {
-					cacheSize -= getSize(removedValue);
+			// Free space for value before adding, so value itself can't be chosen for eviction
+			trimToSize(sizeLimit - valueSize);
+
+			Segment<K, V> segment = segments[segmentIndexFor(key)];
+			segment.lock.lock();
+			try {
+				V oldValue = segment.hardCache.put(key, value);
+				if (oldValue != null) {
+					segment.size -= getSize(oldValue);
+					cacheSize.addAndGet(-getSize(oldValue));
+					segment.policy.onRemove(key, oldValue);
 				}
+				segment.policy.onPut(key, value);
+				segment.candidateChanged = true;
+				segment.size += valueSize;
+				cacheSize.addAndGet(valueSize);
+			} finally {
+				segment.lock.unlock();
 			}
-			hardCache.add(value);
-			cacheSize += valueSize;
-
 			putSuccessfully = true;
+
+			// Other threads could add values concurrently
+			trimToSize(sizeLimit);
 		}
 		// Add value to soft cache
 		super.put(key, value);
@@ -63,28 +110,193 @@ public abstract class LimitedMemoryCache<K, V> extends BaseMemoryCache<K, V> {
 	}
 
 	@Override
-	public void remove(K key) {
+	public V get(K key) {
 		V value = super.get(key);
 		if (value != null) {
-			if (hardCache.remove(value)) {
-				cacheSize -= getSize(value);
+			Segment<K, V> segment = segments[segmentIndexFor(key)];
+			// Access is recorded only if segment is free at this moment: getting never waits for lock
+			if (segment.lock.tryLock()) {
+				try {
+					if (segment.hardCache.get(key) == value) {
+						segment.policy.onAccess(key, value);
+						segment.candidateChanged = true;
+					}
+				} finally {
+					segment.lock.unlock();
+				}
 			}
 		}
+		return value;
+	}
+
+	@Override
+	public void remove(K key) {
+		if (key == null) return;
+
+		Segment<K, V> segment = segments[segmentIndexFor(key)];
+		segment.lock.lock();
+		try {
+			V value = segment.hardCache.remove(key);
+			if (value != null) {
+				int valueSize = getSize(value);
+				segment.size -= valueSize;
+				cacheSize.addAndGet(-valueSize);
+				segment.policy.onRemove(key, value);
+				segment.candidateChanged = true;
+			}
+		} finally {
+			segment.lock.unlock();
+		}
 		super.remove(key);
 	}
 
 	@Override
 	public void clear() {
-		hardCache.clear();
-		cacheSize = 0;
+		for (Segment<K, V> segment : segments) {
+			segment.lock.lock();
+			try {
+				segment.hardCache.clear();
+				segment.policy.clear();
+				segment.candidatePriority = Long.MAX_VALUE;
+				segment.candidateChanged = false;
+				cacheSize.addAndGet(-segment.size);
+				segment.size = 0;
+			} finally {
+				segment.lock.unlock();
+			}
+		}
 		super.clear();
 	}
 
+	/**
+	 * Sets listener for values evicted from cache because of size limit (e.g. {@link BitmapPool} for reusing of evicted
+	 * bitmaps)
+	 */
+	public void setEvictionListener(EvictionListener<K, V> evictionListener) {
+		this.evictionListener = evictionListener;
+	}
+
+	/**
+	 * Evicts values until cache size doesn't exceed incoming size. Every value is evicted from segment which has the
+	 * best candidate for eviction. Only segment which value is evicted from is locked, so candidate of segment can
+	 * change before eviction (then segment evicts its new candidate).
+	 */
+	private void trimToSize(int maxSize) {
+		while (cacheSize.get() > maxSize) {
+			Segment<K, V> segment = findEvictionSegment();
+			if (segment == null) break; // All segments are empty
+
+			K removedKey = null;
+			V removedValue = null;
+			segment.lock.lock();
+			try {
+				removedKey = segment.policy.evict();
+				segment.candidateChanged = true;
+				if (removedKey != null) {
+					removedValue = segment.hardCache.remove(removedKey);
+					if (removedValue != null) {
+						int removedSize = getSize(removedValue);
+						segment.size -= removedSize;
+						cacheSize.addAndGet(-removedSize);
+					}
+				}
+			} finally {
+				segment.lock.unlock();
+			}
+
+			if (removedValue != null) {
+				notifyEvicted(removedKey, removedValue);
+			}
+		}
+	}
+
+	/**
+	 * Returns segment whose candidate for eviction has the lowest remembered priority or <b>null</b> if all segments
+	 * are empty. Priorities of changed segments are refreshed if segments are free. Segments are waited for only if
+	 * all remembered priorities say that cache is empty.
+	 */
+	private Segment<K, V> findEvictionSegment() {
+		Segment<K, V> evictionSegment = findEvictionSegment(false);
+		if (evictionSegment == null) {
+			evictionSegment = findEvictionSegment(true);
+		}
+		return evictionSegment;
+	}
+
+	private Segment<K, V> findEvictionSegment(boolean waitForSegments) {
+		Segment<K, V> evictionSegment = null;
+		long minPriority = Long.MAX_VALUE;
+		for (Segment<K, V> segment : segments) {
+			if (segment.candidateChanged) {
+				refreshCandidatePriority(segment, waitForSegments);
+			}
+			long priority = segment.candidatePriority;
+			if (priority < minPriority) {
+				minPriority = priority;
+				evictionSegment = segment;
+			}
+		}
+		return evictionSegment;
+	}
+
+	private void refreshCandidatePriority(Segment<K, V> segment, boolean waitForSegment) {
+		if (waitForSegment) {
+			segment.lock.lock();
+		} else if (!segment.lock.tryLock()) {
+			return; // Remembered priority is used
+		}
+		try {
+			segment.candidatePriority = segment.policy.getCandidatePriority();
+			segment.candidateChanged = false;
+		} finally {
+			segment.lock.unlock();
+		}
+	}
+
+	private void notifyEvicted(K key, V value) {
+		EvictionListener<K, V> listener = evictionListener;
+		if (listener != null && listener.onEvicted(key, value)) {
+			// Value is owned by listener now, so it mustn't be returned by cache
+			if (super.get(key) == value) {
+				super.remove(key);
+			}
+		}
+	}
+
+	private int segmentIndexFor(K key) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return hash & (SEGMENT_COUNT - 1);
+	}
+
 	protected int getSizeLimit() {
 		return sizeLimit;
 	}
 
-	protected abstract int getSize(V value);
+	/** Returns size of value. Measures value by {@linkplain ValueSizer sizer} of cache. */
+	protected int getSize(V value) {
+		return sizer.getSize(value);
+	}
+
+	/**
+	 * Creates eviction policy for one segment of cache. Is called from constructor of this class, so policy mustn't
+	 * depend on fields of subclass.
+	 */
+	protected abstract EvictionPolicy<K, V> createEvictionPolicy();
 
-	protected abstract V removeNext();
+	private static final class Segment<K, V> {
+
+		final ReentrantLock lock = new ReentrantLock();
+		final Map<K, V> hardCache = new HashMap<K, V>();
+		final EvictionPolicy<K, V> policy;
+		int size = 0;
+		/** Remembered {@linkplain EvictionPolicy#getCandidatePriority() priority} of candidate for eviction */
+		volatile long candidatePriority = Long.MAX_VALUE;
+		/** Whether policy was changed after priority of its candidate was remembered */
+		volatile boolean candidateChanged = false;
+
+		Segment(EvictionPolicy<K, V> policy) {
+			this.policy = policy;
+		}
+	}
 }
@@ -0,0 +1,14 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.memory;
+
+/**
+ * Measures size of cached values. Limited caches account their size through sizer, so eviction logic doesn't depend on
+ * type of values (e.g. it can be run for plain byte arrays outside of Android).
+ *
+ * @see LimitedMemoryCache
+ * @see BitmapSizer
+ */
+public interface ValueSizer<V> {
+
+	/** Returns size of value (in bytes) */
+	int getSize(V value);
+}
@@ -2,13 +2,13 @@ package cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl;
 
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
 
 import android.graphics.Bitmap;
 
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.BitmapSizer;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.EvictionPolicy;
 import cm.aptoide.com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.policy.FIFOEvictionPolicy;
 
 /**
  * Limited {@link Bitmap bitmap} cache. Provides {@link Bitmap bitmaps} storing. Size of all stored bitmaps will not to
@@ -18,45 +18,13 @@ import cm.aptoide.com.nostra13.universalimageloader.cache.memory.LimitedMemoryCa
  */
 public class FIFOLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
 
-	private final List<Bitmap> queue = Collections.synchronizedList(new LinkedList<Bitmap>());
-
 	public FIFOLimitedMemoryCache(int sizeLimit) {
-		super(sizeLimit);
-	}
-
-	@Override
-	public boolean put(String key, Bitmap value) {
-		if (super.put(key, value)) {
-			queue.add(value);
-			return true;
-		} else {
-			return false;
-		}
-	}
-
-	@Override
-	public void remove(String key) {
-		Bitmap value = super.get(key);
-		if (value != null) {
-			queue.remove(value);
-		}
-		super.remove(key);
-	}
-
-	@Override
-	public void clear() {
-		queue.clear();
-		super.clear();
-	}
-
-	@Override
-	protected int getSize(Bitmap value) {
-		return value.getRowBytes() * value.getHeight();
+		super(sizeLimit, new BitmapSizer());
 	}
 
 	@Override
-	protected Bitmap removeNext() {
-		return queue.remove(0);
+	protected EvictionPolicy<String, Bitmap> createEvictionPolicy() {
+		return new FIFOEvictionPolicy<String, Bitmap>();
 	}
 
 	@Override
@@ -0,0 +1,105 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl;
+
+/**
+ * Compact probabilistic counter of key usages (count-min sketch with 4-bit counters). Each key is counted in 4 counters
+ * chosen by different hash functions; frequency of key is the minimum of them, so it can be overestimated because of
+ * collisions but never underestimated. Counters are halved periodically (after a number of increments proportional to
+ * table size), so the sketch forgets old popularity and adapts to changes of access pattern.<br />
+ * Sketch isn't thread-safe.
+ *
+ * @see TinyLFUMemoryCache
+ */
+final class FrequencySketch {
+
+	private static final int MIN_TABLE_SIZE = 16;
+	private static final int SAMPLE_SIZE_FACTOR = 10;
+	private static final int MAX_COUNTER_VALUE = 15;
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final int[] SEEDS = { 0x97CB3127, 0xB2F52E6B, 0xCF3C3E8F, 0x8A4F3F6D };
+
+	private long[] table;
+	private int tableMask;
+	private int sampleSize;
+	private int incrementCount;
+
+	FrequencySketch() {
+		ensureCapacity(0);
+	}
+
+	/**
+	 * Grows sketch so it can count usages of incoming number of keys with low error. Accumulated counts are dropped if
+	 * sketch is grown.
+	 */
+	void ensureCapacity(int expectedKeyCount) {
+		int tableSize = MIN_TABLE_SIZE;
+		while (tableSize < expectedKeyCount && tableSize < (1 << 30)) {
+			tableSize <<= 1;
+		}
+		if (table != null && table.length >= tableSize) return;
+
+		table = new long[tableSize];
+		tableMask = tableSize - 1;
+		sampleSize = SAMPLE_SIZE_FACTOR * tableSize;
+		incrementCount = 0;
+	}
+
+	/** Returns estimated usage count of key (0..15) */
+	int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int frequency = MAX_COUNTER_VALUE;
+		for (int i = 0; i < SEEDS.length; i++) {
+			int counterHash = counterHash(hash, i);
+			int count = (int) ((table[counterHash & tableMask] >>> counterShift(counterHash)) & 0xF);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/** Increments usage count of key. Counters are halved if sample period is over. */
+	void increment(Object key) {
+		int hash = spread(key.hashCode());
+		boolean incremented = false;
+		for (int i = 0; i < SEEDS.length; i++) {
+			int counterHash = counterHash(hash, i);
+			int index = counterHash & tableMask;
+			int shift = counterShift(counterHash);
+			if (((table[index] >>> shift) & 0xF) < MAX_COUNTER_VALUE) {
+				table[index] += 1L << shift;
+				incremented = true;
+			}
+		}
+		if (incremented && ++incrementCount >= sampleSize) {
+			reset();
+		}
+	}
+
+	void clear() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = 0L;
+		}
+		incrementCount = 0;
+	}
+
+	/** Halves all counters (aging) */
+	private void reset() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		incrementCount /= 2;
+	}
+
+	private static int counterHash(int hash, int i) {
+		int h = (hash + SEEDS[i]) * SEEDS[i];
+		return h ^ (h >>> 17);
+	}
+
+	/** Chooses one of 16 4-bit counters of table element */
+	private static int counterShift(int counterHash) {
+		return ((counterHash >>> 26) & 0xF) << 2;
+	}
+
+	private static int spread(int hash) {
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		return hash ^ (hash >>> 7) ^ (hash >>> 4);
+	}
+}
@@ -34,13 +34,15 @@ public class FuzzyKeyMemoryCache<K, V> implements MemoryCacheAware<K, V> {
 				keyToRemove = cacheKey;
 			}
 		}
-		cache.remove(keyToRemove);
+		if (keyToRemove != null) {
+			cache.remove(keyToRemove);
+		}
 
 		return cache.put(key, value);
 	}
 
 	@Override
-	public synchronized V get(K key) {
+	public V get(K key) {
 		return cache.get(key);
 	}
 
@@ -55,7 +57,7 @@ public class FuzzyKeyMemoryCache<K, V> implements MemoryCacheAware<K, V> {
 	}
 
 	@Override
-	public synchronized Collection<K> keys() {
+	public Collection<K> keys() {
 		return cache.keys();
 	}
 }
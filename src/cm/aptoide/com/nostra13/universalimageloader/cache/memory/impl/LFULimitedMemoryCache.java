@@ -0,0 +1,38 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+
+import android.graphics.Bitmap;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.BitmapSizer;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.EvictionPolicy;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.policy.LFUEvictionPolicy;
+
+/**
+ * Limited {@link Bitmap bitmap} cache. Provides {@link Bitmap bitmaps} storing. Size of all stored bitmaps will not to
+ * exceed size limit. When cache reaches limit size then the bitmap which used the least frequently is deleted from
+ * cache (the oldest one of them if there are several such bitmaps).<br />
+ * Unlike {@link UsingFreqLimitedMemoryCache} this cache doesn't scan all bitmaps to find the least frequently used one.
+ * Bitmaps are grouped into buckets by usage count, buckets are kept in ascending order, so get, put and eviction take
+ * constant time.
+ *
+ * @see UsingFreqLimitedMemoryCache
+ */
+public class LFULimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
+
+	public LFULimitedMemoryCache(int sizeLimit) {
+		super(sizeLimit, new BitmapSizer());
+	}
+
+	@Override
+	protected EvictionPolicy<String, Bitmap> createEvictionPolicy() {
+		return new LFUEvictionPolicy<String, Bitmap>();
+	}
+
+	@Override
+	protected Reference<Bitmap> createReference(Bitmap value) {
+		return new WeakReference<Bitmap>(value);
+	}
+}
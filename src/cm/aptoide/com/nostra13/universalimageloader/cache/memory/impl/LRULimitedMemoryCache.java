@@ -2,15 +2,13 @@ package cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl;
 
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import android.graphics.Bitmap;
 
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.BitmapSizer;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.EvictionPolicy;
 import cm.aptoide.com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.policy.LRUEvictionPolicy;
 
 /**
  * Limited {@link Bitmap bitmap} cache. Provides {@link Bitmap bitmaps} storing. Size of all stored bitmaps will not to
@@ -20,61 +18,13 @@ import cm.aptoide.com.nostra13.universalimageloader.cache.memory.LimitedMemoryCa
  */
 public class LRULimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
 
-	private static final int INITIAL_CAPACITY = 10;
-	private static final float LOAD_FACTOR = 1.1f;
-
-	/** Cache providing Least-Recently-Used logic */
-	private final Map<String, Bitmap> lruCache = Collections.synchronizedMap(new LinkedHashMap<String, Bitmap>(INITIAL_CAPACITY, LOAD_FACTOR, true));
-
 	public LRULimitedMemoryCache(int sizeLimit) {
-		super(sizeLimit);
-	}
-
-	@Override
-	public boolean put(String key, Bitmap value) {
-		if (super.put(key, value)) {
-			lruCache.put(key, value);
-			return true;
-		} else {
-			return false;
-		}
-	}
-
-	@Override
-	public Bitmap get(String key) {
-		lruCache.get(key); // call "get" for LRU logic
-		return super.get(key);
-	}
-
-	@Override
-	public void remove(String key) {
-		lruCache.remove(key);
-		super.remove(key);
-	}
-
-	@Override
-	public void clear() {
-		lruCache.clear();
-		super.clear();
-	}
-
-	@Override
-	protected int getSize(Bitmap value) {
-		return value.getRowBytes() * value.getHeight();
+		super(sizeLimit, new BitmapSizer());
 	}
 
 	@Override
-	protected Bitmap removeNext() {
-		Bitmap mostLongUsedValue = null;
-		synchronized (lruCache) {
-			Iterator<Entry<String, Bitmap>> it = lruCache.entrySet().iterator();
-			if (it.hasNext()) {
-				Entry<String, Bitmap> entry = it.next();
-				mostLongUsedValue = entry.getValue();
-				it.remove();
-			}
-		}
-		return mostLongUsedValue;
+	protected EvictionPolicy<String, Bitmap> createEvictionPolicy() {
+		return new LRUEvictionPolicy<String, Bitmap>();
 	}
 
 	@Override
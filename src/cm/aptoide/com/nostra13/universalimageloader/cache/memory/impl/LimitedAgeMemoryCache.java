@@ -1,9 +1,8 @@
 package cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl;
 
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import cm.aptoide.com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
 
@@ -19,7 +18,7 @@ public class LimitedAgeMemoryCache<K, V> implements MemoryCacheAware<K, V> {
 	private final MemoryCacheAware<K, V> cache;
 
 	private final long maxAge;
-	private final Map<K, Long> loadingDates = Collections.synchronizedMap(new HashMap<K, Long>());
+	private final Map<K, Long> loadingDates = new ConcurrentHashMap<K, Long>();
 
 	/**
 	 * @param cache Wrapped memory cache
@@ -0,0 +1,335 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.BitmapSizer;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.ValueSizer;
+
+/**
+ * Limited {@link Bitmap bitmap} cache which resists one-off scans (e.g. fast fling through long list). Size of all
+ * stored bitmaps will not to exceed size limit.<br />
+ * New bitmaps get into small LRU window (1% of size limit). Bitmaps pushed out of window compete for main region:
+ * bitmap is admitted only if its estimated usage frequency is higher than frequency of bitmap which would be evicted
+ * for it. Frequencies are kept in compact {@linkplain FrequencySketch sketch} which also counts usages of already
+ * evicted and not yet cached images and ages periodically. Main region is segmented: bitmaps used again while they are
+ * in probation segment move to protected segment (80% of main region).<br />
+ * Cache keeps statistics of hits and misses, so {@linkplain #getHitRatio() hit ratio} can be compared with other
+ * caches.
+ *
+ * @see LFULimitedMemoryCache
+ * @see LRULimitedMemoryCache
+ */
+public class TinyLFUMemoryCache implements MemoryCacheAware<String, Bitmap> {
+
+	private static final float WINDOW_PERCENT = 0.01f;
+	private static final float PROTECTED_PERCENT = 0.8f;
+
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+
+	private final int sizeLimit;
+	private final int windowSizeLimit;
+	private final int protectedSizeLimit;
+	private final ValueSizer<Bitmap> sizer = new BitmapSizer();
+
+	private final Map<String, Node> cache = new HashMap<String, Node>();
+	private final FrequencySketch sketch = new FrequencySketch();
+
+	private final NodeList window = new NodeList();
+	private final NodeList probation = new NodeList();
+	private final NodeList protectedList = new NodeList();
+
+	private int windowSize;
+	private int probationSize;
+	private int protectedSize;
+
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+	private long rejectionCount;
+
+	/**
+	 * @param sizeLimit Maximum size for cache (in bytes)
+	 */
+	public TinyLFUMemoryCache(int sizeLimit) {
+		if (sizeLimit <= 0) throw new IllegalArgumentException("sizeLimit must be a positive number");
+
+		this.sizeLimit = sizeLimit;
+		windowSizeLimit = Math.max(1, (int) (sizeLimit * WINDOW_PERCENT));
+		protectedSizeLimit = (int) ((sizeLimit - windowSizeLimit) * PROTECTED_PERCENT);
+	}
+
+	@Override
+	public synchronized boolean put(String key, Bitmap value) {
+		int valueSize = getSize(value);
+		if (valueSize > sizeLimit) {
+			remove(key);
+			return false;
+		}
+
+		sketch.increment(key);
+		Node node = cache.get(key);
+		if (node != null) {
+			addSize(node.segment, valueSize - node.size);
+			node.value = value;
+			node.size = valueSize;
+			onAccess(node);
+		} else {
+			node = new Node(key, value, valueSize);
+			cache.put(key, node);
+			sketch.ensureCapacity(cache.size());
+			window.addLast(node);
+			windowSize += valueSize;
+		}
+		evict();
+		return true;
+	}
+
+	@Override
+	public synchronized Bitmap get(String key) {
+		sketch.increment(key);
+		Node node = cache.get(key);
+		if (node == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		onAccess(node);
+		return node.value;
+	}
+
+	@Override
+	public synchronized void remove(String key) {
+		Node node = cache.remove(key);
+		if (node != null) {
+			unlink(node);
+		}
+	}
+
+	@Override
+	public synchronized Collection<String> keys() {
+		return new ArrayList<String>(cache.keySet());
+	}
+
+	@Override
+	public synchronized void clear() {
+		cache.clear();
+		window.clear();
+		probation.clear();
+		protectedList.clear();
+		windowSize = probationSize = protectedSize = 0;
+		sketch.clear();
+	}
+
+	/** Returns maximum size of cache (in bytes) */
+	public int getSizeLimit() {
+		return sizeLimit;
+	}
+
+	/** Returns current size of cache (in bytes) */
+	public synchronized int getSize() {
+		return windowSize + probationSize + protectedSize;
+	}
+
+	/** Returns number of {@link #get(String)} calls which returned cached bitmap */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/** Returns number of {@link #get(String)} calls which didn't find bitmap in cache */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/** Returns part of {@link #get(String)} calls which returned cached bitmap (0..1) */
+	public synchronized double getHitRatio() {
+		long requestCount = hitCount + missCount;
+		return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+	}
+
+	/** Returns number of bitmaps which were evicted from main region of cache */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/** Returns number of bitmaps which weren't admitted into main region of cache because they are used too rarely */
+	public synchronized long getRejectionCount() {
+		return rejectionCount;
+	}
+
+	protected int getSize(Bitmap value) {
+		return sizer.getSize(value);
+	}
+
+	private void onAccess(Node node) {
+		switch (node.segment) {
+			case WINDOW:
+				window.moveToLast(node);
+				break;
+			case PROBATION:
+				// Bitmap is used again: promote it to protected segment
+				probation.remove(node);
+				probationSize -= node.size;
+				node.segment = PROTECTED;
+				protectedList.addLast(node);
+				protectedSize += node.size;
+				demoteProtected();
+				break;
+			case PROTECTED:
+				protectedList.moveToLast(node);
+				break;
+		}
+	}
+
+	/** Moves the least recently used bitmaps from overflowed protected segment back to probation segment */
+	private void demoteProtected() {
+		while (protectedSize > protectedSizeLimit && protectedList.head != null) {
+			Node node = protectedList.head;
+			protectedList.remove(node);
+			protectedSize -= node.size;
+			node.segment = PROBATION;
+			probation.addLast(node);
+			probationSize += node.size;
+		}
+	}
+
+	private void evict() {
+		// Bitmaps pushed out of window become candidates for main region (they are placed to the tail of probation)
+		int candidateCount = 0;
+		while (windowSize > windowSizeLimit && window.head != null) {
+			Node node = window.head;
+			window.remove(node);
+			windowSize -= node.size;
+			node.segment = PROBATION;
+			probation.addLast(node);
+			probationSize += node.size;
+			candidateCount++;
+		}
+
+		// Each candidate competes with victim (the head of probation), the least frequently used of them is evicted
+		while (getSize() > sizeLimit) {
+			Node victim = probation.head;
+			Node candidate = candidateCount > 0 ? probation.tail : null;
+			if (victim == null) {
+				victim = protectedList.head != null ? protectedList.head : window.head;
+			}
+			if (candidate == null || candidate == victim) {
+				evictNode(victim);
+				evictionCount++;
+				candidateCount = candidate == null ? 0 : candidateCount - 1;
+			} else if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+				evictNode(victim);
+				evictionCount++;
+			} else {
+				evictNode(candidate);
+				rejectionCount++;
+				candidateCount--;
+			}
+		}
+	}
+
+	private void evictNode(Node node) {
+		cache.remove(node.key);
+		unlink(node);
+	}
+
+	private void unlink(Node node) {
+		switch (node.segment) {
+			case WINDOW:
+				window.remove(node);
+				windowSize -= node.size;
+				break;
+			case PROBATION:
+				probation.remove(node);
+				probationSize -= node.size;
+				break;
+			case PROTECTED:
+				protectedList.remove(node);
+				protectedSize -= node.size;
+				break;
+		}
+	}
+
+	private void addSize(int segment, int delta) {
+		switch (segment) {
+			case WINDOW:
+				windowSize += delta;
+				break;
+			case PROBATION:
+				probationSize += delta;
+				break;
+			case PROTECTED:
+				protectedSize += delta;
+				break;
+		}
+	}
+
+	private static final class Node {
+
+		final String key;
+		Bitmap value;
+		int size;
+		int segment = WINDOW;
+
+		Node prev;
+		Node next;
+
+		Node(String key, Bitmap value, int size) {
+			this.key = key;
+			this.value = value;
+			this.size = size;
+		}
+	}
+
+	/** Doubly-linked list of nodes in order of access (head - the least recently used) */
+	private static final class NodeList {
+
+		Node head;
+		Node tail;
+
+		void addLast(Node node) {
+			node.prev = tail;
+			node.next = null;
+			if (tail == null) {
+				head = node;
+			} else {
+				tail.next = node;
+			}
+			tail = node;
+		}
+
+		void remove(Node node) {
+			if (node.prev == null) {
+				head = node.next;
+			} else {
+				node.prev.next = node.next;
+			}
+			if (node.next == null) {
+				tail = node.prev;
+			} else {
+				node.next.prev = node.prev;
+			}
+			node.prev = null;
+			node.next = null;
+		}
+
+		void moveToLast(Node node) {
+			if (node != tail) {
+				remove(node);
+				addLast(node);
+			}
+		}
+
+		void clear() {
+			head = null;
+			tail = null;
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.graphics.Bitmap;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.MemoryCacheUtil;
+
+/**
+ * Decorator for {@link MemoryCacheAware}. Keeps index "image URI -> {@linkplain MemoryCacheUtil#generateKey(String,
+ * cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageSize) memory cache keys} of this URI", so all sizes of
+ * image can be found without scanning of all cache keys. Optionally works like {@link FuzzyKeyMemoryCache}: when bitmap
+ * is put into cache then other sizes of the same image are removed from cache before.<br />
+ * Wrapped cache can evict entries by itself, so index can contain keys which aren't in cache anymore. Such keys are
+ * harmless for lookups and are dropped periodically (when index grows twice since previous cleaning).<br />
+ * <b>NOTE:</b> Used for internal needs. Normally you don't need to use this class.
+ *
+ * @see MemoryCacheUtil#findCacheKeysForImageUri(String, MemoryCacheAware)
+ */
+public class UriIndexedMemoryCache implements MemoryCacheAware<String, Bitmap> {
+
+	private static final int MIN_KEY_COUNT_TO_CLEAN_INDEX = 64;
+
+	private final MemoryCacheAware<String, Bitmap> cache;
+	private final boolean replaceOtherSizes;
+
+	/** Memory cache keys grouped by image URI. Guarded by "this". */
+	private final Map<String, List<String>> keysByImageUri = new HashMap<String, List<String>>();
+	private int indexedKeyCount;
+	private int keyCountToCleanIndex = MIN_KEY_COUNT_TO_CLEAN_INDEX;
+
+	/**
+	 * @param cache Wrapped memory cache
+	 * @param replaceOtherSizes Whether other sizes of image should be removed from cache when bitmap is put into cache
+	 */
+	public UriIndexedMemoryCache(MemoryCacheAware<String, Bitmap> cache, boolean replaceOtherSizes) {
+		this.cache = cache;
+		this.replaceOtherSizes = replaceOtherSizes;
+	}
+
+	@Override
+	public synchronized boolean put(String key, Bitmap value) {
+		String imageUri = MemoryCacheUtil.getImageUri(key);
+		List<String> keys = keysByImageUri.get(imageUri);
+		if (keys == null) {
+			keys = new ArrayList<String>(2);
+			keysByImageUri.put(imageUri, keys);
+		}
+		if (replaceOtherSizes) {
+			for (Iterator<String> it = keys.iterator(); it.hasNext();) {
+				String otherKey = it.next();
+				if (!otherKey.equals(key)) {
+					cache.remove(otherKey);
+					it.remove();
+					indexedKeyCount--;
+				}
+			}
+		}
+		if (!keys.contains(key)) {
+			keys.add(key);
+			indexedKeyCount++;
+		}
+
+		boolean result = cache.put(key, value);
+		if (indexedKeyCount >= keyCountToCleanIndex) {
+			cleanIndex();
+		}
+		return result;
+	}
+
+	@Override
+	public Bitmap get(String key) {
+		return cache.get(key);
+	}
+
+	@Override
+	public synchronized void remove(String key) {
+		cache.remove(key);
+
+		String imageUri = MemoryCacheUtil.getImageUri(key);
+		List<String> keys = keysByImageUri.get(imageUri);
+		if (keys != null && keys.remove(key)) {
+			indexedKeyCount--;
+			if (keys.isEmpty()) {
+				keysByImageUri.remove(imageUri);
+			}
+		}
+	}
+
+	@Override
+	public Collection<String> keys() {
+		return cache.keys();
+	}
+
+	@Override
+	public synchronized void clear() {
+		cache.clear();
+		keysByImageUri.clear();
+		indexedKeyCount = 0;
+		keyCountToCleanIndex = MIN_KEY_COUNT_TO_CLEAN_INDEX;
+	}
+
+	/**
+	 * Returns memory cache keys of all sizes of image which were put into cache. Some of returned keys can be already
+	 * evicted from wrapped cache.
+	 */
+	public synchronized List<String> keysForImageUri(String imageUri) {
+		List<String> keys = keysByImageUri.get(imageUri);
+		if (keys == null) {
+			return Collections.emptyList();
+		}
+		return new ArrayList<String>(keys);
+	}
+
+	/** Drops keys which were evicted by wrapped cache */
+	private void cleanIndex() {
+		Set<String> cachedKeys = new HashSet<String>(cache.keys());
+		for (Iterator<List<String>> it = keysByImageUri.values().iterator(); it.hasNext();) {
+			List<String> keys = it.next();
+			for (Iterator<String> keyIt = keys.iterator(); keyIt.hasNext();) {
+				if (!cachedKeys.contains(keyIt.next())) {
+					keyIt.remove();
+					indexedKeyCount--;
+				}
+			}
+			if (keys.isEmpty()) {
+				it.remove();
+			}
+		}
+		keyCountToCleanIndex = Math.max(indexedKeyCount * 2, MIN_KEY_COUNT_TO_CLEAN_INDEX);
+	}
+}
@@ -0,0 +1,54 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.memory.policy;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.EvictionPolicy;
+
+/**
+ * Evicts values in order of putting. Time of putting is candidate's priority, so the oldest value of the whole cache is
+ * evicted.
+ *
+ * @see cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl.FIFOLimitedMemoryCache
+ */
+public final class FIFOEvictionPolicy<K, V> implements EvictionPolicy<K, V> {
+
+	/** Keys of stored values (in order of putting) and times of putting */
+	private final LinkedHashMap<K, Long> queue = new LinkedHashMap<K, Long>();
+
+	@Override
+	public void onPut(K key, V value) {
+		queue.put(key, System.nanoTime());
+	}
+
+	@Override
+	public void onAccess(K key, V value) {
+	}
+
+	@Override
+	public void onRemove(K key, V value) {
+		queue.remove(key);
+	}
+
+	@Override
+	public K evict() {
+		Iterator<K> it = queue.keySet().iterator();
+		if (!it.hasNext()) return null;
+
+		K firstKey = it.next();
+		it.remove();
+		return firstKey;
+	}
+
+	@Override
+	public long getCandidatePriority() {
+		Iterator<Map.Entry<K, Long>> it = queue.entrySet().iterator();
+		return it.hasNext() ? it.next().getValue() : Long.MAX_VALUE;
+	}
+
+	@Override
+	public void clear() {
+		queue.clear();
+	}
+}
@@ -0,0 +1,128 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.memory.policy;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.EvictionPolicy;
+
+/**
+ * Evicts the least frequently used value (the oldest one of them if there are several such values). Values are grouped
+ * into buckets by usage count, buckets are kept in ascending order, so all operations take constant time.<br />
+ * Usage count is candidate's priority, so the least frequently used value of the whole cache is evicted. If several
+ * segments of cache have such values then the oldest one is chosen only within segment.
+ *
+ * @see cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl.LFULimitedMemoryCache
+ */
+public final class LFUEvictionPolicy<K, V> implements EvictionPolicy<K, V> {
+
+	/** Bucket of keys with usage count 0 (values which weren't used after putting). Is never unlinked. */
+	private final FrequencyBucket<K> zeroBucket = new FrequencyBucket<K>(0);
+
+	/** Contains keys of stored values and buckets they belong to */
+	private final Map<K, FrequencyBucket<K>> buckets = new HashMap<K, FrequencyBucket<K>>();
+
+	@Override
+	public void onPut(K key, V value) {
+		if (!buckets.containsKey(key)) {
+			zeroBucket.keys.add(key);
+			buckets.put(key, zeroBucket);
+		}
+	}
+
+	@Override
+	public void onAccess(K key, V value) {
+		FrequencyBucket<K> bucket = buckets.get(key);
+		if (bucket != null) {
+			buckets.put(key, incrementFrequency(key, bucket));
+		}
+	}
+
+	@Override
+	public void onRemove(K key, V value) {
+		FrequencyBucket<K> bucket = buckets.remove(key);
+		if (bucket != null) {
+			removeFromBucket(key, bucket);
+		}
+	}
+
+	@Override
+	public K evict() {
+		FrequencyBucket<K> bucket = zeroBucket.keys.isEmpty() ? zeroBucket.next : zeroBucket;
+		if (bucket == null) return null;
+
+		Iterator<K> it = bucket.keys.iterator();
+		K leastUsedKey = it.next();
+		it.remove();
+		if (bucket.keys.isEmpty()) {
+			unlink(bucket);
+		}
+		buckets.remove(leastUsedKey);
+		return leastUsedKey;
+	}
+
+	@Override
+	public long getCandidatePriority() {
+		FrequencyBucket<K> bucket = zeroBucket.keys.isEmpty() ? zeroBucket.next : zeroBucket;
+		return bucket == null ? Long.MAX_VALUE : bucket.frequency;
+	}
+
+	@Override
+	public void clear() {
+		buckets.clear();
+		zeroBucket.keys.clear();
+		zeroBucket.next = null;
+	}
+
+	/** Moves key into bucket with next usage count and returns this bucket */
+	private FrequencyBucket<K> incrementFrequency(K key, FrequencyBucket<K> bucket) {
+		FrequencyBucket<K> nextBucket = bucket.next;
+		if (nextBucket == null || nextBucket.frequency != bucket.frequency + 1) {
+			if (bucket.frequency == Integer.MAX_VALUE) return bucket;
+
+			nextBucket = new FrequencyBucket<K>(bucket.frequency + 1);
+			nextBucket.prev = bucket;
+			nextBucket.next = bucket.next;
+			if (bucket.next != null) {
+				bucket.next.prev = nextBucket;
+			}
+			bucket.next = nextBucket;
+		}
+		nextBucket.keys.add(key);
+		removeFromBucket(key, bucket);
+		return nextBucket;
+	}
+
+	private void removeFromBucket(K key, FrequencyBucket<K> bucket) {
+		bucket.keys.remove(key);
+		if (bucket.keys.isEmpty()) {
+			unlink(bucket);
+		}
+	}
+
+	private void unlink(FrequencyBucket<K> bucket) {
+		if (bucket == zeroBucket) return;
+
+		bucket.prev.next = bucket.next;
+		if (bucket.next != null) {
+			bucket.next.prev = bucket.prev;
+		}
+		bucket.prev = null;
+		bucket.next = null;
+	}
+
+	/** Keys with the same usage count in order of their getting into bucket. Buckets form ascending list. */
+	private static final class FrequencyBucket<K> {
+
+		final int frequency;
+		final LinkedHashSet<K> keys = new LinkedHashSet<K>();
+
+		FrequencyBucket<K> prev;
+		FrequencyBucket<K> next;
+
+		FrequencyBucket(int frequency) {
+			this.frequency = frequency;
+		}
+	}
+}
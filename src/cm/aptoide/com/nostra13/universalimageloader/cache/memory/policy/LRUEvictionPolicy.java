@@ -0,0 +1,60 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.memory.policy;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.EvictionPolicy;
+
+/**
+ * Evicts the least recently used value. Time of the last usage is candidate's priority, so the least recently used
+ * value of the whole cache is evicted.
+ *
+ * @see cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl.LRULimitedMemoryCache
+ */
+public final class LRUEvictionPolicy<K, V> implements EvictionPolicy<K, V> {
+
+	private static final int INITIAL_CAPACITY = 10;
+	private static final float LOAD_FACTOR = 1.1f;
+
+	/** Keys of stored values providing Least-Recently-Used logic and times of their last usage */
+	private final Map<K, Long> lruCache = new LinkedHashMap<K, Long>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+	@Override
+	public void onPut(K key, V value) {
+		lruCache.put(key, System.nanoTime());
+	}
+
+	@Override
+	public void onAccess(K key, V value) {
+		if (lruCache.containsKey(key)) {
+			lruCache.put(key, System.nanoTime()); // "put" moves key to the end for LRU logic
+		}
+	}
+
+	@Override
+	public void onRemove(K key, V value) {
+		lruCache.remove(key);
+	}
+
+	@Override
+	public K evict() {
+		Iterator<K> it = lruCache.keySet().iterator();
+		if (!it.hasNext()) return null;
+
+		K mostLongUsedKey = it.next();
+		it.remove();
+		return mostLongUsedKey;
+	}
+
+	@Override
+	public long getCandidatePriority() {
+		Iterator<Long> it = lruCache.values().iterator();
+		return it.hasNext() ? it.next() : Long.MAX_VALUE;
+	}
+
+	@Override
+	public void clear() {
+		lruCache.clear();
+	}
+}
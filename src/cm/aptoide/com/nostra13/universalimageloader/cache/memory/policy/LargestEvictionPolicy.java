@@ -0,0 +1,71 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.memory.policy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.EvictionPolicy;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.ValueSizer;
+
+/**
+ * Evicts the largest value. All values are scanned on eviction. Negated size is candidate's priority, so the largest
+ * value of the whole cache is evicted.
+ *
+ * @see cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl.LargestLimitedMemoryCache
+ */
+public final class LargestEvictionPolicy<K, V> implements EvictionPolicy<K, V> {
+
+	private final ValueSizer<V> sizer;
+
+	/** Contains keys of stored values and sizes of values */
+	private final Map<K, Integer> valueSizes = new HashMap<K, Integer>();
+
+	public LargestEvictionPolicy(ValueSizer<V> sizer) {
+		this.sizer = sizer;
+	}
+
+	@Override
+	public void onPut(K key, V value) {
+		valueSizes.put(key, sizer.getSize(value));
+	}
+
+	@Override
+	public void onAccess(K key, V value) {
+	}
+
+	@Override
+	public void onRemove(K key, V value) {
+		valueSizes.remove(key);
+	}
+
+	@Override
+	public K evict() {
+		Entry<K, Integer> largestEntry = findLargestEntry();
+		if (largestEntry == null) return null;
+
+		K largestKey = largestEntry.getKey();
+		valueSizes.remove(largestKey);
+		return largestKey;
+	}
+
+	@Override
+	public long getCandidatePriority() {
+		Entry<K, Integer> largestEntry = findLargestEntry();
+		return largestEntry == null ? Long.MAX_VALUE : -largestEntry.getValue();
+	}
+
+	private Entry<K, Integer> findLargestEntry() {
+		Entry<K, Integer> largestEntry = null;
+		for (Entry<K, Integer> entry : valueSizes.entrySet()) {
+			if (largestEntry == null || entry.getValue() > largestEntry.getValue()) {
+				largestEntry = entry;
+			}
+		}
+		return largestEntry;
+	}
+
+	@Override
+	public void clear() {
+		valueSizes.clear();
+	}
+}
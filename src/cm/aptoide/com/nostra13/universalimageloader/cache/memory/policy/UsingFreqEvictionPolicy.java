@@ -0,0 +1,68 @@
+package cm.aptoide.com.nostra13.universalimageloader.cache.memory.policy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.EvictionPolicy;
+
+/**
+ * Evicts the least frequently used value. All values are scanned on eviction. Usage count is candidate's priority, so
+ * the least frequently used value of the whole cache is evicted.
+ *
+ * @see cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl.UsingFreqLimitedMemoryCache
+ */
+public final class UsingFreqEvictionPolicy<K, V> implements EvictionPolicy<K, V> {
+
+	/** Contains keys of stored values and usage counts of values */
+	private final Map<K, Integer> usingCounts = new HashMap<K, Integer>();
+
+	@Override
+	public void onPut(K key, V value) {
+		usingCounts.put(key, 0);
+	}
+
+	@Override
+	public void onAccess(K key, V value) {
+		Integer usageCount = usingCounts.get(key);
+		if (usageCount != null) {
+			usingCounts.put(key, usageCount + 1);
+		}
+	}
+
+	@Override
+	public void onRemove(K key, V value) {
+		usingCounts.remove(key);
+	}
+
+	@Override
+	public K evict() {
+		Entry<K, Integer> leastUsedEntry = findLeastUsedEntry();
+		if (leastUsedEntry == null) return null;
+
+		K leastUsedKey = leastUsedEntry.getKey();
+		usingCounts.remove(leastUsedKey);
+		return leastUsedKey;
+	}
+
+	@Override
+	public long getCandidatePriority() {
+		Entry<K, Integer> leastUsedEntry = findLeastUsedEntry();
+		return leastUsedEntry == null ? Long.MAX_VALUE : leastUsedEntry.getValue();
+	}
+
+	private Entry<K, Integer> findLeastUsedEntry() {
+		Entry<K, Integer> leastUsedEntry = null;
+		for (Entry<K, Integer> entry : usingCounts.entrySet()) {
+			if (leastUsedEntry == null || entry.getValue() < leastUsedEntry.getValue()) {
+				leastUsedEntry = entry;
+			}
+		}
+		return leastUsedEntry;
+	}
+
+	@Override
+	public void clear() {
+		usingCounts.clear();
+	}
+}
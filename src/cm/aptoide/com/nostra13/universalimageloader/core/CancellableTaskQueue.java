@@ -0,0 +1,131 @@
+package cm.aptoide.com.nostra13.universalimageloader.core;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageLoadingHandle;
+
+/**
+ * Decorator for task queue of executor. {@linkplain ImageLoadingHandle#cancel() Cancelled} tasks stay in wrapped queue
+ * (so cancellation takes constant time) but they are dropped when they reach head of queue and are never dispatched to
+ * pool thread.
+ *
+ * @see LoadAndDisplayImageTask
+ */
+final class CancellableTaskQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+	private final BlockingQueue<Runnable> queue;
+
+	CancellableTaskQueue(BlockingQueue<Runnable> queue) {
+		this.queue = queue;
+	}
+
+	@Override
+	public boolean offer(Runnable task) {
+		return queue.offer(task);
+	}
+
+	@Override
+	public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+		return queue.offer(task, timeout, unit);
+	}
+
+	@Override
+	public void put(Runnable task) throws InterruptedException {
+		queue.put(task);
+	}
+
+	@Override
+	public Runnable take() throws InterruptedException {
+		Runnable task;
+		do {
+			task = queue.take();
+		} while (isCancelled(task));
+		return task;
+	}
+
+	@Override
+	public Runnable poll() {
+		Runnable task;
+		do {
+			task = queue.poll();
+		} while (task != null && isCancelled(task));
+		return task;
+	}
+
+	@Override
+	public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		long deadline = System.nanoTime() + nanos;
+		Runnable task;
+		do {
+			task = queue.poll(nanos, TimeUnit.NANOSECONDS);
+			nanos = deadline - System.nanoTime();
+		} while (task != null && isCancelled(task) && nanos > 0);
+		return task == null || isCancelled(task) ? null : task;
+	}
+
+	@Override
+	public Runnable peek() {
+		Runnable task = queue.peek();
+		while (task != null && isCancelled(task)) {
+			queue.remove(task);
+			task = queue.peek();
+		}
+		return task;
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> c, int maxElements) {
+		int count = 0;
+		Runnable task;
+		while (count < maxElements && (task = poll()) != null) {
+			c.add(task);
+			count++;
+		}
+		return count;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		return queue.remove(o);
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return queue.remainingCapacity();
+	}
+
+	/** Returns number of queued tasks which aren't cancelled. All queued tasks are iterated. */
+	@Override
+	public int size() {
+		int size = 0;
+		for (Runnable task : queue) {
+			if (!isCancelled(task)) size++;
+		}
+		return size;
+	}
+
+	/** Drops cancelled tasks from head of queue and checks whether there is a task which isn't cancelled */
+	@Override
+	public boolean isEmpty() {
+		return peek() == null;
+	}
+
+	@Override
+	public Iterator<Runnable> iterator() {
+		return queue.iterator();
+	}
+
+	private static boolean isCancelled(Runnable task) {
+		return task instanceof ImageLoadingHandle && ((ImageLoadingHandle) task).isCancelled();
+	}
+}
@@ -0,0 +1,55 @@
+package cm.aptoide.com.nostra13.universalimageloader.core;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounded hand-off of downloaded images from network stage to decoding stage. Network thread which hands off image
+ * waits while decoding stage already has max number of handed off images (queued or being decoded), so downloading
+ * doesn't run ahead of decoding. Such waits are recorded as backpressure of decoding stage.<br />
+ * Tasks which are submitted to decoding stage directly (images cached on disc) aren't limited because they are
+ * submitted from UI thread which must not wait.
+ *
+ * @see ImageLoaderConfiguration.Builder#decodingQueueCapacity(int)
+ */
+final class DecodingHandOff {
+
+	private final int capacity;
+	private final Semaphore slots;
+	private final StatsRecorder stats;
+
+	DecodingHandOff(int capacity, StatsRecorder stats) {
+		this.capacity = capacity;
+		this.stats = stats;
+		slots = new Semaphore(capacity);
+	}
+
+	/**
+	 * Takes slot of decoding stage for handed off image, waits while there is no free slot. Slot must be
+	 * {@linkplain #release() released} when decoding of image is done.
+	 *
+	 * @return <b>false</b> - if thread was interrupted while waiting
+	 */
+	boolean acquire() {
+		if (!slots.tryAcquire()) {
+			long waitStartTime = System.nanoTime();
+			try {
+				slots.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			stats.recordBackpressure(waitStartTime);
+		}
+		stats.recordHandOff();
+		return true;
+	}
+
+	void release() {
+		slots.release();
+	}
+
+	/** Returns number of handed off images which are waiting for decoding or are decoded at this moment */
+	int getPendingCount() {
+		return capacity - slots.availablePermits();
+	}
+}
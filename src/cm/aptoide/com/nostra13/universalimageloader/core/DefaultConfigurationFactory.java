@@ -11,10 +11,11 @@ import cm.aptoide.com.nostra13.universalimageloader.cache.disc.impl.TotalSizeLim
 import cm.aptoide.com.nostra13.universalimageloader.cache.disc.impl.UnlimitedDiscCache;
 import cm.aptoide.com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
 import cm.aptoide.com.nostra13.universalimageloader.cache.disc.naming.HashCodeFileNameGenerator;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.BitmapPool;
 import cm.aptoide.com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
-import cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl.FuzzyKeyMemoryCache;
-import cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl.UsingFreqLimitedMemoryCache;
-import cm.aptoide.com.nostra13.universalimageloader.core.assist.MemoryCacheUtil;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl.LFULimitedMemoryCache;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl.UriIndexedMemoryCache;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.DecodingMemoryGovernor;
 import cm.aptoide.com.nostra13.universalimageloader.core.display.BitmapDisplayer;
 import cm.aptoide.com.nostra13.universalimageloader.core.display.SimpleBitmapDisplayer;
 import cm.aptoide.com.nostra13.universalimageloader.core.download.ImageDownloader;
@@ -50,11 +51,30 @@ public class DefaultConfigurationFactory {
 
 	/** Create default implementation of {@link MemoryCacheAware} depends on incoming parameters */
 	public static MemoryCacheAware<String, Bitmap> createMemoryCache(int memoryCacheSize, boolean denyCacheImageMultipleSizesInMemory) {
-		MemoryCacheAware<String, Bitmap> memoryCache = new UsingFreqLimitedMemoryCache(memoryCacheSize);
-		if (denyCacheImageMultipleSizesInMemory) {
-			memoryCache = new FuzzyKeyMemoryCache<String, Bitmap>(memoryCache, MemoryCacheUtil.createFuzzyKeyComparator());
+		return createMemoryCache(memoryCacheSize, denyCacheImageMultipleSizesInMemory, null);
+	}
+
+	/**
+	 * Create default implementation of {@link MemoryCacheAware} depends on incoming parameters. Bitmaps evicted from
+	 * cache are passed to incoming {@link BitmapPool} (if it isn't null).
+	 */
+	public static MemoryCacheAware<String, Bitmap> createMemoryCache(int memoryCacheSize, boolean denyCacheImageMultipleSizesInMemory, BitmapPool bitmapPool) {
+		LFULimitedMemoryCache limitedMemoryCache = new LFULimitedMemoryCache(memoryCacheSize);
+		if (bitmapPool != null) {
+			limitedMemoryCache.setEvictionListener(bitmapPool);
+		}
+		return new UriIndexedMemoryCache(limitedMemoryCache, denyCacheImageMultipleSizesInMemory);
+	}
+
+	/**
+	 * Create {@link DecodingMemoryGovernor} with incoming budget. If budget isn't positive then 1/4 of max heap size is
+	 * used.
+	 */
+	public static DecodingMemoryGovernor createDecodingMemoryGovernor(long decodingMemoryBudget) {
+		if (decodingMemoryBudget <= 0) {
+			decodingMemoryBudget = Runtime.getRuntime().maxMemory() / 4;
 		}
-		return memoryCache;
+		return new DecodingMemoryGovernor(decodingMemoryBudget);
 	}
 
 	/** Create default implementation of {@link ImageDownloader} */
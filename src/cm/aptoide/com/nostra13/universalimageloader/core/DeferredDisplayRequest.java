@@ -0,0 +1,108 @@
+package cm.aptoide.com.nostra13.universalimageloader.core;
+
+import android.os.Handler;
+import android.view.ViewTreeObserver;
+import android.view.ViewTreeObserver.OnPreDrawListener;
+import android.widget.ImageView;
+
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageLoadingHandle;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageLoadingListener;
+
+/**
+ * Display request which waits for layout of {@link ImageView}. Request is started by one-shot
+ * {@linkplain OnPreDrawListener pre-draw listener} when view is measured, so target size of image is defined by real
+ * size of view. Listener is removed when request is cancelled, so cancelled request doesn't keep view and listener
+ * alive.
+ *
+ * @see DisplayImageOptions.Builder#waitForViewLayout()
+ */
+final class DeferredDisplayRequest implements OnPreDrawListener, ImageLoadingHandle {
+
+	private final String uri;
+	private final String cacheString;
+	private final ImageView imageView;
+	private final DisplayImageOptions options;
+	private final ImageLoadingListener listener;
+	private final ViewRequestHolder viewHolder;
+	private final int requestToken;
+	private final Handler handler = new Handler();
+	/** Observer which pre-draw listener was added to (view gets another observer when it's attached to window) */
+	private ViewTreeObserver observer;
+
+	/** Task which was started after view layout */
+	private volatile ImageLoadingHandle task;
+	/** Guarded by "this" */
+	private boolean started;
+	private volatile boolean cancelled;
+
+	DeferredDisplayRequest(String uri, ImageView imageView, DisplayImageOptions options, ImageLoadingListener listener, String cacheString, ViewRequestHolder viewHolder) {
+		this.uri = uri;
+		this.cacheString = cacheString;
+		this.imageView = imageView;
+		this.options = options;
+		this.listener = listener;
+		this.viewHolder = viewHolder;
+		requestToken = viewHolder.requestToken;
+	}
+
+	/** Waits for layout of view. Must be called on UI thread. */
+	void start() {
+		observer = imageView.getViewTreeObserver();
+		observer.addOnPreDrawListener(this);
+	}
+
+	@Override
+	public boolean onPreDraw() {
+		removePreDrawListener();
+
+		synchronized (this) {
+			if (started || cancelled || viewHolder.requestToken != requestToken) return true;
+
+			started = true;
+			task = ImageLoader.getInstance().displayImageForViewSize(uri, imageView, options, listener, cacheString, viewHolder, true);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean cancel() {
+		ImageLoadingHandle startedTask;
+		synchronized (this) {
+			if (cancelled || (started && task == null)) return false;
+
+			cancelled = true;
+			startedTask = task;
+		}
+		if (startedTask != null) {
+			return startedTask.cancel();
+		}
+
+		viewHolder.detach(this);
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				removePreDrawListener();
+				listener.onLoadingCancelled();
+			}
+		});
+		return true;
+	}
+
+	/** Must be called on UI thread */
+	private void removePreDrawListener() {
+		if (observer != null && observer.isAlive()) {
+			observer.removeOnPreDrawListener(this);
+		}
+		ViewTreeObserver currentObserver = imageView.getViewTreeObserver();
+		if (currentObserver != observer && currentObserver.isAlive()) {
+			currentObserver.removeOnPreDrawListener(this);
+		}
+		observer = null;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		ImageLoadingHandle startedTask = task;
+		return cancelled || (startedTask != null && startedTask.isCancelled());
+	}
+}
@@ -0,0 +1,76 @@
+package cm.aptoide.com.nostra13.universalimageloader.core;
+
+import java.util.Arrays;
+
+import android.graphics.Bitmap.CompressFormat;
+
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageSize;
+
+/**
+ * Size buckets of image derivatives in disc cache. Derivative is a copy of cached image reduced so that its smaller
+ * side is equal to size of bucket, so it's enough for any target size which fits into square of bucket (for any view
+ * scale type). Derivatives are stored in disc cache as usual files and are evicted by disc cache like other files.<br />
+ * Key of derivative contains length of cached image file, so derivatives of replaced image (re-downloaded or modified
+ * on server) aren't used anymore and are evicted as unused files.
+ *
+ * @see ImageLoaderConfiguration.Builder#discCacheDerivatives(CompressFormat, int, int...)
+ */
+final class DiscCacheDerivatives {
+
+	private static final char KEY_SEPARATOR = '_';
+	private static final String BUCKET_SIZE_SUFFIX = "px";
+
+	/** Image is reduced only if its smaller side is larger than bucket in this number of times at least */
+	private static final int MIN_REDUCTION_FACTOR = 2;
+
+	/** Sorted in ascending order */
+	private final int[] bucketSizes;
+	final CompressFormat compressFormat;
+	final int compressQuality;
+
+	DiscCacheDerivatives(int[] bucketSizes, CompressFormat compressFormat, int compressQuality) {
+		this.bucketSizes = bucketSizes.clone();
+		Arrays.sort(this.bucketSizes);
+		this.compressFormat = compressFormat;
+		this.compressQuality = compressQuality;
+	}
+
+	/** Returns index of the smallest bucket which target size fits into or -1 if target size is larger than all buckets */
+	int getBucketIndex(ImageSize targetSize) {
+		int size = Math.max(targetSize.getWidth(), targetSize.getHeight());
+		for (int i = 0; i < bucketSizes.length; i++) {
+			if (bucketSizes[i] >= size) return i;
+		}
+		return -1;
+	}
+
+	int getBucketCount() {
+		return bucketSizes.length;
+	}
+
+	int getBucketSize(int bucketIndex) {
+		return bucketSizes[bucketIndex];
+	}
+
+	/**
+	 * Returns <b>true</b> if derivative of bucket is noticeably smaller than image of incoming size (otherwise original
+	 * image can be decoded as fast as derivative)
+	 */
+	boolean isWorthReducing(int imageWidth, int imageHeight, int bucketIndex) {
+		return Math.min(imageWidth, imageHeight) >= bucketSizes[bucketIndex] * MIN_REDUCTION_FACTOR;
+	}
+
+	/**
+	 * Generates disc cache key for derivative of image.<br />
+	 * Pattern for key - <b>[discCacheKey]_[bucketSize]px_[imageFileLength]</b>
+	 *
+	 * @param discCacheKey Disc cache key of original image
+	 * @param imageFileLength Length of cached file of original image
+	 */
+	String generateKey(String discCacheKey, int bucketIndex, long imageFileLength) {
+		StringBuilder key = new StringBuilder(discCacheKey);
+		key.append(KEY_SEPARATOR).append(bucketSizes[bucketIndex]).append(BUCKET_SIZE_SUFFIX);
+		key.append(KEY_SEPARATOR).append(imageFileLength);
+		return key.toString();
+	}
+}
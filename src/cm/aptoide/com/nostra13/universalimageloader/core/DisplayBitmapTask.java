@@ -25,11 +25,15 @@ final class DisplayBitmapTask implements Runnable {
 	private final String memoryCacheKey;
 	private final BitmapDisplayer bitmapDisplayer;
 	private final ImageLoadingListener listener;
+	private final ImageLoadingInfo imageLoadingInfo;
+	private final LoadAndDisplayImageTask task;
 
 	private boolean loggingEnabled;
 
-	public DisplayBitmapTask(Bitmap bitmap, ImageLoadingInfo imageLoadingInfo) {
+	public DisplayBitmapTask(Bitmap bitmap, ImageLoadingInfo imageLoadingInfo, LoadAndDisplayImageTask task) {
 		this.bitmap = bitmap;
+		this.imageLoadingInfo = imageLoadingInfo;
+		this.task = task;
 		imageView = imageLoadingInfo.imageView;
 		memoryCacheKey = imageLoadingInfo.memoryCacheKey;
 		bitmapDisplayer = imageLoadingInfo.options.getDisplayer();
@@ -37,10 +41,13 @@ final class DisplayBitmapTask implements Runnable {
 	}
 
 	public void run() {
+		if (task.isCancelled()) return; // Listener was already notified about cancellation
+
 		if (isViewWasReused()) {
 			if (loggingEnabled) L.i(LOG_TASK_CANCELLED, memoryCacheKey);
-			listener.onLoadingCancelled();
-		} else {
+			ImageLoader.getInstance().getStatsRecorder().recordStaleTask();
+			task.cancel();
+		} else if (task.finish()) {
 			if (loggingEnabled) L.i(LOG_DISPLAY_IMAGE_IN_IMAGEVIEW, memoryCacheKey);
 			Bitmap displayedBitmap = bitmapDisplayer.display(bitmap, imageView);
 			listener.onLoadingComplete(displayedBitmap);
@@ -48,10 +55,9 @@ final class DisplayBitmapTask implements Runnable {
 		}
 	}
 
-	/** Checks whether memory cache key (image URI) for current ImageView is actual */
+	/** Checks whether current ImageView's request is the request of this task */
 	private boolean isViewWasReused() {
-		String currentCacheKey = ImageLoader.getInstance().getLoadingUriForView(imageView);
-		return !memoryCacheKey.equals(currentCacheKey);
+		return imageLoadingInfo.isViewReused();
 	}
 
 	void setLoggingEnabled(boolean loggingEnabled) {
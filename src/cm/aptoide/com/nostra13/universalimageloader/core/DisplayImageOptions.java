@@ -17,7 +17,9 @@ import cm.aptoide.com.nostra13.universalimageloader.core.display.SimpleBitmapDis
  * <li>whether loaded image will be cached on disc</li>
  * <li>image scale type</li>
  * <li>bitmap decoding configuration</li>
+ * <li>whether pooled bitmaps will be reused for decoding</li>
  * <li>delay before loading of image</li>
+ * <li>whether loading should wait for layout of {@link android.widget.ImageView ImageView}</li>
  * <li>how decoded {@link Bitmap} will be displayed</li>
  * </ul>
  * 
@@ -41,7 +43,9 @@ public final class DisplayImageOptions {
 	private final boolean cacheOnDisc;
 	private final ImageScaleType imageScaleType;
 	private final Bitmap.Config bitmapConfig;
+	private final boolean reuseBitmaps;
 	private final int delayBeforeLoading;
+	private final boolean waitForViewLayout;
 	private final BitmapDisplayer displayer;
 
 	private DisplayImageOptions(Builder builder) {
@@ -52,7 +56,9 @@ public final class DisplayImageOptions {
 		cacheOnDisc = builder.cacheOnDisc;
 		imageScaleType = builder.imageScaleType;
 		bitmapConfig = builder.bitmapConfig;
+		reuseBitmaps = builder.reuseBitmaps;
 		delayBeforeLoading = builder.delayBeforeLoading;
+		waitForViewLayout = builder.waitForViewLayout;
 		displayer = builder.displayer;
 	}
 
@@ -92,6 +98,10 @@ public final class DisplayImageOptions {
 		return bitmapConfig;
 	}
 
+	boolean isReuseBitmaps() {
+		return reuseBitmaps;
+	}
+
 	boolean isDelayBeforeLoading() {
 		return delayBeforeLoading > 0;
 	}
@@ -100,6 +110,10 @@ public final class DisplayImageOptions {
 		return delayBeforeLoading;
 	}
 
+	boolean isWaitForViewLayout() {
+		return waitForViewLayout;
+	}
+
 	BitmapDisplayer getDisplayer() {
 		return displayer;
 	}
@@ -117,7 +131,9 @@ public final class DisplayImageOptions {
 		private boolean cacheOnDisc = false;
 		private ImageScaleType imageScaleType = ImageScaleType.IN_SAMPLE_POWER_OF_2;
 		private Bitmap.Config bitmapConfig = Bitmap.Config.ARGB_8888;
+		private boolean reuseBitmaps = false;
 		private int delayBeforeLoading = 0;
+		private boolean waitForViewLayout = false;
 		private BitmapDisplayer displayer = DefaultConfigurationFactory.createBitmapDisplayer();
 
 		/**
@@ -174,12 +190,35 @@ public final class DisplayImageOptions {
 			return this;
 		}
 
+		/**
+		 * Image will be decoded into bitmap taken from
+		 * {@linkplain ImageLoaderConfiguration.Builder#bitmapPool(cm.aptoide.com.nostra13.universalimageloader.cache.memory.BitmapPool)
+		 * bitmap pool} if pool has appropriate bitmap (see {@link android.graphics.BitmapFactory.Options#inBitmap}).
+		 * Decoded bitmaps will be mutable so they can be pooled after eviction from memory cache.<br />
+		 * Works on Android 3.0+ only. Has no effect if bitmap pool isn't set in configuration.
+		 */
+		public Builder reuseBitmaps() {
+			reuseBitmaps = true;
+			return this;
+		}
+
 		/** Sets delay time before starting loading task. Default - no delay. */
 		public Builder delayBeforeLoading(int delayInMillis) {
 			this.delayBeforeLoading = delayInMillis;
 			return this;
 		}
 
+		/**
+		 * If size of {@link android.widget.ImageView ImageView} can't be defined by its layout parameters and view
+		 * isn't measured yet then loading is postponed until view is laid out. So image is decoded for real size of
+		 * view instead of screen size. Views with <b>wrap_content</b> size aren't waited for because their size depends
+		 * on displayed image.
+		 */
+		public Builder waitForViewLayout() {
+			waitForViewLayout = true;
+			return this;
+		}
+
 		/**
 		 * Sets custom {@link BitmapDisplayer displayer} for image loading task. Default value -
 		 * {@link DefaultConfigurationFactory#createBitmapDisplayer()}
@@ -198,7 +237,9 @@ public final class DisplayImageOptions {
 			cacheOnDisc = options.cacheOnDisc;
 			imageScaleType = options.imageScaleType;
 			bitmapConfig = options.bitmapConfig;
+			reuseBitmaps = options.reuseBitmaps;
 			delayBeforeLoading = options.delayBeforeLoading;
+			waitForViewLayout = options.waitForViewLayout;
 			displayer = options.displayer;
 			return this;
 		}
@@ -217,6 +258,8 @@ public final class DisplayImageOptions {
 	 * <li>Loaded image will <b>not</b> be cached on disc</li>
 	 * <li>{@link ImageScaleType#IN_SAMPLE_POWER_OF_2} decoding type will be used</li>
 	 * <li>{@link Bitmap.Config#ARGB_8888} bitmap config will be used for image decoding</li>
+	 * <li>Pooled bitmaps will <b>not</b> be reused for decoding</li>
+	 * <li>Loading will <b>not</b> wait for layout of view</li>
 	 * <li>{@link SimpleBitmapDisplayer} will be used for image displaying</li>
 	 * </ul>
 	 * 
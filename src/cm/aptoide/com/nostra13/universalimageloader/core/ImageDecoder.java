@@ -7,16 +7,24 @@ import java.net.URI;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.BitmapFactory.Options;
+import android.os.Build;
 
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.BitmapPool;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.ByteArrayPool;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.DecodingMemoryGovernor;
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageScaleType;
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageSize;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.RewindableInputStream;
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.ViewScaleType;
 import cm.aptoide.com.nostra13.universalimageloader.core.download.ImageDownloader;
 import cm.aptoide.com.nostra13.universalimageloader.utils.L;
 
 
 /**
- * Decodes images to {@link Bitmap}, scales them to needed size
+ * Decodes images to {@link Bitmap}, scales them to needed size. Image stream is opened once: image header is kept in
+ * pooled buffer while image bounds are decoded, then stream is rewound and image is decoded from the same stream.<br />
+ * If {@linkplain DecodingMemoryGovernor memory governor} is set then decoding waits until predicted size of bitmap fits
+ * into memory budget.
  * 
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * 
@@ -29,11 +37,24 @@ class ImageDecoder {
 
 	private static final String LOG_IMAGE_SUBSAMPLED = "Original image (%1$dx%2$d) is going to be subsampled to %3$dx%4$d view. Computed scale size - %5$d";
 	private static final String LOG_IMAGE_SCALED = "Subsampled image (%1$dx%2$d) was scaled to %3$dx%4$d";
+	private static final String LOG_STREAM_REOPENED = "Image header doesn't fit into buffer. Image stream is re-opened [%s]";
+	private static final String LOG_POOLED_BITMAP_NOT_REUSED = "Pooled bitmap can't be reused for image. Image is decoded into new bitmap [%s]";
+	private static final String LOG_WAITING_FOR_MEMORY = "Decoding waits for memory (%1$d bytes in progress, %2$d bytes needed) [%3$s]";
+
+	/** Android 4.4 (API 19) version code: since this version pooled bitmaps can be reused for subsampled images */
+	private static final int SDK_KITKAT = 19;
+
+	/** Size of buffer which keeps image header for decoding of image bounds: {@value} */
+	private static final int HEADER_BUFFER_SIZE = 64 * 1024; // 64 Kb
+	private static final int MAX_POOLED_HEADER_BUFFERS = 5;
+	private static final ByteArrayPool HEADER_BUFFER_POOL = new ByteArrayPool(HEADER_BUFFER_SIZE, MAX_POOLED_HEADER_BUFFERS);
 
 	private final URI imageUri;
 	private final ImageDownloader imageDownloader;
 	private final DisplayImageOptions displayOptions;
 
+	private BitmapPool bitmapPool;
+	private DecodingMemoryGovernor memoryGovernor;
 	private boolean loggingEnabled;
 
 	/**
@@ -47,6 +68,11 @@ class ImageDecoder {
 		this.displayOptions = options;
 	}
 
+	/** Opens stream of image. Decoder of image which isn't available by URI should override this method. */
+	InputStream openStream() throws IOException {
+		return imageDownloader.getStream(imageUri);
+	}
+
 	/**
 	 * Decodes image from URI into {@link Bitmap}. Image is scaled close to incoming {@link ImageSize image size} during
 	 * decoding (depend on incoming image scale type).
@@ -73,51 +99,161 @@ class ImageDecoder {
 	 * @throws IOException
 	 */
 	public Bitmap decode(ImageSize targetSize, ImageScaleType scaleType, ViewScaleType viewScaleType) throws IOException {
-		Options decodeOptions = getBitmapOptionsForImageDecoding(targetSize, scaleType, viewScaleType);
-		InputStream imageStream = imageDownloader.getStream(imageUri);
-		Bitmap subsampledBitmap;
+		return decode(openStream(), targetSize, scaleType, viewScaleType);
+	}
+
+	/**
+	 * Decodes image from already opened stream into {@link Bitmap}. Image is scaled close to incoming {@link ImageSize
+	 * image size} during decoding (depend on incoming image scale type). Stream is closed after decoding. If image
+	 * can't be decoded from one stream then image URI is used for opening of new stream.
+	 * 
+	 * @param imageStream Opened stream of image
+	 * @param targetSize Image size to scale to during decoding
+	 * @param scaleType {@link ImageScaleType Image scale type}
+	 * @param viewScaleType {@link ViewScaleType View scale type}
+	 * 
+	 * @return Decoded bitmap or <b>null</b> if image can't be decoded or thread was interrupted while decoding was
+	 *         waiting for memory
+	 * @throws IOException
+	 */
+	public Bitmap decode(InputStream imageStream, ImageSize targetSize, ImageScaleType scaleType, ViewScaleType viewScaleType) throws IOException {
+		RewindableInputStream rewindableStream = new RewindableInputStream(imageStream, HEADER_BUFFER_POOL);
+		imageStream = rewindableStream;
+		long reservedBytes = 0;
 		try {
-			subsampledBitmap = BitmapFactory.decodeStream(imageStream, null, decodeOptions);
+			Bitmap subsampledBitmap;
+			try {
+				Options boundsOptions = decodeImageBounds(rewindableStream);
+				Options decodeOptions = getBitmapOptionsForImageDecoding(boundsOptions, targetSize, scaleType, viewScaleType);
+				if (memoryGovernor != null) {
+					long predictedBytes = predictDecodingBytes(boundsOptions, decodeOptions, targetSize, scaleType);
+					if (!acquireMemory(predictedBytes)) return null;
+					reservedBytes = predictedBytes;
+				}
+
+				if (!rewindableStream.rewind()) {
+					// Image header is larger than buffer. Image stream should be re-opened.
+					if (loggingEnabled) L.d(LOG_STREAM_REOPENED, imageUri);
+					rewindableStream.close();
+					imageStream = openStream();
+				}
+				try {
+					subsampledBitmap = BitmapFactory.decodeStream(imageStream, null, decodeOptions);
+				} catch (IllegalArgumentException e) {
+					if (!isDecodedIntoPooledBitmap(decodeOptions)) throw e;
+
+					// Pooled bitmap isn't compatible with image. Decode image into new bitmap.
+					if (loggingEnabled) L.d(LOG_POOLED_BITMAP_NOT_REUSED, imageUri);
+					decodeOptions.inBitmap = null;
+					if (memoryGovernor != null) {
+						// New bitmap wasn't taken into account when memory was reserved. Reservation is taken again for
+						// new total, so decoding doesn't wait for memory which is reserved by itself.
+						long bitmapBytes = DecodingMemoryGovernor.predictBitmapBytes(boundsOptions.outWidth, boundsOptions.outHeight, decodeOptions.inSampleSize, decodeOptions.inPreferredConfig);
+						long totalBytes = reservedBytes + bitmapBytes;
+						memoryGovernor.release(reservedBytes);
+						reservedBytes = 0;
+						if (!acquireMemory(totalBytes)) return null;
+						reservedBytes = totalBytes;
+					}
+					imageStream.close();
+					imageStream = openStream();
+					subsampledBitmap = BitmapFactory.decodeStream(imageStream, null, decodeOptions);
+				}
+			} finally {
+				imageStream.close();
+			}
+			if (subsampledBitmap == null) {
+				return null;
+			}
+
+			// Scale to exact size if need
+			if (scaleType == ImageScaleType.EXACTLY || scaleType == ImageScaleType.EXACTLY_STRETCHED) {
+				subsampledBitmap = scaleImageExactly(subsampledBitmap, targetSize, scaleType, viewScaleType);
+			}
+
+			return subsampledBitmap;
 		} finally {
-			imageStream.close();
-		}
-		if (subsampledBitmap == null) {
-			return null;
+			if (reservedBytes > 0) {
+				memoryGovernor.release(reservedBytes);
+			}
 		}
+	}
 
-		// Scale to exact size if need
+	private Options decodeImageBounds(InputStream imageStream) {
+		Options boundsOptions = new Options();
+		boundsOptions.inJustDecodeBounds = true;
+		BitmapFactory.decodeStream(imageStream, null, boundsOptions);
+		return boundsOptions;
+	}
+
+	/**
+	 * Predicts how much memory decoding will take: size of decoded bitmap (if it isn't decoded into pooled bitmap) plus
+	 * size of scaled bitmap (if image is scaled to exact size)
+	 */
+	private long predictDecodingBytes(Options boundsOptions, Options decodeOptions, ImageSize targetSize, ImageScaleType scaleType) {
+		long bytes = 0;
+		if (!isDecodedIntoPooledBitmap(decodeOptions)) {
+			bytes += DecodingMemoryGovernor.predictBitmapBytes(boundsOptions.outWidth, boundsOptions.outHeight, decodeOptions.inSampleSize, decodeOptions.inPreferredConfig);
+		}
 		if (scaleType == ImageScaleType.EXACTLY || scaleType == ImageScaleType.EXACTLY_STRETCHED) {
-			subsampledBitmap = scaleImageExactly(subsampledBitmap, targetSize, scaleType, viewScaleType);
+			bytes += DecodingMemoryGovernor.predictBitmapBytes(targetSize.getWidth(), targetSize.getHeight(), 1, decodeOptions.inPreferredConfig);
 		}
+		return bytes;
+	}
 
-		return subsampledBitmap;
+	/** Checks {@link Options#inBitmap} only if it exists (on Honeycomb and later) */
+	private static boolean isDecodedIntoPooledBitmap(Options decodeOptions) {
+		return BitmapPool.isReuseSupported() && decodeOptions.inBitmap != null;
 	}
 
-	private Options getBitmapOptionsForImageDecoding(ImageSize targetSize, ImageScaleType scaleType, ViewScaleType viewScaleType) throws IOException {
+	/** @return <b>false</b> - if thread was interrupted while waiting for memory */
+	private boolean acquireMemory(long bytes) {
+		if (loggingEnabled && memoryGovernor.getInFlightBytes() + bytes > memoryGovernor.getBudget()) {
+			L.d(LOG_WAITING_FOR_MEMORY, memoryGovernor.getInFlightBytes(), bytes, imageUri);
+		}
+		try {
+			memoryGovernor.acquire(bytes);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private Options getBitmapOptionsForImageDecoding(Options boundsOptions, ImageSize targetSize, ImageScaleType scaleType, ViewScaleType viewScaleType) {
 		Options decodeOptions = new Options();
-		decodeOptions.inSampleSize = computeImageScale(targetSize, scaleType, viewScaleType);
+		decodeOptions.inSampleSize = computeImageScale(boundsOptions.outWidth, boundsOptions.outHeight, targetSize, scaleType, viewScaleType);
 		decodeOptions.inPreferredConfig = displayOptions.getBitmapConfig();
+		if (bitmapPool != null && displayOptions.isReuseBitmaps() && BitmapPool.isReuseSupported()) {
+			setReusableBitmap(decodeOptions, boundsOptions.outWidth, boundsOptions.outHeight);
+		}
 		return decodeOptions;
 	}
 
+	/**
+	 * Makes decoded bitmap mutable (so it can be pooled later) and sets pooled bitmap for decoding into it if pool has
+	 * compatible bitmap
+	 */
+	private void setReusableBitmap(Options decodeOptions, int imageWidth, int imageHeight) {
+		decodeOptions.inMutable = true;
+		if (imageWidth <= 0 || imageHeight <= 0) return;
+
+		int sampleSize = decodeOptions.inSampleSize;
+		if (Build.VERSION.SDK_INT < SDK_KITKAT && sampleSize > 1) {
+			// Before KitKat decoded image must have the same size as reused bitmap, subsampling isn't allowed
+			return;
+		}
+		int width = (imageWidth + sampleSize - 1) / sampleSize;
+		int height = (imageHeight + sampleSize - 1) / sampleSize;
+		decodeOptions.inBitmap = bitmapPool.get(width, height, decodeOptions.inPreferredConfig);
+	}
+
 	@SuppressWarnings("deprecation")
-	private int computeImageScale(ImageSize targetSize, ImageScaleType scaleType, ViewScaleType viewScaleType) throws IOException {
+	private int computeImageScale(int imageWidth, int imageHeight, ImageSize targetSize, ImageScaleType scaleType, ViewScaleType viewScaleType) {
 		int targetWidth = targetSize.getWidth();
 		int targetHeight = targetSize.getHeight();
 
-		// decode image size
-		Options options = new Options();
-		options.inJustDecodeBounds = true;
-		InputStream imageStream = imageDownloader.getStream(imageUri);
-		try {
-			BitmapFactory.decodeStream(imageStream, null, options);
-		} finally {
-			imageStream.close();
-		}
-
 		int scale = 1;
-		int imageWidth = options.outWidth;
-		int imageHeight = options.outHeight;
 		int widthScale = imageWidth / targetWidth;
 		int heightScale = imageHeight / targetHeight;
 
@@ -183,6 +319,16 @@ class ImageDecoder {
 		return scaledBitmap;
 	}
 
+	/** Sets governor which admits decoding only when predicted size of bitmap fits into memory budget */
+	void setMemoryGovernor(DecodingMemoryGovernor memoryGovernor) {
+		this.memoryGovernor = memoryGovernor;
+	}
+
+	/** Sets pool of bitmaps which can be reused for decoding (if display options allow it) */
+	void setBitmapPool(BitmapPool bitmapPool) {
+		this.bitmapPool = bitmapPool;
+	}
+
 	void setLoggingEnabled(boolean loggingEnabled) {
 		this.loggingEnabled = loggingEnabled;
 	}
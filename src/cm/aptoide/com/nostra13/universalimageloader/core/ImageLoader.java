@@ -1,37 +1,41 @@
 package cm.aptoide.com.nostra13.universalimageloader.core;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
 
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.os.Handler;
+import android.os.Looper;
 import android.util.DisplayMetrics;
 import android.view.ViewGroup.LayoutParams;
 import android.widget.ImageView;
-import android.widget.ImageView.ScaleType;
 
 import cm.aptoide.com.nostra13.universalimageloader.cache.disc.DiscCacheAware;
 import cm.aptoide.com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.DecodingMemoryGovernor;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageLoaderStatsListener;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageLoadingHandle;
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageLoadingListener;
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageSize;
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.MemoryCacheUtil;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.PrefetchTarget;
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.QueueProcessingType;
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.SimpleImageLoadingListener;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.ViewScaleType;
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.deque.LIFOLinkedBlockingDeque;
-import cm.aptoide.com.nostra13.universalimageloader.core.display.BitmapDisplayer;
-import cm.aptoide.com.nostra13.universalimageloader.core.display.FakeBitmapDisplayer;
 import cm.aptoide.com.nostra13.universalimageloader.utils.L;
 
 
@@ -48,18 +52,35 @@ public class ImageLoader {
 	private static final String ERROR_WRONG_ARGUMENTS = "Wrong arguments were passed to displayImage() method (ImageView reference are required)";
 	private static final String ERROR_NOT_INIT = "ImageLoader must be init with configuration before using";
 	private static final String ERROR_INIT_CONFIG_WITH_NULL = "ImageLoader configuration can not be initialized with null";
+	private static final String ERROR_WRONG_PREFETCH_ARGUMENTS = "Wrong arguments were passed to prefetch() method (URIs, size and target are required)";
 	private static final String LOG_LOAD_IMAGE_FROM_MEMORY_CACHE = "Load image from memory cache [%s]";
+	private static final String LOG_PREFETCH_IMAGES = "Prefetch %1$d images [%2$s]";
+	private static final String LOG_RESUME_PARKED_TASKS = "Resume %d paused tasks";
+	private static final String LOG_WAIT_FOR_VIEW_LAYOUT = "Wait for layout of ImageView [%s]";
 
 	private ImageLoaderConfiguration configuration;
-	private ExecutorService imageLoadingExecutor;
-	private ExecutorService cachedImageLoadingExecutor;
+	/** Stage which downloads images into disc cache (and loads images which aren't cached on disc) */
+	private volatile ExecutorService networkExecutor;
+	/** Stage which decodes images cached on disc and images handed off by network stage */
+	private volatile ExecutorService decodingExecutor;
+	private volatile DecodingHandOff decodingHandOff;
+	/** Low-priority lane for prefetching tasks */
+	private volatile ExecutorService prefetchExecutor;
 
 	private final ImageLoadingListener emptyListener = new SimpleImageLoadingListener();
-	private final BitmapDisplayer fakeBitmapDisplayer = new FakeBitmapDisplayer();
 
-	private final Map<Integer, String> cacheKeysForImageViews = Collections.synchronizedMap(new HashMap<Integer, String>());
-	private final Map<String, ReentrantLock> uriLocks = new WeakHashMap<String, ReentrantLock>();
+	private final InFlightRegistry inFlightRegistry = new InFlightRegistry();
+	private final StatsRecorder statsRecorder = new StatsRecorder();
 	private final AtomicBoolean paused = new AtomicBoolean(false);
+	/** Tasks which were taken from queue while ImageLoader was paused. Guarded by {@link #paused}. */
+	private final List<LoadAndDisplayImageTask> parkedTasks = new ArrayList<LoadAndDisplayImageTask>();
+	/** Prefetching tasks wait on this lock until visible requests are done */
+	private final Object prefetchLock = new Object();
+	/** Number of submitted visible requests. Running prefetching is preempted when it's changed. */
+	private final AtomicLong visibleTaskSubmissions = new AtomicLong();
+
+	private static final Field MAX_WIDTH_FIELD = getImageViewField("mMaxWidth");
+	private static final Field MAX_HEIGHT_FIELD = getImageViewField("mMaxHeight");
 
 	private volatile static ImageLoader instance;
 
@@ -91,6 +112,7 @@ public class ImageLoader {
 		}
 		if (this.configuration == null) {
 			this.configuration = configuration;
+			decodingHandOff = new DecodingHandOff(configuration.decodingQueueCapacity, statsRecorder);
 		}
 	}
 
@@ -102,14 +124,16 @@ public class ImageLoader {
 	 * 
 	 * @param uri Image URI (i.e. "http://site.com/image.png", "file:///mnt/sdcard/image.png")
 	 * @param imageView {@link ImageView} which should display image
+	 * @return {@linkplain ImageLoadingHandle Handle} of scheduled task or <b>null</b> if image was displayed at once
+	 *         (from memory cache or for empty URI)
 	 * @throws RuntimeException if {@link #init(ImageLoaderConfiguration)} method wasn't called before
 	 */
-	public void displayImage(String uri, ImageView imageView) {
-		displayImage(uri, imageView, null, null, null);
+	public ImageLoadingHandle displayImage(String uri, ImageView imageView) {
+		return displayImage(uri, imageView, null, null, null);
 	}
 	
-	public void displayImage(String uri, ImageView imageView, String hashString) {
-		displayImage(uri, imageView, null, null, hashString);
+	public ImageLoadingHandle displayImage(String uri, ImageView imageView, String hashString) {
+		return displayImage(uri, imageView, null, null, hashString);
 	}
 
 	/**
@@ -122,10 +146,12 @@ public class ImageLoader {
 	 *            default display image options
 	 *            {@linkplain ImageLoaderConfiguration.Builder#defaultDisplayImageOptions(DisplayImageOptions) from
 	 *            configuration} will be used.
+	 * @return {@linkplain ImageLoadingHandle Handle} of scheduled task or <b>null</b> if image was displayed at once
+	 *         (from memory cache or for empty URI)
 	 * @throws RuntimeException if {@link #init(ImageLoaderConfiguration)} method wasn't called before
 	 */
-	public void displayImage(String uri, ImageView imageView, DisplayImageOptions options) {
-		displayImage(uri, imageView, options, null, null);
+	public ImageLoadingHandle displayImage(String uri, ImageView imageView, DisplayImageOptions options) {
+		return displayImage(uri, imageView, options, null, null);
 	}
 
 	/**
@@ -138,10 +164,12 @@ public class ImageLoader {
 	 * @param imageView {@link ImageView} which should display image
 	 * @param listener {@linkplain ImageLoadingListener Listener} for image loading process. Listener fires events on UI
 	 *            thread.
+	 * @return {@linkplain ImageLoadingHandle Handle} of scheduled task or <b>null</b> if image was displayed at once
+	 *         (from memory cache or for empty URI)
 	 * @throws RuntimeException if {@link #init(ImageLoaderConfiguration)} method wasn't called before
 	 */
-	public void displayImage(String uri, ImageView imageView, ImageLoadingListener listener) {
-		displayImage(uri, imageView, null, listener, null);
+	public ImageLoadingHandle displayImage(String uri, ImageView imageView, ImageLoadingListener listener) {
+		return displayImage(uri, imageView, null, listener, null);
 	}
 
 	/**
@@ -156,15 +184,17 @@ public class ImageLoader {
 	 *            configuration} will be used.
 	 * @param listener {@linkplain ImageLoadingListener Listener} for image loading process. Listener fires events on UI
 	 *            thread.
+	 * @return {@linkplain ImageLoadingHandle Handle} of scheduled task or <b>null</b> if image was displayed at once
+	 *         (from memory cache or for empty URI)
 	 * @throws RuntimeException if {@link #init(ImageLoaderConfiguration)} method wasn't called before
 	 */
-	public void displayImage(String uri, ImageView imageView, DisplayImageOptions options, ImageLoadingListener listener, String cacheString) {
+	public ImageLoadingHandle displayImage(String uri, ImageView imageView, DisplayImageOptions options, ImageLoadingListener listener, String cacheString) {
 		if (configuration == null) {
 			throw new RuntimeException(ERROR_NOT_INIT);
 		}
 		if (imageView == null) {
 			L.w(TAG, ERROR_WRONG_ARGUMENTS);
-			return;
+			return null;
 		}
 		if(cacheString == null) {
 			cacheString = uri;
@@ -176,8 +206,11 @@ public class ImageLoader {
 			options = configuration.defaultDisplayImageOptions;
 		}
 
+		// Previous task for this ImageView isn't actual anymore
+		ViewRequestHolder viewHolder = ViewRequestHolder.obtain(imageView);
+		cancelDisplayTask(viewHolder);
+
 		if (uri == null || uri.length() == 0) {
-			cacheKeysForImageViews.remove(imageView.hashCode());
 			listener.onLoadingStarted();
 			if (options.isShowImageForEmptyUri()) {
 				imageView.setImageResource(options.getImageForEmptyUri());
@@ -185,40 +218,63 @@ public class ImageLoader {
 				imageView.setImageBitmap(null);
 			}
 			listener.onLoadingComplete(null);
-			return;
+			return null;
 		}
 
+		if (options.isWaitForViewLayout() && isViewSizeUnknown(imageView)) {
+			if (configuration.loggingEnabled) L.i(LOG_WAIT_FOR_VIEW_LAYOUT, uri);
+			listener.onLoadingStarted();
+			showStubImage(imageView, options);
+
+			DeferredDisplayRequest request = new DeferredDisplayRequest(uri, imageView, options, listener, cacheString, viewHolder);
+			viewHolder.task = request;
+			request.start();
+			return request;
+		}
+		return displayImageForViewSize(uri, imageView, options, listener, cacheString, viewHolder, false);
+	}
+
+	/**
+	 * Displays image from memory cache or starts task for image of size defined by ImageView.
+	 * 
+	 * @param loadingStarted Whether {@link ImageLoadingListener#onLoadingStarted()} was already fired and stub image
+	 *            was already shown
+	 */
+	ImageLoadingHandle displayImageForViewSize(String uri, ImageView imageView, DisplayImageOptions options, ImageLoadingListener listener, String cacheString, ViewRequestHolder viewHolder, boolean loadingStarted) {
 		ImageSize targetSize = getImageSizeScaleTo(imageView);
 		String memoryCacheKey = MemoryCacheUtil.generateKey(uri, targetSize);
-		cacheKeysForImageViews.put(imageView.hashCode(), memoryCacheKey);
+		viewHolder.memoryCacheKey = memoryCacheKey;
 
 		Bitmap bmp = configuration.memoryCache.get(memoryCacheKey);
 		if (bmp != null && !bmp.isRecycled()) {
+			statsRecorder.recordMemoryCacheHit();
 			if (configuration.loggingEnabled) L.i(LOG_LOAD_IMAGE_FROM_MEMORY_CACHE, memoryCacheKey);
-			listener.onLoadingStarted();
+			if (!loadingStarted) listener.onLoadingStarted();
 			imageView.setImageBitmap(bmp);
 			listener.onLoadingComplete(bmp);
+			return null;
 		} else {
-			listener.onLoadingStarted();
-
-			if (options.isShowStubImage()) {
-				imageView.setImageResource(options.getStubImage());
-			} else {
-				if (options.isResetViewBeforeLoading()) {
-					imageView.setImageBitmap(null);
-				}
+			statsRecorder.recordMemoryCacheMiss();
+			if (!loadingStarted) {
+				listener.onLoadingStarted();
+				showStubImage(imageView, options);
 			}
 
-			initExecutorsIfNeed();
-			ImageLoadingInfo imageLoadingInfo = new ImageLoadingInfo(uri, imageView, targetSize, options, listener, getLockForUri(uri), cacheString);
+			ImageLoadingInfo imageLoadingInfo = new ImageLoadingInfo(uri, memoryCacheKey, imageView, targetSize, options, listener, cacheString, viewHolder);
 			LoadAndDisplayImageTask displayImageTask = new LoadAndDisplayImageTask(configuration, imageLoadingInfo, new Handler());
-			boolean isImageCachedOnDisc = configuration.discCache.get(cacheString).exists();
-			if (isImageCachedOnDisc) {
-				cachedImageLoadingExecutor.submit(displayImageTask);
-			} else {
-				imageLoadingExecutor.submit(displayImageTask);
+			viewHolder.task = displayImageTask;
+			submit(displayImageTask);
+			return displayImageTask;
+		}
+	}
+
+	private void showStubImage(ImageView imageView, DisplayImageOptions options) {
+		if (options.isShowStubImage()) {
+			imageView.setImageResource(options.getStubImage());
+		} else {
+			if (options.isResetViewBeforeLoading()) {
+				imageView.setImageBitmap(null);
 			}
-			
 		}
 	}
 
@@ -227,13 +283,15 @@ public class ImageLoader {
 	 * {@link ImageLoadingListener#onLoadingComplete(Bitmap) callback}.<br />
 	 * <b>NOTE:</b> {@link #init(ImageLoaderConfiguration)} method must be called before this method call
 	 * 
-	 * @param context Application context (used for creation of fake {@link ImageView})
+	 * @param context Application context (used for getting of screen size)
 	 * @param uri Image URI (i.e. "http://site.com/image.png", "file:///mnt/sdcard/image.png")
 	 * @param listener {@linkplain ImageLoadingListener Listener} for image loading process. Listener fires events on UI
 	 *            thread.
+	 * @return {@linkplain ImageLoadingHandle Handle} which can cancel loading or <b>null</b> if image was taken at once
+	 *         from memory cache
 	 */
-	public void loadImage(Context context, String uri, ImageLoadingListener listener) {
-		loadImage(context, uri, null, null, listener);
+	public ImageLoadingHandle loadImage(Context context, String uri, ImageLoadingListener listener) {
+		return loadImage(context, uri, null, null, listener);
 	}
 
 	/**
@@ -241,7 +299,7 @@ public class ImageLoader {
 	 * {@link ImageLoadingListener#onLoadingComplete(Bitmap) callback}.<br />
 	 * <b>NOTE:</b> {@link #init(ImageLoaderConfiguration)} method must be called before this method call
 	 * 
-	 * @param context Application context (used for creation of fake {@link ImageView})
+	 * @param context Application context (used for getting of screen size)
 	 * @param uri Image URI (i.e. "http://site.com/image.png", "file:///mnt/sdcard/image.png")
 	 * @param minImageSize Minimal size for {@link Bitmap} which will be returned in
 	 *            {@linkplain ImageLoadingListener#onLoadingComplete(Bitmap) callback}. Downloaded image will be decoded
@@ -249,9 +307,11 @@ public class ImageLoader {
 	 *            incoming minImageSize .
 	 * @param listener {@linkplain ImageLoadingListener Listener} for image loading process. Listener fires events on UI
 	 *            thread.
+	 * @return {@linkplain ImageLoadingHandle Handle} which can cancel loading or <b>null</b> if image was taken at once
+	 *         from memory cache
 	 */
-	public void loadImage(Context context, String uri, ImageSize minImageSize, ImageLoadingListener listener) {
-		loadImage(context, uri, minImageSize, null, listener);
+	public ImageLoadingHandle loadImage(Context context, String uri, ImageSize minImageSize, ImageLoadingListener listener) {
+		return loadImage(context, uri, minImageSize, null, listener);
 	}
 
 	/**
@@ -259,18 +319,19 @@ public class ImageLoader {
 	 * {@link ImageLoadingListener#onLoadingComplete(Bitmap) callback}.<br />
 	 * <b>NOTE:</b> {@link #init(ImageLoaderConfiguration)} method must be called before this method call
 	 * 
-	 * @param context Application context (used for creation of fake {@link ImageView})
+	 * @param context Application context (used for getting of screen size)
 	 * @param uri Image URI (i.e. "http://site.com/image.png", "file:///mnt/sdcard/image.png")
 	 * @param options {@linkplain DisplayImageOptions Display image options} for image displaying. If <b>null</b> -
 	 *            default display image options
 	 *            {@linkplain ImageLoaderConfiguration.Builder#defaultDisplayImageOptions(DisplayImageOptions) from
-	 *            configuration} will be used.<br />
-	 *            Incoming options should contain {@link FakeBitmapDisplayer} as displayer.
+	 *            configuration} will be used. Displayer of options isn't used.
 	 * @param listener {@linkplain ImageLoadingListener Listener} for image loading process. Listener fires events on UI
 	 *            thread.
+	 * @return {@linkplain ImageLoadingHandle Handle} which can cancel loading or <b>null</b> if image was taken at once
+	 *         from memory cache
 	 */
-	public void loadImage(Context context, String uri, DisplayImageOptions options, ImageLoadingListener listener) {
-		loadImage(context, uri, null, options, listener);
+	public ImageLoadingHandle loadImage(Context context, String uri, DisplayImageOptions options, ImageLoadingListener listener) {
+		return loadImage(context, uri, null, options, listener);
 	}
 
 	/**
@@ -278,7 +339,7 @@ public class ImageLoader {
 	 * {@link ImageLoadingListener#onLoadingComplete(Bitmap) callback}.<br />
 	 * <b>NOTE:</b> {@link #init(ImageLoaderConfiguration)} method must be called before this method call
 	 * 
-	 * @param context Application context (used for creation of fake {@link ImageView})
+	 * @param context Application context (used for getting of screen size)
 	 * @param uri Image URI (i.e. "http://site.com/image.png", "file:///mnt/sdcard/image.png")
 	 * @param minImageSize Minimal size for {@link Bitmap} which will be returned in
 	 *            {@linkplain ImageLoadingListener#onLoadingComplete(Bitmap) callback}. Downloaded image will be decoded
@@ -287,12 +348,19 @@ public class ImageLoader {
 	 * @param options {@linkplain DisplayImageOptions Display image options} for image displaying. If <b>null</b> -
 	 *            default display image options
 	 *            {@linkplain ImageLoaderConfiguration.Builder#defaultDisplayImageOptions(DisplayImageOptions) from
-	 *            configuration} will be used.<br />
-	 *            Incoming options should contain {@link FakeBitmapDisplayer} as displayer.
+	 *            configuration} will be used. Displayer of options isn't used.
 	 * @param listener {@linkplain ImageLoadingListener Listener} for image loading process. Listener fires events on UI
 	 *            thread.
+	 * @return {@linkplain ImageLoadingHandle Handle} which can cancel loading or <b>null</b> if image was taken at once
+	 *         from memory cache
 	 */
-	public void loadImage(Context context, String uri, ImageSize minImageSize, DisplayImageOptions options, ImageLoadingListener listener) {
+	public ImageLoadingHandle loadImage(Context context, String uri, ImageSize minImageSize, DisplayImageOptions options, ImageLoadingListener listener) {
+		if (configuration == null) {
+			throw new RuntimeException(ERROR_NOT_INIT);
+		}
+		if (listener == null) {
+			listener = emptyListener;
+		}
 		if (minImageSize == null) {
 			minImageSize = new ImageSize(configuration.maxImageWidthForMemoryCache, configuration.maxImageHeightForMemoryCache);
 		}
@@ -300,34 +368,198 @@ public class ImageLoader {
 			options = configuration.defaultDisplayImageOptions;
 		}
 
-		DisplayImageOptions optionsWithFakeDisplayer;
-		if (options.getDisplayer() instanceof FakeBitmapDisplayer) {
-			optionsWithFakeDisplayer = options;
+		listener.onLoadingStarted();
+		if (uri == null || uri.length() == 0) {
+			listener.onLoadingComplete(null);
+			return null;
+		}
+
+		DisplayMetrics displayMetrics = context.getResources().getDisplayMetrics();
+		int width = minImageSize.getWidth();
+		if (width <= 0) width = displayMetrics.widthPixels;
+		int height = minImageSize.getHeight();
+		if (height <= 0) height = displayMetrics.heightPixels;
+		ImageSize targetSize = new ImageSize(roundToSizeStep(width), roundToSizeStep(height));
+		String memoryCacheKey = MemoryCacheUtil.generateKey(uri, targetSize);
+
+		Bitmap bmp = configuration.memoryCache.get(memoryCacheKey);
+		if (bmp != null && !bmp.isRecycled()) {
+			statsRecorder.recordMemoryCacheHit();
+			if (configuration.loggingEnabled) L.i(LOG_LOAD_IMAGE_FROM_MEMORY_CACHE, memoryCacheKey);
+			listener.onLoadingComplete(bmp);
+			return null;
+		}
+		statsRecorder.recordMemoryCacheMiss();
+
+		ImageLoadingInfo imageLoadingInfo = new ImageLoadingInfo(uri, memoryCacheKey, targetSize, ViewScaleType.CROP, options, listener, null);
+		LoadAndDisplayImageTask loadImageTask = new LoadAndDisplayImageTask(configuration, imageLoadingInfo, new Handler());
+		submit(loadImageTask);
+		return loadImageTask;
+	}
+
+	/**
+	 * Adds prefetch tasks to low-priority lane. Prefetching starts only when there are no visible requests (display and
+	 * load tasks) in progress or in queues and ImageLoader isn't {@linkplain #pause() paused}. Downloading of prefetched
+	 * image is preempted by visible request: it's interrupted and resumed when prefetching gets its turn again. Images
+	 * which are already in target cache are skipped.<br />
+	 * Scale type of views isn't defined by this method, so images are only downloaded into disc cache (bitmap decoded
+	 * for another scale type can't be displayed in view). Use {@link #prefetch(Collection, ImageSize, ViewScaleType,
+	 * PrefetchTarget)} to put prefetched images into memory cache.<br />
+	 * <b>NOTE:</b> {@link #init(ImageLoaderConfiguration)} method must be called before this method call
+	 * 
+	 * @param uris Image URIs (i.e. "http://site.com/image.png", "file:///mnt/sdcard/image.png")
+	 * @param size Size of views which will display images
+	 * @param target Target cache of prefetched images
+	 * @return {@linkplain ImageLoadingHandle Handle} which cancels prefetching of all images of this call
+	 * @throws IllegalArgumentException if some of arguments is <b>null</b>
+	 */
+	public ImageLoadingHandle prefetch(Collection<String> uris, ImageSize size, PrefetchTarget target) {
+		return prefetch(uris, size, null, target);
+	}
+
+	/**
+	 * Adds prefetch tasks to low-priority lane. Prefetching starts only when there are no visible requests (display and
+	 * load tasks) in progress or in queues and ImageLoader isn't {@linkplain #pause() paused}. Downloading of prefetched
+	 * image is preempted by visible request: it's interrupted and resumed when prefetching gets its turn again. Images
+	 * which are already in target cache are skipped.<br />
+	 * <b>NOTE:</b> {@link #init(ImageLoaderConfiguration)} method must be called before this method call
+	 * 
+	 * @param uris Image URIs (i.e. "http://site.com/image.png", "file:///mnt/sdcard/image.png")
+	 * @param size Size of views which will display images. Prefetched bitmaps are decoded for this size, so they are
+	 *            found in memory cache only when this size is equal to size of view.
+	 * @param viewScaleType {@linkplain ViewScaleType#fromImageView(ImageView) Scale type} of views which will display
+	 *            images. Prefetched bitmaps are decoded for this scale type. If it's <b>null</b> then images are only
+	 *            downloaded into disc cache.
+	 * @param target Target cache of prefetched images
+	 * @return {@linkplain ImageLoadingHandle Handle} which cancels prefetching of all images of this call
+	 * @throws IllegalArgumentException if URIs, size or target is <b>null</b>
+	 */
+	public ImageLoadingHandle prefetch(Collection<String> uris, ImageSize size, ViewScaleType viewScaleType, PrefetchTarget target) {
+		if (configuration == null) {
+			throw new RuntimeException(ERROR_NOT_INIT);
+		}
+		if (uris == null || size == null || target == null) {
+			throw new IllegalArgumentException(ERROR_WRONG_PREFETCH_ARGUMENTS);
+		}
+		if (viewScaleType == null) {
+			// Memory cache key doesn't include scale type, so bitmap must be decoded for scale type of view
+			target = PrefetchTarget.DISC;
+		}
+
+		DisplayImageOptions.Builder optionsBuilder = new DisplayImageOptions.Builder().cloneFrom(configuration.defaultDisplayImageOptions).cacheOnDisc();
+		if (target == PrefetchTarget.DISC_AND_MEMORY) {
+			optionsBuilder.cacheInMemory();
+		}
+		DisplayImageOptions options = optionsBuilder.build();
+		ImageSize targetSize = new ImageSize(roundToSizeStep(size.getWidth()), roundToSizeStep(size.getHeight()));
+		Handler handler = new Handler(Looper.getMainLooper());
+
+		PrefetchBatch batch = new PrefetchBatch();
+		for (String uri : uris) {
+			if (uri == null || uri.length() == 0) continue;
+
+			String memoryCacheKey = MemoryCacheUtil.generateKey(uri, targetSize);
+			if (target == PrefetchTarget.DISC_AND_MEMORY && configuration.memoryCache.get(memoryCacheKey) != null) continue;
+
+			ImageLoadingInfo imageLoadingInfo = new ImageLoadingInfo(uri, memoryCacheKey, targetSize, viewScaleType, options, emptyListener, target);
+			LoadAndDisplayImageTask prefetchTask = new LoadAndDisplayImageTask(configuration, imageLoadingInfo, handler);
+			if (target == PrefetchTarget.DISC && prefetchTask.isImageCachedOnDisc()) continue;
+
+			batch.add(prefetchTask);
+			submit(prefetchTask);
+		}
+		if (configuration.loggingEnabled) L.i(LOG_PREFETCH_IMAGES, batch.size(), target);
+		return batch;
+	}
+
+	private void submit(LoadAndDisplayImageTask task) {
+		initExecutorsIfNeed();
+		if (task.isPrefetch()) {
+			prefetchExecutor.execute(task);
+		} else if (task.isImageCachedOnDisc()) {
+			task.setNetworkStage(false);
+			decodingExecutor.execute(task);
+			visibleTaskSubmissions.incrementAndGet();
 		} else {
-			optionsWithFakeDisplayer = new DisplayImageOptions.Builder().cloneFrom(options).displayer(fakeBitmapDisplayer).build();
+			task.setNetworkStage(true);
+			networkExecutor.execute(task);
+			visibleTaskSubmissions.incrementAndGet();
 		}
+	}
+
+	/**
+	 * Hands off decoding of downloaded image from network stage to decoding stage. Waits while decoding stage has max
+	 * number of handed off images.
+	 * 
+	 * @param decodingTask Task which decodes image. It must release slot of {@link DecodingHandOff} after decoding.
+	 * @return <b>true</b> - if decoding task was submitted; <b>false</b> - if thread was interrupted while waiting or
+	 *         ImageLoader was stopped
+	 */
+	boolean handOffDecoding(LoadAndDisplayImageTask.DecodingStageTask decodingTask) {
+		if (!decodingHandOff.acquire()) return false;
 
-		ImageView fakeImage = new ImageView(context);
-		fakeImage.setLayoutParams(new LayoutParams(minImageSize.getWidth(), minImageSize.getHeight()));
-		fakeImage.setScaleType(ScaleType.CENTER_CROP);
+		try {
+			decodingExecutor.execute(decodingTask);
+			return true;
+		} catch (RejectedExecutionException e) {
+			// Decoding stage was stopped
+			decodingHandOff.release();
+			return false;
+		}
+	}
 
-		displayImage(uri, fakeImage, optionsWithFakeDisplayer, listener, null);
+	/**
+	 * Submits task of decoding stage to network stage. It's used when image which was cached on disc at submitting is
+	 * expired or was removed.
+	 * 
+	 * @return <b>true</b> - if task was submitted; <b>false</b> - if ImageLoader was stopped
+	 */
+	boolean moveToNetworkStage(LoadAndDisplayImageTask task) {
+		task.setNetworkStage(true);
+		try {
+			networkExecutor.execute(task);
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Puts prefetching task back to low-priority lane. It's used when prefetching was preempted by visible request.
+	 * 
+	 * @return <b>true</b> - if task was submitted; <b>false</b> - if ImageLoader was stopped
+	 */
+	boolean requeuePrefetch(LoadAndDisplayImageTask task) {
+		try {
+			prefetchExecutor.execute(task);
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	DecodingHandOff getDecodingHandOff() {
+		return decodingHandOff;
 	}
 
 	private void initExecutorsIfNeed() {
-		if (imageLoadingExecutor == null || imageLoadingExecutor.isShutdown()) {
-			imageLoadingExecutor = createExecutor();
+		if (networkExecutor == null || networkExecutor.isShutdown()) {
+			networkExecutor = createExecutor(configuration.threadPoolSize);
+		}
+		if (decodingExecutor == null || decodingExecutor.isShutdown()) {
+			decodingExecutor = createExecutor(configuration.decodingThreadPoolSize);
 		}
-		if (cachedImageLoadingExecutor == null || cachedImageLoadingExecutor.isShutdown()) {
-			cachedImageLoadingExecutor = createExecutor();
+		if (prefetchExecutor == null || prefetchExecutor.isShutdown()) {
+			BlockingQueue<Runnable> taskQueue = new CancellableTaskQueue(new LinkedBlockingQueue<Runnable>());
+			prefetchExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, taskQueue, configuration.prefetchThreadFactory);
 		}
 	}
 
-	private ExecutorService createExecutor() {
+	private ExecutorService createExecutor(int poolSize) {
 		boolean lifo = configuration.tasksProcessingType == QueueProcessingType.LIFO;
 		BlockingQueue<Runnable> taskQueue = lifo ? new LIFOLinkedBlockingDeque<Runnable>() : new LinkedBlockingQueue<Runnable>();
-		return new ThreadPoolExecutor(configuration.threadPoolSize, configuration.threadPoolSize, 0L, TimeUnit.MILLISECONDS, taskQueue,
-				configuration.displayImageThreadFactory);
+		taskQueue = new CancellableTaskQueue(taskQueue);
+		return new StageExecutor(poolSize, taskQueue, configuration.displayImageThreadFactory);
 	}
 
 	/** Returns memory cache */
@@ -345,6 +577,53 @@ public class ImageLoader {
 		}
 	}
 
+	/**
+	 * Returns governor of decoding memory. It can be used for monitoring of memory which is taken by decodings in
+	 * progress and of decodings which are waiting for memory.
+	 */
+	public DecodingMemoryGovernor getDecodingMemoryGovernor() {
+		return configuration.decodingMemoryGovernor;
+	}
+
+	/**
+	 * Returns snapshot of loading statistics: cache hits and misses, downloaded and decoded bytes, latency histograms,
+	 * queue depths and load of network and decoding stages, cancelled tasks. Statistics are collected always
+	 * (independently of logging).
+	 */
+	public ImageLoaderStats getStats() {
+		ImageLoaderStats stats = new ImageLoaderStats();
+		statsRecorder.fill(stats);
+		stats.networkQueueDepth = getQueueDepth(networkExecutor);
+		stats.networkActiveCount = getActiveCount(networkExecutor);
+		stats.decodingQueueDepth = getQueueDepth(decodingExecutor);
+		stats.decodingActiveCount = getActiveCount(decodingExecutor);
+		if (decodingHandOff != null) {
+			stats.pendingDecodingCount = decodingHandOff.getPendingCount();
+		}
+		stats.prefetchQueueDepth = getQueueDepth(prefetchExecutor);
+		synchronized (paused) {
+			stats.pausedTaskCount = parkedTasks.size();
+		}
+		return stats;
+	}
+
+	/**
+	 * Sets listener which receives every measurement of downloading and decoding
+	 * 
+	 * @param listener Listener or <b>null</b> to remove listener
+	 */
+	public void setStatsListener(ImageLoaderStatsListener listener) {
+		statsRecorder.setListener(listener);
+	}
+
+	private static int getQueueDepth(ExecutorService executor) {
+		return executor == null ? 0 : ((ThreadPoolExecutor) executor).getQueue().size();
+	}
+
+	private static int getActiveCount(ExecutorService executor) {
+		return executor == null ? 0 : ((ThreadPoolExecutor) executor).getActiveCount();
+	}
+
 	/** Returns disc cache */
 	public DiscCacheAware getDiscCache() {
 		return configuration.discCache;
@@ -362,41 +641,94 @@ public class ImageLoader {
 
 	/** Returns URI of image which is loading at this moment into passed {@link ImageView} */
 	public String getLoadingUriForView(ImageView imageView) {
-		return cacheKeysForImageViews.get(imageView.hashCode());
+		ViewRequestHolder viewHolder = ViewRequestHolder.get(imageView);
+		return viewHolder == null ? null : viewHolder.memoryCacheKey;
 	}
 
 	/**
-	 * Cancel the task of loading and displaying image for passed {@link ImageView}.
+	 * Cancel the task of loading and displaying image for passed {@link ImageView}. If task is waiting in queue then
+	 * it won't be executed.
 	 * 
 	 * @param imageView {@link ImageView} for which display task will be cancelled
+	 * @see ImageLoadingHandle#cancel()
 	 */
 	public void cancelDisplayTask(ImageView imageView) {
-		cacheKeysForImageViews.remove(imageView.hashCode());
+		ViewRequestHolder viewHolder = ViewRequestHolder.get(imageView);
+		if (viewHolder != null) {
+			cancelDisplayTask(viewHolder);
+		}
+	}
+
+	private void cancelDisplayTask(ViewRequestHolder viewHolder) {
+		ImageLoadingHandle task = viewHolder.invalidate();
+		if (task != null) {
+			task.cancel();
+		}
 	}
 
 	/**
 	 * Pause ImageLoader. All new "load&display" tasks won't be executed until ImageLoader is {@link #resume() resumed}.<br />
-	 * Already running tasks are not paused.
+	 * Already running tasks are not paused. Paused tasks don't hold threads of executor: they are put aside and are
+	 * submitted again on resume. Tasks for images cached in memory or on disc can be allowed to run while ImageLoader
+	 * is paused by {@link ImageLoaderConfiguration.Builder#loadCachedImagesWhilePaused()}.
 	 */
 	public void pause() {
 		paused.set(true);
 	}
 
-	/** Resumes waiting "load&display" tasks */
+	/**
+	 * Resumes paused "load&display" tasks. The most recently requested tasks are executed first, tasks which became
+	 * not actual (e.g. ImageView was reused) are cancelled.
+	 */
 	public void resume() {
+		List<LoadAndDisplayImageTask> tasks;
 		synchronized (paused) {
 			paused.set(false);
-			paused.notifyAll();
+			tasks = new ArrayList<LoadAndDisplayImageTask>(parkedTasks);
+			parkedTasks.clear();
+		}
+		// Prefetching which starts before resumed tasks are submitted is preempted by them
+		signalPrefetchLane();
+		if (tasks.isEmpty()) return;
+
+		if (configuration.loggingEnabled) L.i(LOG_RESUME_PARKED_TASKS, tasks.size());
+
+		// LIFO queue executes tasks in reverse order of submitting
+		final boolean lifo = configuration.tasksProcessingType == QueueProcessingType.LIFO;
+		Collections.sort(tasks, new Comparator<LoadAndDisplayImageTask>() {
+			@Override
+			public int compare(LoadAndDisplayImageTask lhs, LoadAndDisplayImageTask rhs) {
+				long lhsOrder = lhs.getRequestOrder();
+				long rhsOrder = rhs.getRequestOrder();
+				int result = lhsOrder < rhsOrder ? 1 : (lhsOrder == rhsOrder ? 0 : -1);
+				return lifo ? -result : result;
+			}
+		});
+		for (LoadAndDisplayImageTask task : tasks) {
+			if (!task.checkTaskIsNotActual()) {
+				submit(task);
+			}
 		}
 	}
 
-	/** Stops all running display image tasks, discards all other scheduled tasks */
+	/** Stops all running display image and prefetch tasks, discards all other scheduled tasks */
 	public void stop() {
-		if (imageLoadingExecutor != null) {
-			imageLoadingExecutor.shutdownNow();
+		if (networkExecutor != null) {
+			networkExecutor.shutdownNow();
 		}
-		if (cachedImageLoadingExecutor != null) {
-			cachedImageLoadingExecutor.shutdownNow();
+		if (decodingExecutor != null) {
+			for (Runnable task : decodingExecutor.shutdownNow()) {
+				if (task instanceof LoadAndDisplayImageTask.DecodingStageTask) {
+					// Handed off image holds slot of decoding stage and its loading is registered as in-flight
+					((LoadAndDisplayImageTask.DecodingStageTask) task).discard();
+				}
+			}
+		}
+		if (prefetchExecutor != null) {
+			prefetchExecutor.shutdownNow();
+		}
+		synchronized (paused) {
+			parkedTasks.clear();
 		}
 	}
 
@@ -404,33 +736,65 @@ public class ImageLoader {
 	 * Defines image size for loading at memory (for memory economy) by {@link ImageView} parameters.<br />
 	 * Size computing algorithm:<br />
 	 * 1) Get <b>layout_width</b> and <b>layout_height</b>. If both of them haven't exact value then go to step #2.</br>
-	 * 2) Get <b>maxWidth</b> and <b>maxHeight</b>. If both of them are not set then go to step #3.<br />
-	 * 3) Get <b>maxImageWidthForMemoryCache</b> and <b>maxImageHeightForMemoryCache</b> from configuration. If both of
-	 * them are not set then go to step #3.<br />
-	 * 4) Get device screen dimensions.
+	 * 2) Get measured size of view (except <b>wrap_content</b> dimensions). If view isn't measured then go to step
+	 * #3.<br />
+	 * 3) Get <b>maxWidth</b> and <b>maxHeight</b>. If both of them are not set then go to step #4.<br />
+	 * 4) Get <b>maxImageWidthForMemoryCache</b> and <b>maxImageHeightForMemoryCache</b> from configuration. If both of
+	 * them are not set then go to step #5.<br />
+	 * 5) Get device screen dimensions.<br />
+	 * Size is rounded up to {@linkplain ImageLoaderConfiguration.Builder#targetSizeStep(int) configured step}.
 	 */
 	private ImageSize getImageSizeScaleTo(ImageView imageView) {
 		DisplayMetrics displayMetrics = imageView.getContext().getResources().getDisplayMetrics();
 
 		LayoutParams params = imageView.getLayoutParams();
 		int width = params.width; // Get layout width parameter
-		if (width <= 0) width = getFieldValue(imageView, "mMaxWidth"); // Check maxWidth parameter
+		if (width <= 0 && params.width != LayoutParams.WRAP_CONTENT) width = imageView.getWidth() - imageView.getPaddingLeft() - imageView.getPaddingRight(); // Check measured width
+		if (width <= 0) width = getFieldValue(imageView, MAX_WIDTH_FIELD); // Check maxWidth parameter
 		if (width <= 0) width = configuration.maxImageWidthForMemoryCache;
 		if (width <= 0) width = displayMetrics.widthPixels;
 
 		int height = params.height; // Get layout height parameter
-		if (height <= 0) height = getFieldValue(imageView, "mMaxHeight"); // Check maxHeight parameter
+		if (height <= 0 && params.height != LayoutParams.WRAP_CONTENT) height = imageView.getHeight() - imageView.getPaddingTop() - imageView.getPaddingBottom(); // Check measured height
+		if (height <= 0) height = getFieldValue(imageView, MAX_HEIGHT_FIELD); // Check maxHeight parameter
 		if (height <= 0) height = configuration.maxImageHeightForMemoryCache;
 		if (height <= 0) height = displayMetrics.heightPixels;
 
-		return new ImageSize(width, height);
+		return new ImageSize(roundToSizeStep(width), roundToSizeStep(height));
 	}
 
-	private int getFieldValue(Object object, String fieldName) {
-		int value = 0;
+	private int roundToSizeStep(int size) {
+		int step = configuration.targetSizeStep;
+		if (step <= 1) return size;
+		return (size + step - 1) / step * step;
+	}
+
+	/** Returns <b>true</b> if size of view can't be defined before view layout */
+	private static boolean isViewSizeUnknown(ImageView imageView) {
+		LayoutParams params = imageView.getLayoutParams();
+		if (params == null) return true;
+
+		boolean widthUnknown = params.width <= 0 && params.width != LayoutParams.WRAP_CONTENT && imageView.getWidth() <= 0;
+		boolean heightUnknown = params.height <= 0 && params.height != LayoutParams.WRAP_CONTENT && imageView.getHeight() <= 0;
+		return widthUnknown || heightUnknown;
+	}
+
+	private static Field getImageViewField(String fieldName) {
 		try {
 			Field field = ImageView.class.getDeclaredField(fieldName);
 			field.setAccessible(true);
+			return field;
+		} catch (Exception e) {
+			L.e(e);
+			return null;
+		}
+	}
+
+	private static int getFieldValue(Object object, Field field) {
+		if (field == null) return 0;
+
+		int value = 0;
+		try {
 			int fieldValue = (Integer) field.get(object);
 			if (fieldValue > 0 && fieldValue < Integer.MAX_VALUE) {
 				value = fieldValue;
@@ -441,16 +805,69 @@ public class ImageLoader {
 		return value;
 	}
 
-	private ReentrantLock getLockForUri(String uri) {
-		ReentrantLock lock = uriLocks.get(uri);
-		if (lock == null) {
-			lock = new ReentrantLock();
-			uriLocks.put(uri, lock);
+	boolean isPaused() {
+		return paused.get();
+	}
+
+	/**
+	 * Puts task aside until ImageLoader is {@linkplain #resume() resumed}.
+	 * 
+	 * @return <b>true</b> - if task was put aside; <b>false</b> - if ImageLoader isn't paused (anymore)
+	 */
+	boolean parkTaskIfPaused(LoadAndDisplayImageTask task) {
+		synchronized (paused) {
+			if (!paused.get()) return false;
+
+			parkedTasks.add(task);
+			return true;
+		}
+	}
+
+	/**
+	 * Waits while ImageLoader is paused or visible requests are executed or are waiting in queues. Is called by
+	 * prefetching task before loading. Waiting task is woken up when visible stages finish or cancel some task and
+	 * when ImageLoader is resumed.
+	 * 
+	 * @return Turn of prefetching which is checked by {@link #isPrefetchPreempted(long)} during loading or <b>-1</b> if
+	 *         thread was interrupted while waiting
+	 */
+	long waitForPrefetchTurn() {
+		synchronized (prefetchLock) {
+			while (true) {
+				// Counter is read before stages are checked, so any request submitted after check preempts prefetching
+				long turn = visibleTaskSubmissions.get();
+				if (!paused.get() && !isStageBusy(networkExecutor) && !isStageBusy(decodingExecutor)) return turn;
+
+				try {
+					prefetchLock.wait();
+				} catch (InterruptedException e) {
+					return -1;
+				}
+			}
+		}
+	}
+
+	/** Returns <b>true</b> if visible request was submitted after prefetching got its turn */
+	boolean isPrefetchPreempted(long turn) {
+		return visibleTaskSubmissions.get() != turn;
+	}
+
+	/** Wakes up prefetching tasks which wait for their turn, so they check state of visible stages again */
+	void signalPrefetchLane() {
+		synchronized (prefetchLock) {
+			prefetchLock.notifyAll();
 		}
-		return lock;
 	}
 
-	AtomicBoolean getPause() {
-		return paused;
+	private static boolean isStageBusy(ExecutorService executor) {
+		return executor != null && ((StageExecutor) executor).isBusy();
+	}
+
+	InFlightRegistry getInFlightRegistry() {
+		return inFlightRegistry;
+	}
+
+	StatsRecorder getStatsRecorder() {
+		return statsRecorder;
 	}
 }
@@ -9,9 +9,11 @@ import android.graphics.Bitmap.CompressFormat;
 import cm.aptoide.com.nostra13.universalimageloader.cache.disc.DiscCacheAware;
 import cm.aptoide.com.nostra13.universalimageloader.cache.disc.impl.UnlimitedDiscCache;
 import cm.aptoide.com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.BitmapPool;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
 import cm.aptoide.com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.DecodingMemoryGovernor;
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.FailReason;
-import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageLoadingListener;
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.QueueProcessingType;
 import cm.aptoide.com.nostra13.universalimageloader.core.download.ImageDownloader;
 import cm.aptoide.com.nostra13.universalimageloader.utils.L;
@@ -32,37 +34,50 @@ public final class ImageLoaderConfiguration {
 
 	final int maxImageWidthForMemoryCache;
 	final int maxImageHeightForMemoryCache;
+	final int targetSizeStep;
 	final int maxImageWidthForDiscCache;
 	final int maxImageHeightForDiscCache;
 	final CompressFormat imageCompressFormatForDiscCache;
 	final int imageQualityForDiscCache;
+	final DiscCacheDerivatives discCacheDerivatives;
 
 	final int threadPoolSize;
-	final boolean handleOutOfMemory;
+	final int decodingThreadPoolSize;
+	final int decodingQueueCapacity;
+	final DecodingMemoryGovernor decodingMemoryGovernor;
 	final QueueProcessingType tasksProcessingType;
+	final boolean loadCachedImagesWhilePaused;
 
 	final MemoryCacheAware<String, Bitmap> memoryCache;
+	final BitmapPool bitmapPool;
 	final DiscCacheAware discCache;
 	final ImageDownloader downloader;
 	final DisplayImageOptions defaultDisplayImageOptions;
 	final ThreadFactory displayImageThreadFactory;
+	final ThreadFactory prefetchThreadFactory;
 	final boolean loggingEnabled;
 
 	private ImageLoaderConfiguration(final Builder builder) {
 		maxImageWidthForMemoryCache = builder.maxImageWidthForMemoryCache;
 		maxImageHeightForMemoryCache = builder.maxImageHeightForMemoryCache;
+		targetSizeStep = builder.targetSizeStep;
 		maxImageWidthForDiscCache = builder.maxImageWidthForDiscCache;
 		maxImageHeightForDiscCache = builder.maxImageHeightForDiscCache;
 		imageCompressFormatForDiscCache = builder.imageCompressFormatForDiscCache;
 		imageQualityForDiscCache = builder.imageQualityForDiscCache;
+		discCacheDerivatives = builder.discCacheDerivatives;
 		threadPoolSize = builder.threadPoolSize;
-		handleOutOfMemory = builder.handleOutOfMemory;
+		decodingThreadPoolSize = builder.decodingThreadPoolSize;
+		decodingQueueCapacity = builder.decodingQueueCapacity;
+		decodingMemoryGovernor = builder.decodingMemoryGovernor;
 		discCache = builder.discCache;
 		memoryCache = builder.memoryCache;
+		bitmapPool = builder.bitmapPool;
 		defaultDisplayImageOptions = builder.defaultDisplayImageOptions;
 		loggingEnabled = builder.loggingEnabled;
 		downloader = builder.downloader;
 		tasksProcessingType = builder.tasksProcessingType;
+		loadCachedImagesWhilePaused = builder.loadCachedImagesWhilePaused;
 		displayImageThreadFactory = new ThreadFactory() {
 			@Override
 			public Thread newThread(Runnable r) {
@@ -71,6 +86,14 @@ public final class ImageLoaderConfiguration {
 				return t;
 			}
 		};
+		prefetchThreadFactory = new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		};
 	}
 
 	/**
@@ -81,16 +104,23 @@ public final class ImageLoaderConfiguration {
 	 * <li>maxImageHeightForMemoryCache = device's screen height</li>
 	 * <li>maxImageWidthForDiscCache = unlimited</li>
 	 * <li>maxImageHeightForDiscCache = unlimited</li>
+	 * <li>discCacheDerivatives = none (images are decoded from cached originals)</li>
+	 * <li>targetSizeStep = 0 (target sizes aren't rounded)</li>
 	 * <li>threadPoolSize = {@link Builder#DEFAULT_THREAD_POOL_SIZE this}</li>
+	 * <li>decodingThreadPoolSize = number of CPU cores</li>
+	 * <li>decodingQueueCapacity = 2 * decodingThreadPoolSize</li>
 	 * <li>threadPriority = {@link Builder#DEFAULT_THREAD_PRIORITY this}</li>
 	 * <li>allow to cache different sizes of image in memory</li>
-	 * <li>memoryCache = {@link UsingFreqLimitedCache} with limited memory cache size (
+	 * <li>decodingMemoryBudget = 1/4 of max heap size</li>
+	 * <li>memoryCache = {@link cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl.LFULimitedMemoryCache LFULimitedMemoryCache} with limited memory cache size (
 	 * {@link Builder#DEFAULT_MEMORY_CACHE_SIZE this} bytes)</li>
+	 * <li>bitmapPool = none (bitmaps aren't reused)</li>
 	 * <li>discCache = {@link UnlimitedDiscCache}</li>
 	 * <li>imageDownloader = {@link ImageDownloader#createDefault()}</li>
 	 * <li>discCacheFileNameGenerator = {@link FileNameGenerator#createDefault()}</li>
 	 * <li>defaultDisplayImageOptions = {@link DisplayImageOptions#createSimple() Simple options}</li>
 	 * <li>tasksProcessingOrder = {@link QueueProcessingType#FIFO}</li>
+	 * <li>all tasks are paused while ImageLoader is paused</li>
 	 * <li>detailed logging disabled</li>
 	 * </ul>
 	 * */
@@ -123,22 +153,29 @@ public final class ImageLoaderConfiguration {
 
 		private int maxImageWidthForMemoryCache = 0;
 		private int maxImageHeightForMemoryCache = 0;
+		private int targetSizeStep = 0;
 		private int maxImageWidthForDiscCache = 0;
 		private int maxImageHeightForDiscCache = 0;
 		private CompressFormat imageCompressFormatForDiscCache = null;
 		private int imageQualityForDiscCache = 0;
+		private DiscCacheDerivatives discCacheDerivatives = null;
 
 		private int threadPoolSize = DEFAULT_THREAD_POOL_SIZE;
+		private int decodingThreadPoolSize = 0;
+		private int decodingQueueCapacity = 0;
 		private int threadPriority = DEFAULT_THREAD_PRIORITY;
 		private boolean denyCacheImageMultipleSizesInMemory = false;
-		private boolean handleOutOfMemory = true;
+		private long decodingMemoryBudget = 0;
+		private DecodingMemoryGovernor decodingMemoryGovernor = null;
 		private QueueProcessingType tasksProcessingType = QueueProcessingType.FIFO;
+		private boolean loadCachedImagesWhilePaused = false;
 
 		private int memoryCacheSize = DEFAULT_MEMORY_CACHE_SIZE;
 		private int discCacheSize = 0;
 		private int discCacheFileCount = 0;
 
 		private MemoryCacheAware<String, Bitmap> memoryCache = null;
+		private BitmapPool bitmapPool = null;
 		private DiscCacheAware discCache = null;
 		private FileNameGenerator discCacheFileNameGenerator = null;
 		private ImageDownloader downloader = null;
@@ -164,6 +201,16 @@ public final class ImageLoaderConfiguration {
 			return this;
 		}
 
+		/**
+		 * Sets step (in pixels) for rounding of target size of images. Width and height of {@link android.widget.ImageView
+		 * ImageView} are rounded up to multiple of this step, so views of nearly the same size share images in memory
+		 * cache. Default value - 0 (sizes aren't rounded).
+		 */
+		public Builder targetSizeStep(int targetSizeStep) {
+			this.targetSizeStep = targetSizeStep;
+			return this;
+		}
+
 		/**
 		 * Sets options for resizing/compressing of downloaded images before saving to disc cache.<br />
 		 * <b>NOTE: Use this option only when you have appropriate needs. It can make ImageLoader slower.</b>
@@ -184,7 +231,36 @@ public final class ImageLoaderConfiguration {
 		}
 
 		/**
-		 * Sets thread pool size for image display tasks.<br />
+		 * Allows disc cache to keep reduced copies (derivatives) of cached images for sizes from incoming buckets. When
+		 * image is decoded from disc cache for target size then the smallest stored derivative which is large enough
+		 * for this size is decoded instead of original image. Missing derivative is created from original image on
+		 * first decoding for size of its bucket. So the same image shown in small and in large views is decoded from
+		 * small file for small views.<br />
+		 * Derivative of bucket is reduced so that its smaller side is equal to bucket size. Target size larger than
+		 * all buckets is decoded from original image. Derivatives take space of disc cache.
+		 *
+		 * @param compressFormat {@link android.graphics.Bitmap.CompressFormat Compress format} of derivatives
+		 * @param compressQuality Hint to the compressor, 0-100. 0 meaning compress for small size, 100 meaning compress
+		 *            for max quality. Some formats, like PNG which is lossless, will ignore the quality setting
+		 * @param bucketSizes Sizes of buckets (in pixels), e.g. sizes of icons in lists and on detail pages
+		 */
+		public Builder discCacheDerivatives(CompressFormat compressFormat, int compressQuality, int... bucketSizes) {
+			if (bucketSizes.length == 0) throw new IllegalArgumentException("bucketSizes must not be empty");
+			for (int bucketSize : bucketSizes) {
+				if (bucketSize <= 0) throw new IllegalArgumentException("bucketSizes must be positive numbers");
+			}
+
+			this.discCacheDerivatives = new DiscCacheDerivatives(bucketSizes, compressFormat, compressQuality);
+			return this;
+		}
+
+		/**
+		 * Sets thread pool size of network stage. Tasks of network stage download images (into disc cache or in memory
+		 * if image isn't {@linkplain DisplayImageOptions.Builder#cacheOnDisc() cached on disc}) and hand them off to
+		 * {@linkplain #decodingThreadPoolSize(int) decoding stage}, so these threads mostly wait for network and pool can
+		 * be larger than number of CPU cores. Expired images of
+		 * {@linkplain cm.aptoide.com.nostra13.universalimageloader.cache.disc.RevalidationAware revalidating} disc cache
+		 * are revalidated by network stage too.<br />
 		 * Default value - {@link #DEFAULT_THREAD_POOL_SIZE this}
 		 * */
 		public Builder threadPoolSize(int threadPoolSize) {
@@ -192,6 +268,31 @@ public final class ImageLoaderConfiguration {
 			return this;
 		}
 
+		/**
+		 * Sets thread pool size of decoding stage. Decoding stage decodes images cached on disc and images downloaded by
+		 * network stage. Decoding is CPU-bound, so pool shouldn't be larger than number of CPU cores.<br />
+		 * Default value - number of CPU cores
+		 */
+		public Builder decodingThreadPoolSize(int decodingThreadPoolSize) {
+			if (decodingThreadPoolSize <= 0) throw new IllegalArgumentException("decodingThreadPoolSize must be a positive number");
+
+			this.decodingThreadPoolSize = decodingThreadPoolSize;
+			return this;
+		}
+
+		/**
+		 * Sets max number of downloaded images which are handed off by network stage to decoding stage and aren't decoded
+		 * yet. When this number is reached network stage waits for decoding (so downloaded images don't pile up while
+		 * decoding can't keep up).<br />
+		 * Default value - twice as {@linkplain #decodingThreadPoolSize(int) decoding thread pool size}
+		 */
+		public Builder decodingQueueCapacity(int decodingQueueCapacity) {
+			if (decodingQueueCapacity <= 0) throw new IllegalArgumentException("decodingQueueCapacity must be a positive number");
+
+			this.decodingQueueCapacity = decodingQueueCapacity;
+			return this;
+		}
+
 		/**
 		 * Sets the priority for image loading threads. Must be <b>NOT</b> greater than {@link Thread#MAX_PRIORITY} or
 		 * less than {@link Thread#MIN_PRIORITY}<br />
@@ -224,13 +325,26 @@ public final class ImageLoaderConfiguration {
 		}
 
 		/**
-		 * ImageLoader try clean memory and re-display image it self when {@link OutOfMemoryError} occurs. You can
-		 * switch off this feature by this method and process error by your way (you can know that
-		 * {@link OutOfMemoryError} occurred if you got {@link FailReason#OUT_OF_MEMORY} in
-		 * {@link ImageLoadingListener#onLoadingFailed(FailReason)}).
+		 * @deprecated {@link OutOfMemoryError} isn't handled by ImageLoader anymore: decodings are admitted by
+		 *             {@linkplain #decodingMemoryBudget(long) decoding memory budget} and loading fails with
+		 *             {@link FailReason#OUT_OF_MEMORY} if memory is still exhausted. This method does nothing.
 		 */
+		@Deprecated
 		public Builder offOutOfMemoryHandling() {
-			this.handleOutOfMemory = false;
+			return this;
+		}
+
+		/**
+		 * Sets max summary size (in bytes) of bitmaps which can be decoded at the same time. Size of every bitmap is
+		 * predicted before decoding (by image bounds, sample size and bitmap config) and decoding waits while it doesn't
+		 * fit into this budget. Decoding of bitmap which is larger than the whole budget is started when no other
+		 * decoding is in progress.<br />
+		 * Default value - 1/4 of {@linkplain Runtime#maxMemory() max heap size}
+		 */
+		public Builder decodingMemoryBudget(long decodingMemoryBudget) {
+			if (decodingMemoryBudget <= 0) throw new IllegalArgumentException("decodingMemoryBudget must be positive");
+
+			this.decodingMemoryBudget = decodingMemoryBudget;
 			return this;
 		}
 
@@ -243,11 +357,21 @@ public final class ImageLoaderConfiguration {
 			return this;
 		}
 
+		/**
+		 * Allows tasks to display images which are cached in memory or on disc while {@linkplain ImageLoader#pause()
+		 * ImageLoader is paused}. Only tasks which need to download image from network will wait for
+		 * {@linkplain ImageLoader#resume() resume}.
+		 */
+		public Builder loadCachedImagesWhilePaused() {
+			this.loadCachedImagesWhilePaused = true;
+			return this;
+		}
+
 		/**
 		 * Sets maximum memory cache size for {@link android.graphics.Bitmap bitmaps} (in bytes).<br />
 		 * Default value - {@link #DEFAULT_MEMORY_CACHE_SIZE this}<br />
 		 * <b>NOTE:</b> If you use this method then
-		 * {@link cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl.UsingFreqLimitedMemoryCache UsingFreqLimitedCache}
+		 * {@link cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl.LFULimitedMemoryCache LFULimitedMemoryCache}
 		 * will be used as memory cache. You can use {@link #memoryCache(MemoryCacheAware)} method for introduction your
 		 * own implementation of {@link MemoryCacheAware}.
 		 */
@@ -261,8 +385,8 @@ public final class ImageLoaderConfiguration {
 
 		/**
 		 * Sets memory cache for {@link android.graphics.Bitmap bitmaps}.<br />
-		 * Default value - {@link cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl.UsingFreqLimitedMemoryCache
-		 * UsingFreqLimitedCache} with limited memory cache size (size = {@link #DEFAULT_MEMORY_CACHE_SIZE this})<br />
+		 * Default value - {@link cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl.LFULimitedMemoryCache
+		 * LFULimitedMemoryCache} with limited memory cache size (size = {@link #DEFAULT_MEMORY_CACHE_SIZE this})<br />
 		 * <b>NOTE:</b> You can use {@link #memoryCacheSize(int)} method instead of this method to simplify memory cache
 		 * tuning.
 		 */
@@ -273,6 +397,19 @@ public final class ImageLoaderConfiguration {
 			return this;
 		}
 
+		/**
+		 * Sets pool of bitmaps which will be reused for image decoding (if
+		 * {@linkplain DisplayImageOptions.Builder#reuseBitmaps() display options allow it}).<br />
+		 * Pool receives bitmaps evicted from memory cache if memory cache is {@link LimitedMemoryCache} (default memory
+		 * cache is). Default value - none (bitmaps aren't reused).<br />
+		 * <b>NOTE:</b> Use it only if evicted bitmaps aren't displayed anymore (memory cache is large enough to keep
+		 * all visible images) because pooled bitmaps are overwritten by new images.
+		 */
+		public Builder bitmapPool(BitmapPool bitmapPool) {
+			this.bitmapPool = bitmapPool;
+			return this;
+		}
+
 		/**
 		 * Sets maximum disc cache size for images (in bytes).<br />
 		 * By default: disc cache is unlimited.<br />
@@ -325,7 +462,11 @@ public final class ImageLoaderConfiguration {
 		 * Sets utility which will be responsible for downloading of image.<br />
 		 * Default value -
 		 * {@link cm.aptoide.com.nostra13.universalimageloader.core.DefaultConfigurationFactory#createImageDownloader()
-		 * DefaultConfigurationFactory.createImageDownloader()}
+		 * DefaultConfigurationFactory.createImageDownloader()}<br />
+		 * {@link cm.aptoide.com.nostra13.universalimageloader.core.download.StreamingHttpClientImageDownloader
+		 * StreamingHttpClientImageDownloader} can be used to reuse HTTP connections. Its pool size should be equal to
+		 * {@linkplain #threadPoolSize(int) thread pool size} + {@linkplain #decodingThreadPoolSize(int) decoding thread
+		 * pool size} + 1 (prefetching thread), because all of them can download images.
 		 * */
 		public Builder imageDownloader(ImageDownloader imageDownloader) {
 			this.downloader = imageDownloader;
@@ -379,11 +520,24 @@ public final class ImageLoaderConfiguration {
 				discCache = DefaultConfigurationFactory.createDiscCache(context, discCacheFileNameGenerator, discCacheSize, discCacheFileCount);
 			}
 			if (memoryCache == null) {
-				memoryCache = DefaultConfigurationFactory.createMemoryCache(memoryCacheSize, denyCacheImageMultipleSizesInMemory);
+				memoryCache = DefaultConfigurationFactory.createMemoryCache(memoryCacheSize, denyCacheImageMultipleSizesInMemory, bitmapPool);
+			} else if (bitmapPool != null && memoryCache instanceof LimitedMemoryCache) {
+				@SuppressWarnings("unchecked")
+				LimitedMemoryCache<String, Bitmap> limitedMemoryCache = (LimitedMemoryCache<String, Bitmap>) memoryCache;
+				limitedMemoryCache.setEvictionListener(bitmapPool);
 			}
 			if (downloader == null) {
 				downloader = DefaultConfigurationFactory.createImageDownloader();
 			}
+			if (decodingThreadPoolSize == 0) {
+				decodingThreadPoolSize = Runtime.getRuntime().availableProcessors();
+			}
+			if (decodingQueueCapacity == 0) {
+				decodingQueueCapacity = 2 * decodingThreadPoolSize;
+			}
+			if (decodingMemoryGovernor == null) {
+				decodingMemoryGovernor = DefaultConfigurationFactory.createDecodingMemoryGovernor(decodingMemoryBudget);
+			}
 			if (defaultDisplayImageOptions == null) {
 				defaultDisplayImageOptions = DisplayImageOptions.createSimple();
 			}
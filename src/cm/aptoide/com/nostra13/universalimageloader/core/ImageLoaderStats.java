@@ -0,0 +1,155 @@
+package cm.aptoide.com.nostra13.universalimageloader.core;
+
+/**
+ * Snapshot of {@link ImageLoader} statistics. Counters are accumulated since ImageLoader was created; different
+ * counters aren't updated atomically, so they can be slightly inconsistent with each other.
+ *
+ * @see ImageLoader#getStats()
+ */
+public final class ImageLoaderStats {
+
+	long memoryCacheHits;
+	long memoryCacheMisses;
+	long discCacheHits;
+	long discCacheMisses;
+	long downloadedBytes;
+	long decodedBytes;
+	LatencyHistogram downloadLatency;
+	LatencyHistogram decodeLatency;
+	long cancelledTaskCount;
+	long staleTaskCount;
+	int networkQueueDepth;
+	int networkActiveCount;
+	int decodingQueueDepth;
+	int decodingActiveCount;
+	int pendingDecodingCount;
+	long handOffCount;
+	long backpressureWaitCount;
+	long backpressureWaitMillis;
+	int prefetchQueueDepth;
+	int pausedTaskCount;
+
+	ImageLoaderStats() {
+	}
+
+	/** Returns number of display/load requests which were served from memory cache */
+	public long getMemoryCacheHits() {
+		return memoryCacheHits;
+	}
+
+	/** Returns number of display/load requests which weren't found in memory cache */
+	public long getMemoryCacheMisses() {
+		return memoryCacheMisses;
+	}
+
+	/** Returns part of requests which were served from memory cache (from 0 to 1) */
+	public float getMemoryCacheHitRatio() {
+		return ratio(memoryCacheHits, memoryCacheMisses);
+	}
+
+	/** Returns number of images which were decoded from disc cache (fresh or successfully revalidated) */
+	public long getDiscCacheHits() {
+		return discCacheHits;
+	}
+
+	/** Returns number of images which were loaded by downloader because they weren't found in disc cache */
+	public long getDiscCacheMisses() {
+		return discCacheMisses;
+	}
+
+	/** Returns part of loadings which were served from disc cache (from 0 to 1) */
+	public float getDiscCacheHitRatio() {
+		return ratio(discCacheHits, discCacheMisses);
+	}
+
+	/** Returns number of bytes which were read from network streams of images */
+	public long getDownloadedBytes() {
+		return downloadedBytes;
+	}
+
+	/** Returns summary size (in bytes) of decoded bitmaps */
+	public long getDecodedBytes() {
+		return decodedBytes;
+	}
+
+	/** Returns histogram of downloading time (from request sending to closing of network stream) */
+	public LatencyHistogram getDownloadLatency() {
+		return downloadLatency;
+	}
+
+	/** Returns histogram of decoding time */
+	public LatencyHistogram getDecodeLatency() {
+		return decodeLatency;
+	}
+
+	/** Returns number of cancelled tasks including {@linkplain #getStaleTaskCount() stale tasks} */
+	public long getCancelledTaskCount() {
+		return cancelledTaskCount;
+	}
+
+	/** Returns number of tasks which were cancelled because their ImageView was reused for another image */
+	public long getStaleTaskCount() {
+		return staleTaskCount;
+	}
+
+	/** Returns number of tasks (including cancelled ones) which wait in queue of network stage */
+	public int getNetworkQueueDepth() {
+		return networkQueueDepth;
+	}
+
+	/** Returns number of threads of network stage which execute tasks at this moment */
+	public int getNetworkActiveCount() {
+		return networkActiveCount;
+	}
+
+	/**
+	 * Returns number of tasks which wait in queue of decoding stage: tasks for images cached on disc (including
+	 * cancelled ones) and images handed off by network stage
+	 */
+	public int getDecodingQueueDepth() {
+		return decodingQueueDepth;
+	}
+
+	/** Returns number of threads of decoding stage which execute tasks at this moment */
+	public int getDecodingActiveCount() {
+		return decodingActiveCount;
+	}
+
+	/** Returns number of images which were handed off by network stage and aren't decoded yet */
+	public int getPendingDecodingCount() {
+		return pendingDecodingCount;
+	}
+
+	/** Returns number of downloaded images which were handed off by network stage to decoding stage */
+	public long getHandOffCount() {
+		return handOffCount;
+	}
+
+	/**
+	 * Returns number of hand-offs which waited for free slot of decoding stage (network stage was slowed down by
+	 * decoding)
+	 */
+	public long getBackpressureWaitCount() {
+		return backpressureWaitCount;
+	}
+
+	/** Returns summary time (in milliseconds) which network stage waited for free slots of decoding stage */
+	public long getBackpressureWaitMillis() {
+		return backpressureWaitMillis;
+	}
+
+	/** Returns number of tasks (including cancelled ones) which wait in queue of prefetch lane */
+	public int getPrefetchQueueDepth() {
+		return prefetchQueueDepth;
+	}
+
+	/** Returns number of tasks which were put aside while ImageLoader is paused */
+	public int getPausedTaskCount() {
+		return pausedTaskCount;
+	}
+
+	private static float ratio(long hits, long misses) {
+		long total = hits + misses;
+		return total == 0 ? 0 : (float) hits / total;
+	}
+}
@@ -1,16 +1,18 @@
 package cm.aptoide.com.nostra13.universalimageloader.core;
 
-import java.util.concurrent.locks.ReentrantLock;
-
 import android.net.Uri;
 import android.widget.ImageView;
 
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageLoadingListener;
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageSize;
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.MemoryCacheUtil;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.PrefetchTarget;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.ViewScaleType;
 
 /**
- * Information for load'n'display image task
+ * Information for load'n'display image task. Task of {@link ImageLoader#loadImage(android.content.Context, String,
+ * ImageLoadingListener) loading} or {@link ImageLoader#prefetch(java.util.Collection, ImageSize, PrefetchTarget)
+ * prefetching} of image has no {@link ImageView}.
  * 
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see MemoryCacheUtil
@@ -22,20 +24,59 @@ final class ImageLoadingInfo {
 	final String uri;
 	final String cacheString;
 	final String memoryCacheKey;
+	/** Target view or <b>null</b> if image isn't displayed */
 	final ImageView imageView;
 	final ImageSize targetSize;
+	final ViewScaleType viewScaleType;
 	final DisplayImageOptions options;
 	final ImageLoadingListener listener;
-	final ReentrantLock loadFromUriLock;
+	final ViewRequestHolder viewHolder;
+	/** Token of view's request which this info belongs to */
+	final int requestToken;
+	/** Target of prefetching or <b>null</b> if image is requested for using */
+	final PrefetchTarget prefetchTarget;
 
-	public ImageLoadingInfo(String uri, ImageView imageView, ImageSize targetSize, DisplayImageOptions options, ImageLoadingListener listener, ReentrantLock loadFromUriLock, String cacheString) {
+	public ImageLoadingInfo(String uri, String memoryCacheKey, ImageView imageView, ImageSize targetSize, DisplayImageOptions options, ImageLoadingListener listener, String cacheString, ViewRequestHolder viewHolder) {
 		this.uri = Uri.encode(uri, "@#&=*+-_.,:!?()/~'%");
 		this.imageView = imageView;
 		this.targetSize = targetSize;
+		viewScaleType = ViewScaleType.fromImageView(imageView);
 		this.options = options;
 		this.listener = listener;
-		this.loadFromUriLock = loadFromUriLock;
 		this.cacheString=cacheString;
-		memoryCacheKey = MemoryCacheUtil.generateKey(uri, targetSize);
+		this.memoryCacheKey = memoryCacheKey;
+		this.viewHolder = viewHolder;
+		requestToken = viewHolder.requestToken;
+		prefetchTarget = null;
+	}
+
+	/**
+	 * Info for image which isn't displayed in view
+	 *
+	 * @param viewScaleType Scale type of view which image is decoded for
+	 * @param prefetchTarget Target of prefetching or <b>null</b> if image is loaded for listener
+	 */
+	public ImageLoadingInfo(String uri, String memoryCacheKey, ImageSize targetSize, ViewScaleType viewScaleType, DisplayImageOptions options, ImageLoadingListener listener, PrefetchTarget prefetchTarget) {
+		this.uri = Uri.encode(uri, "@#&=*+-_.,:!?()/~'%");
+		this.targetSize = targetSize;
+		this.options = options;
+		this.listener = listener;
+		this.memoryCacheKey = memoryCacheKey;
+		this.prefetchTarget = prefetchTarget;
+		cacheString = uri;
+		imageView = null;
+		this.viewScaleType = viewScaleType;
+		viewHolder = null;
+		requestToken = 0;
+	}
+
+	/** Returns <b>true</b> if ImageView was reused for another request (or its request was cancelled) */
+	boolean isViewReused() {
+		return viewHolder != null && viewHolder.requestToken != requestToken;
+	}
+
+	/** Returns <b>true</b> if image is prefetched */
+	boolean isPrefetch() {
+		return prefetchTarget != null;
 	}
 }
@@ -0,0 +1,143 @@
+package cm.aptoide.com.nostra13.universalimageloader.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import android.graphics.Bitmap;
+
+import cm.aptoide.com.nostra13.universalimageloader.cache.disc.BaseDiscCache;
+import cm.aptoide.com.nostra13.universalimageloader.cache.disc.DiscCacheAware;
+import cm.aptoide.com.nostra13.universalimageloader.cache.disc.DiscEntryLocks;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.FailReason;
+
+/**
+ * Registry of image loadings which are in progress at this moment. Loadings are keyed by memory cache key (image URI +
+ * target size). First task for some key becomes owner of loading and does downloading and decoding, next tasks for the
+ * same key are subscribed to this loading and receive its result without holding of thread.<br />
+ * Loadings of the same image for different target sizes share one file in disc cache, so downloading and writing of
+ * disc cache entry is {@linkplain #lockDiscEntry(DiscCacheAware, String) serialized} by disc cache key. Task which
+ * waited for entry finds image in disc cache and doesn't download it again. Entries of {@link BaseDiscCache} are
+ * locked by disc cache itself, so it doesn't delete file which is written at this moment.
+ *
+ * @see LoadAndDisplayImageTask
+ */
+final class InFlightRegistry {
+
+	private final ConcurrentHashMap<String, InFlightLoading> loadings = new ConcurrentHashMap<String, InFlightLoading>();
+	/** Locks of entries of disc caches which don't lock entries themselves */
+	private final DiscEntryLocks discEntryLocks = new DiscEntryLocks();
+
+	/**
+	 * Subscribes task to loading of image with the same key if such loading is in progress. Otherwise registers new
+	 * loading and makes task its owner.
+	 *
+	 * @return <b>true</b> - if task was subscribed to existing loading (task will receive result through
+	 *         {@link LoadAndDisplayImageTask#onSharedLoadingComplete(Bitmap)} or
+	 *         {@link LoadAndDisplayImageTask#onSharedLoadingFailed(FailReason)}); <b>false</b> - if task became owner of
+	 *         new loading and must call {@link #complete(String, Bitmap, FailReason)} after loading.
+	 */
+	boolean subscribeOrOwn(String key, LoadAndDisplayImageTask task) {
+		InFlightLoading newLoading = new InFlightLoading();
+		while (true) {
+			InFlightLoading loading = loadings.putIfAbsent(key, newLoading);
+			if (loading == null) {
+				return false;
+			}
+			if (loading.subscribe(task)) {
+				return true;
+			}
+			// Loading was completed concurrently, so it's going to be removed. Try again.
+			loadings.remove(key, loading);
+		}
+	}
+
+	/**
+	 * Completes loading which is owned by caller and delivers result to all subscribed tasks.
+	 *
+	 * @param bitmap Loaded bitmap or <b>null</b> if loading failed
+	 * @param failReason Reason of fail (if loading failed)
+	 */
+	void complete(String key, Bitmap bitmap, FailReason failReason) {
+		InFlightLoading loading = loadings.remove(key);
+		if (loading == null) return;
+
+		List<LoadAndDisplayImageTask> subscribers = loading.complete();
+		for (LoadAndDisplayImageTask subscriber : subscribers) {
+			if (bitmap != null) {
+				subscriber.onSharedLoadingComplete(bitmap);
+			} else {
+				subscriber.onSharedLoadingFailed(failReason == null ? FailReason.UNKNOWN : failReason);
+			}
+		}
+	}
+
+	/**
+	 * Removes loading which is owned by caller if no task is subscribed to it. Tasks which come later register new
+	 * loading. Owner mustn't call {@link #complete(String, Bitmap, FailReason)} after loading was abandoned.
+	 *
+	 * @return <b>true</b> - if loading was abandoned; <b>false</b> - if subscribed tasks wait for result of loading
+	 */
+	boolean abandon(String key) {
+		InFlightLoading loading = loadings.get(key);
+		if (loading == null) return true;
+		if (!loading.abandon()) return false;
+
+		loadings.remove(key, loading);
+		return true;
+	}
+
+	/**
+	 * Waits until disc cache entry isn't written by another thread and locks it for writing. Lock must be released by
+	 * {@link #unlockDiscEntry(DiscCacheAware, String)} in the same thread.
+	 */
+	void lockDiscEntry(DiscCacheAware discCache, String discCacheKey) {
+		if (discCache instanceof BaseDiscCache) {
+			((BaseDiscCache) discCache).lockEntry(discCacheKey);
+		} else {
+			discEntryLocks.lock(discCacheKey);
+		}
+	}
+
+	/** Releases lock of disc cache entry which was taken by {@link #lockDiscEntry(DiscCacheAware, String)} */
+	void unlockDiscEntry(DiscCacheAware discCache, String discCacheKey) {
+		if (discCache instanceof BaseDiscCache) {
+			((BaseDiscCache) discCache).unlockEntry(discCacheKey);
+		} else {
+			discEntryLocks.unlock(discCacheKey);
+		}
+	}
+
+	/** Loading which is in progress and its subscribers */
+	private static final class InFlightLoading {
+
+		private List<LoadAndDisplayImageTask> subscribers;
+		private boolean completed;
+
+		synchronized boolean subscribe(LoadAndDisplayImageTask task) {
+			if (completed) return false;
+
+			if (subscribers == null) {
+				subscribers = new ArrayList<LoadAndDisplayImageTask>(2);
+			}
+			subscribers.add(task);
+			return true;
+		}
+
+		synchronized boolean abandon() {
+			if (subscribers != null) return false;
+
+			completed = true;
+			return true;
+		}
+
+		synchronized List<LoadAndDisplayImageTask> complete() {
+			completed = true;
+			if (subscribers == null) {
+				return Collections.emptyList();
+			}
+			return subscribers;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package cm.aptoide.com.nostra13.universalimageloader.core;
+
+/**
+ * Snapshot of latency histogram. Histogram has fixed buckets with power-of-2 bounds (in milliseconds): [0, 1), [1, 2),
+ * [2, 4), [4, 8), ..., [8192, &infin;).
+ *
+ * @see ImageLoaderStats
+ */
+public final class LatencyHistogram {
+
+	/** Number of histogram buckets */
+	public static final int BUCKET_COUNT = 15;
+
+	private final long[] counts;
+	private final long totalMillis;
+
+	LatencyHistogram(long[] counts, long totalMillis) {
+		this.counts = counts;
+		this.totalMillis = totalMillis;
+	}
+
+	/** Returns index of bucket for incoming latency (in milliseconds) */
+	static int getBucketIndex(long millis) {
+		if (millis <= 0) return 0;
+		return Math.min(64 - Long.numberOfLeadingZeros(millis), BUCKET_COUNT - 1);
+	}
+
+	/** Returns upper bound (exclusive, in milliseconds) of bucket. The last bucket is unbounded ({@link Long#MAX_VALUE}). */
+	public static long getBucketUpperBound(int bucket) {
+		return bucket < BUCKET_COUNT - 1 ? 1L << bucket : Long.MAX_VALUE;
+	}
+
+	/** Returns number of measurements in bucket */
+	public long getCount(int bucket) {
+		return counts[bucket];
+	}
+
+	/** Returns number of all measurements */
+	public long getTotalCount() {
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		return total;
+	}
+
+	/** Returns mean latency (in milliseconds) or 0 if there are no measurements */
+	public long getMeanMillis() {
+		long total = getTotalCount();
+		return total == 0 ? 0 : totalMillis / total;
+	}
+
+	/**
+	 * Returns upper bound of bucket which contains incoming percentile of measurements (i.e. 0.95f for 95th percentile)
+	 * or 0 if there are no measurements
+	 */
+	public long getPercentileMillis(float percentile) {
+		long total = getTotalCount();
+		if (total == 0) return 0;
+
+		long threshold = (long) Math.ceil(total * percentile);
+		long count = 0;
+		for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+			count += counts[bucket];
+			if (count >= threshold) {
+				return getBucketUpperBound(bucket);
+			}
+		}
+		return getBucketUpperBound(BUCKET_COUNT - 1);
+	}
+}
@@ -1,27 +1,41 @@
 package cm.aptoide.com.nostra13.universalimageloader.core;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
+import android.graphics.BitmapFactory;
 import android.os.Handler;
-import android.os.SystemClock;
 import android.widget.ImageView;
 
+import cm.aptoide.com.nostra13.universalimageloader.cache.disc.BaseDiscCache;
 import cm.aptoide.com.nostra13.universalimageloader.cache.disc.DiscCacheAware;
+import cm.aptoide.com.nostra13.universalimageloader.cache.disc.PackedImageAware;
+import cm.aptoide.com.nostra13.universalimageloader.cache.disc.RevalidationAware;
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.FailReason;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageLoadingHandle;
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageLoadingListener;
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageScaleType;
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageSize;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.PartialFile;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.PrefetchTarget;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.TeeInputStream;
 import cm.aptoide.com.nostra13.universalimageloader.core.assist.ViewScaleType;
+import cm.aptoide.com.nostra13.universalimageloader.core.download.CacheValidators;
+import cm.aptoide.com.nostra13.universalimageloader.core.download.ContentRange;
 import cm.aptoide.com.nostra13.universalimageloader.core.download.ImageDownloader;
 import cm.aptoide.com.nostra13.universalimageloader.utils.FileUtils;
 import cm.aptoide.com.nostra13.universalimageloader.utils.L;
@@ -29,33 +43,52 @@ import cm.aptoide.com.nostra13.universalimageloader.utils.L;
 
 /**
  * Presents load'n'display image task. Used to load image from Internet or file system, decode it to {@link Bitmap}, and
- * display it in {@link ImageView} through {@link DisplayBitmapTask}.
+ * display it in {@link ImageView} through {@link DisplayBitmapTask}. Task without ImageView delivers bitmap to listener
+ * only; prefetching task just puts image into caches.<br />
+ * Task of network stage loads image into disc cache (or in memory if image isn't cached on disc) and hands off decoding
+ * to decoding stage through {@link DecodingStageTask}. Task of decoding stage (image is cached on disc) loads image on
+ * its own thread, it's moved to network stage if cached image turns out to be expired.
  * 
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see ImageLoaderConfiguration
  * @see ImageLoadingInfo
  */
-final class LoadAndDisplayImageTask implements Runnable {
+final class LoadAndDisplayImageTask implements Runnable, ImageLoadingHandle {
 
-	private static final String LOG_WAITING_FOR_RESUME = "ImageLoader is paused. Waiting...  [%s]";
-	private static final String LOG_RESUME_AFTER_PAUSE = ".. Resume loading [%s]";
+	private static final String LOG_WAITING_FOR_RESUME = "ImageLoader is paused. Task is put aside until resume. [%s]";
+	private static final String LOG_PREFETCH_IMAGE_ON_DISC = "Prefetch image on disc [%s]";
+	private static final String LOG_PREFETCH_PREEMPTED = "Visible request was submitted. Prefetching is put back to queue. [%s]";
 	private static final String LOG_DELAY_BEFORE_LOADING = "Delay %d ms before loading...  [%s]";
 	private static final String LOG_START_DISPLAY_IMAGE_TASK = "Start display image task [%s]";
-	private static final String LOG_WAITING_FOR_IMAGE_LOADED = "Image already is loading. Waiting... [%s]";
-	private static final String LOG_GET_IMAGE_FROM_MEMORY_CACHE_AFTER_WAITING = "...Get cached bitmap from memory after waiting. [%s]";
+	private static final String LOG_WAITING_FOR_IMAGE_LOADED = "Image already is loading. Task is subscribed to loading. [%s]";
+	private static final String LOG_GET_IMAGE_FROM_MEMORY_CACHE_AFTER_WAITING = "...Get bitmap which was loaded by another task. [%s]";
 	private static final String LOG_LOAD_IMAGE_FROM_INTERNET = "Load image from Internet [%s]";
 	private static final String LOG_LOAD_IMAGE_FROM_DISC_CACHE = "Load image from disc cache [%s]";
+	private static final String LOG_LOAD_DERIVATIVE_FROM_DISC_CACHE = "Load %1$dpx derivative of image from disc cache [%2$s]";
+	private static final String LOG_CREATE_DERIVATIVE_ON_DISC = "Create %1$dpx derivative of image on disc [%2$s]";
+	private static final String LOG_REVALIDATE_IMAGE = "Cached image is expired. Revalidate it. [%s]";
+	private static final String LOG_IMAGE_NOT_MODIFIED = "Cached image wasn't modified [%s]";
+	private static final String LOG_RESUME_DOWNLOADING = "Resume downloading from byte %1$d [%2$s]";
 	private static final String LOG_CACHE_IMAGE_IN_MEMORY = "Cache image in memory [%s]";
 	private static final String LOG_CACHE_IMAGE_ON_DISC = "Cache image on disc [%s]";
+	private static final String LOG_HAND_OFF_DECODING = "Image is loaded on disc. Decoding is handed off to decoding stage. [%s]";
+	private static final String LOG_HAND_OFF_DECODING_FROM_MEMORY = "Image is loaded in memory. Decoding is handed off to decoding stage. [%s]";
+	private static final String LOG_MOVE_TO_NETWORK_STAGE = "Image isn't fresh in disc cache. Task is moved to network stage. [%s]";
 	private static final String LOG_TASK_CANCELLED = "ImageView is reused for another image. Task is cancelled. [%s]";
 	private static final String LOG_TASK_INTERRUPTED = "Task was interrupted [%s]";
 
-	private static final int ATTEMPT_COUNT_TO_DECODE_BITMAP = 3;
+	private static final int STATE_ACTIVE = 0;
+	private static final int STATE_FINISHED = 1;
+	private static final int STATE_CANCELLED = 2;
+
+	private static final AtomicLong requestCounter = new AtomicLong();
+
 	private static final int BUFFER_SIZE = 8 * 1024; // 8 Kb
 
 	private final ImageLoaderConfiguration configuration;
 	private final ImageLoadingInfo imageLoadingInfo;
 	private final Handler handler;
+	private final StatsRecorder stats;
 
 	// Helper references
 	private final ImageDownloader downloader;
@@ -68,11 +101,24 @@ final class LoadAndDisplayImageTask implements Runnable {
 	private final DisplayImageOptions options;
 	private final ImageLoadingListener listener;
 
+	/** Reason of loading fail (is set if loading was failed) */
+	private FailReason failReason;
+
+	private final AtomicInteger state = new AtomicInteger(STATE_ACTIVE);
+	private final long requestOrder = requestCounter.incrementAndGet();
+	/** Whether task is executed by network stage */
+	private volatile boolean networkStage;
+	/** Turn of prefetching which was given by ImageLoader. Is used by task thread only. */
+	private long prefetchTurn;
+	/** Whether downloading of prefetched image was preempted by visible request. Is used by task thread only. */
+	private boolean preempted;
+
 	public LoadAndDisplayImageTask(ImageLoaderConfiguration configuration, ImageLoadingInfo imageLoadingInfo, Handler handler) {
 		this.configuration = configuration;
 		this.imageLoadingInfo = imageLoadingInfo;
 		this.handler = handler;
 
+		stats = ImageLoader.getInstance().getStatsRecorder();
 		downloader = configuration.downloader;
 		loggingEnabled = configuration.loggingEnabled;
 		uri = imageLoadingInfo.uri;
@@ -86,20 +132,45 @@ final class LoadAndDisplayImageTask implements Runnable {
 
 	@Override
 	public void run() {
-		AtomicBoolean pause = ImageLoader.getInstance().getPause();
-		if (pause.get()) {
-			synchronized (pause) {
-				if (loggingEnabled) L.i(LOG_WAITING_FOR_RESUME, memoryCacheKey);
-				try {
-					pause.wait();
-				} catch (InterruptedException e) {
-					L.e(LOG_TASK_INTERRUPTED, memoryCacheKey);
-					return;
-				}
-				if (loggingEnabled) L.i(LOG_RESUME_AFTER_PAUSE, memoryCacheKey);
+		if (isCancelled()) return;
+
+		boolean resultPending = false;
+		try {
+			resultPending = loadAndPostBitmap();
+		} finally {
+			if (!resultPending) {
+				finish();
 			}
 		}
-		if (checkTaskIsNotActual()) return;
+	}
+
+	/**
+	 * @return <b>true</b> - if result of task will be delivered later (bitmap is posted for displaying, task is
+	 *         subscribed to loading of another task or preempted prefetching is put back to queue); <b>false</b> - if
+	 *         task is finished
+	 */
+	private boolean loadAndPostBitmap() {
+		ImageLoader imageLoader = ImageLoader.getInstance();
+		if (imageLoadingInfo.isPrefetch()) {
+			// Prefetching doesn't take resources from visible requests
+			prefetchTurn = imageLoader.waitForPrefetchTurn();
+			if (prefetchTurn < 0) {
+				L.e(LOG_TASK_INTERRUPTED, memoryCacheKey);
+				return false;
+			}
+			preempted = false;
+		} else if (imageLoader.isPaused() && !canRunWhilePaused() && imageLoader.parkTaskIfPaused(this)) {
+			// Task will be submitted again on resume
+			if (loggingEnabled) L.i(LOG_WAITING_FOR_RESUME, memoryCacheKey);
+			return true;
+		}
+		if (checkTaskIsNotActual()) return false;
+
+		if (!networkStage && !imageLoadingInfo.isPrefetch() && !isFreshOnDisc(configuration.discCache.get(cacheString))) {
+			// Cached image is expired (it must be revalidated) or was removed, so network doesn't block decoding stage
+			if (loggingEnabled) L.i(LOG_MOVE_TO_NETWORK_STAGE, memoryCacheKey);
+			return imageLoader.moveToNetworkStage(this);
+		}
 
 		if (options.isDelayBeforeLoading()) {
 			if (loggingEnabled) L.i(LOG_DELAY_BEFORE_LOADING, options.getDelayBeforeLoading(), memoryCacheKey);
@@ -107,69 +178,233 @@ final class LoadAndDisplayImageTask implements Runnable {
 				Thread.sleep(options.getDelayBeforeLoading());
 			} catch (InterruptedException e) {
 				L.e(LOG_TASK_INTERRUPTED, memoryCacheKey);
-				return;
+				return false;
 			}
 
-			if (checkTaskIsNotActual()) return;
+			if (checkTaskIsNotActual()) return false;
 		}
 
-		ReentrantLock loadFromUriLock = imageLoadingInfo.loadFromUriLock;
-		if (loggingEnabled) {
-			L.i(LOG_START_DISPLAY_IMAGE_TASK, memoryCacheKey);
-			if (loadFromUriLock.isLocked()) {
-				L.i(LOG_WAITING_FOR_IMAGE_LOADED, memoryCacheKey);
-			}
+		if (imageLoadingInfo.prefetchTarget == PrefetchTarget.DISC) {
+			prefetchImageOnDisc();
+			return preempted && requeuePreemptedPrefetch();
 		}
 
-		loadFromUriLock.lock();
-		Bitmap bmp;
-		try {
-			if (checkTaskIsNotActual()) return;
-			
-			bmp = ImageLoader.getInstance().getMemoryCache().get(memoryCacheKey);
-			if (bmp == null) {
-				bmp = tryLoadBitmap();
-				if (bmp == null) return;
-
-				if (checkTaskIsNotActual() || checkTaskIsInterrupted()) return;
+		if (loggingEnabled) L.i(LOG_START_DISPLAY_IMAGE_TASK, memoryCacheKey);
 
-				if (options.isCacheInMemory()) {
-					if (loggingEnabled) L.i(LOG_CACHE_IMAGE_IN_MEMORY, memoryCacheKey);
+		Bitmap bmp = configuration.memoryCache.get(memoryCacheKey);
+		if (bmp == null) {
+			InFlightRegistry inFlightRegistry = ImageLoader.getInstance().getInFlightRegistry();
+			if (inFlightRegistry.subscribeOrOwn(memoryCacheKey, this)) {
+				// Result will be delivered by owner of loading
+				if (loggingEnabled) L.i(LOG_WAITING_FOR_IMAGE_LOADED, memoryCacheKey);
+				return true;
+			}
 
-					configuration.memoryCache.put(memoryCacheKey, bmp);
+			boolean decodingHandedOff = false;
+			try {
+				// Image could be loaded by previous owner while this task was registering
+				bmp = configuration.memoryCache.get(memoryCacheKey);
+				if (bmp == null) {
+					boolean handOffDecoding = networkStage && !imageLoadingInfo.isPrefetch();
+					if (handOffDecoding && options.isCacheOnDisc()) {
+						// Loading will be completed by decoding stage
+						decodingHandedOff = loadImageOnDiscAndHandOffDecoding();
+						if (decodingHandedOff) return true;
+					} else if (handOffDecoding && !existsOnDisc(configuration.discCache.get(cacheString), cacheString)) {
+						// Image isn't cached on disc, it's handed off to decoding stage in memory
+						decodingHandedOff = loadImageInMemoryAndHandOffDecoding();
+						if (decodingHandedOff) return true;
+					} else {
+						// Task of decoding stage, prefetching or image which was put on disc by loading with other options
+						bmp = tryLoadBitmap();
+						cacheImageInMemory(bmp);
+					}
+				} else {
+					if (loggingEnabled) L.i(LOG_GET_IMAGE_FROM_MEMORY_CACHE_AFTER_WAITING, memoryCacheKey);
+				}
+			} finally {
+				// Loading of preempted prefetching was abandoned already
+				if (!decodingHandedOff && !preempted) {
+					inFlightRegistry.complete(memoryCacheKey, bmp, failReason);
 				}
-			} else {
-				if (loggingEnabled) L.i(LOG_GET_IMAGE_FROM_MEMORY_CACHE_AFTER_WAITING, memoryCacheKey);
 			}
-		} finally {
-			loadFromUriLock.unlock();
+			if (preempted) return requeuePreemptedPrefetch();
+			if (bmp == null) return false;
 		}
 
-		if (checkTaskIsNotActual() || checkTaskIsInterrupted()) return;
-		DisplayBitmapTask displayBitmapTask = new DisplayBitmapTask(bmp, imageLoadingInfo);
-		displayBitmapTask.setLoggingEnabled(loggingEnabled);
-		handler.post(displayBitmapTask);
+		if (checkTaskIsNotActual() || checkTaskIsInterrupted()) return false;
+		postDisplayBitmapTask(bmp);
+		return true;
+	}
+
+	private void cacheImageInMemory(Bitmap bmp) {
+		if (bmp != null && options.isCacheInMemory()) {
+			if (loggingEnabled) L.i(LOG_CACHE_IMAGE_IN_MEMORY, memoryCacheKey);
+
+			configuration.memoryCache.put(memoryCacheKey, bmp);
+		}
 	}
 
 	/**
-	 * Check whether the image URI of this task matches to image URI which is actual for current ImageView at this
-	 * moment and fire {@link ImageLoadingListener#onLoadingCancelled()} event if it doesn't.
+	 * Is called by owner of in-flight loading (on owner's thread) when image for this task was loaded by another task.
+	 * 
+	 * @see InFlightRegistry
 	 */
-	private boolean checkTaskIsNotActual() {
-		String currentCacheKey = ImageLoader.getInstance().getLoadingUriForView(imageView);
-		// Check whether memory cache key (image URI) for current ImageView is actual. 
-		// If ImageView is reused for another task then current task should be cancelled.
-		boolean imageViewWasReused = !memoryCacheKey.equals(currentCacheKey);
-		if (imageViewWasReused) {
+	void onSharedLoadingComplete(Bitmap bmp) {
+		if (checkTaskIsNotActual()) return;
+		if (loggingEnabled) L.i(LOG_GET_IMAGE_FROM_MEMORY_CACHE_AFTER_WAITING, memoryCacheKey);
+		postDisplayBitmapTask(bmp);
+	}
+
+	/**
+	 * Is called by owner of in-flight loading (on owner's thread) when loading of image for this task was failed.
+	 * 
+	 * @see InFlightRegistry
+	 */
+	void onSharedLoadingFailed(final FailReason failReason) {
+		if (checkTaskIsNotActual() || !finish()) return;
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				listener.onLoadingFailed(failReason);
+			}
+		});
+	}
+
+	private void postDisplayBitmapTask(final Bitmap bmp) {
+		if (imageView == null) {
 			handler.post(new Runnable() {
 				@Override
 				public void run() {
-					listener.onLoadingCancelled();
+					if (finish()) {
+						listener.onLoadingComplete(bmp);
+					}
 				}
 			});
+			return;
+		}
+		DisplayBitmapTask displayBitmapTask = new DisplayBitmapTask(bmp, imageLoadingInfo, this);
+		displayBitmapTask.setLoggingEnabled(loggingEnabled);
+		handler.post(displayBitmapTask);
+	}
+
+	@Override
+	public boolean cancel() {
+		if (!state.compareAndSet(STATE_ACTIVE, STATE_CANCELLED)) return false;
+
+		stats.recordCancelledTask();
+		if (!imageLoadingInfo.isPrefetch()) {
+			// Cancelled task could be the last visible task in queue
+			ImageLoader.getInstance().signalPrefetchLane();
+		}
+		if (imageLoadingInfo.viewHolder != null) {
+			imageLoadingInfo.viewHolder.detach(this);
+		}
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				listener.onLoadingCancelled();
+			}
+		});
+		return true;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return state.get() == STATE_CANCELLED;
+	}
+
+	/**
+	 * Marks task as finished so it can't be cancelled anymore.
+	 * 
+	 * @return <b>true</b> - if task was finished by this call; <b>false</b> - if task was already cancelled or finished
+	 */
+	boolean finish() {
+		if (!state.compareAndSet(STATE_ACTIVE, STATE_FINISHED)) return false;
+
+		if (imageLoadingInfo.viewHolder != null) {
+			imageLoadingInfo.viewHolder.detach(this);
+		}
+		return true;
+	}
+
+	/** Returns <b>true</b> if task can be executed while ImageLoader is paused (i.e. image is cached) */
+	private boolean canRunWhilePaused() {
+		if (!configuration.loadCachedImagesWhilePaused) return false;
+		return configuration.memoryCache.get(memoryCacheKey) != null || isImageCachedOnDisc();
+	}
+
+	/** Checks disc cache without touching of file system if possible */
+	boolean isImageCachedOnDisc() {
+		return isCachedOnDisc(cacheString);
+	}
+
+	private boolean isCachedOnDisc(String discCacheKey) {
+		DiscCacheAware discCache = configuration.discCache;
+		if (discCache instanceof BaseDiscCache) {
+			return ((BaseDiscCache) discCache).contains(discCacheKey);
 		}
+		return discCache.get(discCacheKey).exists();
+	}
+
+	/** Removes broken cached image through disc cache, so its index doesn't report image as cached anymore */
+	private void removeFromDiscCache(File imageFile) {
+		DiscCacheAware discCache = configuration.discCache;
+		if (discCache instanceof BaseDiscCache) {
+			((BaseDiscCache) discCache).remove(cacheString);
+		} else if (imageFile.exists()) {
+			imageFile.delete();
+		}
+	}
+
+	/** Checks existence of cached image: it's kept in file or it's packed by disc cache */
+	private boolean existsOnDisc(File imageFile, String discCacheKey) {
+		return imageFile.exists() || isPackedOnDisc(discCacheKey);
+	}
+
+	private boolean isPackedOnDisc(String discCacheKey) {
+		DiscCacheAware discCache = configuration.discCache;
+		return discCache instanceof PackedImageAware && ((PackedImageAware) discCache).isPacked(discCacheKey);
+	}
+
+	/** Returns <b>true</b> if task prefetches image */
+	boolean isPrefetch() {
+		return imageLoadingInfo.isPrefetch();
+	}
+
+	/** Puts preempted prefetching back to queue. Interrupted downloading is resumed when prefetching gets turn again. */
+	private boolean requeuePreemptedPrefetch() {
+		if (loggingEnabled) L.i(LOG_PREFETCH_PREEMPTED, memoryCacheKey);
+		return ImageLoader.getInstance().requeuePrefetch(this);
+	}
+
+	/**
+	 * Sets stage which task is submitted to. Task of network stage hands off decoding of image to decoding stage if
+	 * image is cached on disc.
+	 */
+	void setNetworkStage(boolean networkStage) {
+		this.networkStage = networkStage;
+	}
 
-		if (loggingEnabled && imageViewWasReused) L.i(LOG_TASK_CANCELLED, memoryCacheKey);
+	/** Returns sequence number of task request. Later requested tasks have greater numbers. */
+	long getRequestOrder() {
+		return requestOrder;
+	}
+
+	/**
+	 * Check whether the task is still active and the image URI of this task matches to image URI which is actual for
+	 * current ImageView at this moment. Task is {@linkplain #cancel() cancelled} if ImageView was reused.
+	 */
+	boolean checkTaskIsNotActual() {
+		if (state.get() != STATE_ACTIVE) return true;
+
+		// If ImageView is reused for another task then current task should be cancelled.
+		boolean imageViewWasReused = imageLoadingInfo.isViewReused();
+		if (imageViewWasReused) {
+			if (loggingEnabled) L.i(LOG_TASK_CANCELLED, memoryCacheKey);
+			stats.recordStaleTask();
+			cancel();
+		}
 		return imageViewWasReused;
 	}
 
@@ -184,42 +419,253 @@ final class LoadAndDisplayImageTask implements Runnable {
 		DiscCacheAware discCache = configuration.discCache;
 		File imageFile = discCache.get(cacheString);
 
+		// Image which will be downloaded into disc cache is waited for by tasks for other sizes of this image
+		InFlightRegistry inFlightRegistry = ImageLoader.getInstance().getInFlightRegistry();
+		boolean discEntryLocked = options.isCacheOnDisc() && !isFreshOnDisc(imageFile);
+		if (discEntryLocked) {
+			inFlightRegistry.lockDiscEntry(configuration.discCache, cacheString);
+		}
+
 		Bitmap bitmap = null;
 		try {
+			// Validators of downloaded image
+			CacheValidators validators = null;
+			// Stream of image which was received while expired cached image was revalidated
+			InputStream imageStream = null;
+
 			// Try to load image from disc cache
-			if (imageFile.exists()) {
-				if (loggingEnabled) L.i(LOG_LOAD_IMAGE_FROM_DISC_CACHE, memoryCacheKey);
+			if (existsOnDisc(imageFile, cacheString)) {
+				if (discCache instanceof RevalidationAware && ((RevalidationAware) discCache).isExpired(cacheString)) {
+					validators = ((RevalidationAware) discCache).getValidators(cacheString);
+					if (validators == null) {
+						validators = new CacheValidators();
+					}
+					imageStream = revalidateCachedImage((RevalidationAware) discCache, validators);
+				}
+
+				if (imageStream == null) {
+					if (loggingEnabled) L.i(LOG_LOAD_IMAGE_FROM_DISC_CACHE, memoryCacheKey);
 
-				Bitmap b = decodeImage(imageFile.toURI());
-				if (b != null) {
-					return b;
+					Bitmap b = decodeCachedImage(imageFile);
+					if (b != null) {
+						stats.recordDiscCacheHit();
+						return b;
+					}
 				}
 			}
-			
 
 			// Load image from Web
 			if (loggingEnabled) L.i(LOG_LOAD_IMAGE_FROM_INTERNET, memoryCacheKey);
+			stats.recordDiscCacheMiss();
+
+			PartialFile partialFile = new PartialFile(imageFile);
+			ContentRange range = new ContentRange(0);
+			if (imageStream == null) {
+				if (options.isCacheOnDisc()) {
+					// Resume interrupted downloading (if there is one)
+					validators = partialFile.getValidators();
+					range = new ContentRange(partialFile.getLength());
+					if (loggingEnabled && range.getOffset() > 0) L.i(LOG_RESUME_DOWNLOADING, range.getOffset(), memoryCacheKey);
+				} else {
+					validators = new CacheValidators();
+				}
+				long downloadStartTime = System.nanoTime();
+				imageStream = monitorDownload(downloader.getStreamFromOffset(new URI(uri), range, validators), downloadStartTime);
+			}
 
-			URI imageUriForDecoding;
 			if (options.isCacheOnDisc()) {
 				if (loggingEnabled) L.i(LOG_CACHE_IMAGE_ON_DISC, memoryCacheKey);
 
-				saveImageOnDisc(imageFile);
-				discCache.put(cacheString, imageFile);
-				imageUriForDecoding = imageFile.toURI();
+				boolean reduceImage = configuration.maxImageWidthForDiscCache > 0 || configuration.maxImageHeightForDiscCache > 0;
+				if (reduceImage || range.getOffset() > 0 || imageLoadingInfo.isPrefetch()) {
+					// Image is saved before decoding if it must be reduced, if downloading was resumed or if prefetching
+					// can be preempted during downloading
+					saveImageOnDisc(imageFile, partialFile, imageStream, range, validators);
+					putImageFileIntoDiscCache(imageFile, validators);
+					bitmap = decodeCachedImage(imageFile);
+				} else {
+					bitmap = decodeImageAndSaveOnDisc(imageFile, partialFile, imageStream, range, validators);
+				}
 			} else {
-				imageUriForDecoding = new URI(uri);
+				bitmap = decodeImage(new URI(uri), imageStream);
 			}
 
-			bitmap = decodeImage(imageUriForDecoding);
 			if (bitmap == null) {
 				fireImageLoadingFailedEvent(FailReason.IO_ERROR);
 			}
+		} catch (PrefetchPreemptedException e) {
+			// Interrupted downloading is kept for resuming
+		} catch (IOException e) {
+			L.e(e);
+			fireImageLoadingFailedEvent(FailReason.IO_ERROR);
+			removeFromDiscCache(imageFile);
+		} catch (OutOfMemoryError e) {
+			L.e(e);
+			fireImageLoadingFailedEvent(FailReason.OUT_OF_MEMORY);
+		} catch (Throwable e) {
+			L.e(e);
+			fireImageLoadingFailedEvent(FailReason.UNKNOWN);
+		} finally {
+			if (discEntryLocked) {
+				inFlightRegistry.unlockDiscEntry(configuration.discCache, cacheString);
+			}
+		}
+		return bitmap;
+	}
+
+	/** Returns <b>true</b> if image is cached on disc and it can be used without revalidation */
+	private boolean isFreshOnDisc(File imageFile) {
+		if (!existsOnDisc(imageFile, cacheString)) return false;
+
+		DiscCacheAware discCache = configuration.discCache;
+		return !(discCache instanceof RevalidationAware && ((RevalidationAware) discCache).isExpired(cacheString));
+	}
+
+	/**
+	 * Loads image into disc cache and hands off its decoding to decoding stage. Waits while decoding stage is full.
+	 * 
+	 * @return <b>true</b> - if decoding was handed off (decoding stage will complete loading); <b>false</b> - if loading
+	 *         failed
+	 */
+	private boolean loadImageOnDiscAndHandOffDecoding() {
+		File imageFile = loadImageOnDisc();
+		if (imageFile == null) return false;
+
+		if (loggingEnabled) L.i(LOG_HAND_OFF_DECODING, memoryCacheKey);
+		if (ImageLoader.getInstance().handOffDecoding(new DecodingStageTask(imageFile))) return true;
+
+		L.e(LOG_TASK_INTERRUPTED, memoryCacheKey);
+		fireImageLoadingFailedEvent(FailReason.UNKNOWN);
+		return false;
+	}
+
+	/**
+	 * Downloads image which isn't cached on disc into memory and hands off its decoding to decoding stage. Waits while
+	 * decoding stage is full.
+	 * 
+	 * @return <b>true</b> - if decoding was handed off (decoding stage will complete loading); <b>false</b> - if loading
+	 *         failed
+	 */
+	private boolean loadImageInMemoryAndHandOffDecoding() {
+		byte[] imageBytes = loadImageInMemory();
+		if (imageBytes == null) return false;
+
+		if (loggingEnabled) L.i(LOG_HAND_OFF_DECODING_FROM_MEMORY, memoryCacheKey);
+		if (ImageLoader.getInstance().handOffDecoding(new DecodingStageTask(imageBytes))) return true;
+
+		L.e(LOG_TASK_INTERRUPTED, memoryCacheKey);
+		fireImageLoadingFailedEvent(FailReason.UNKNOWN);
+		return false;
+	}
+
+	/** @return Downloaded image or <b>null</b> if downloading failed */
+	private byte[] loadImageInMemory() {
+		if (loggingEnabled) L.i(LOG_LOAD_IMAGE_FROM_INTERNET, memoryCacheKey);
+		stats.recordDiscCacheMiss();
+		try {
+			long downloadStartTime = System.nanoTime();
+			InputStream imageStream = monitorDownload(downloader.getStream(new URI(uri)), downloadStartTime);
+			try {
+				ByteArrayOutputStream imageBytes = new ByteArrayOutputStream(BUFFER_SIZE);
+				FileUtils.copyStream(imageStream, imageBytes);
+				return imageBytes.toByteArray();
+			} finally {
+				imageStream.close();
+			}
 		} catch (IOException e) {
 			L.e(e);
 			fireImageLoadingFailedEvent(FailReason.IO_ERROR);
-			if (imageFile.exists()) {
-				imageFile.delete();
+		} catch (OutOfMemoryError e) {
+			L.e(e);
+			fireImageLoadingFailedEvent(FailReason.OUT_OF_MEMORY);
+		} catch (Throwable e) {
+			L.e(e);
+			fireImageLoadingFailedEvent(FailReason.UNKNOWN);
+		}
+		return null;
+	}
+
+	/**
+	 * Loads image into disc cache: downloads it (resumes interrupted downloading if there is one) or revalidates
+	 * expired cached image. Tasks for other sizes of this image wait while image is loaded.
+	 * 
+	 * @return Cached image file or <b>null</b> if loading failed
+	 */
+	private File loadImageOnDisc() {
+		DiscCacheAware discCache = configuration.discCache;
+		File imageFile = discCache.get(cacheString);
+		InFlightRegistry inFlightRegistry = ImageLoader.getInstance().getInFlightRegistry();
+		inFlightRegistry.lockDiscEntry(configuration.discCache, cacheString);
+		try {
+			CacheValidators validators = null;
+			InputStream imageStream = null;
+			if (existsOnDisc(imageFile, cacheString)) {
+				if (discCache instanceof RevalidationAware && ((RevalidationAware) discCache).isExpired(cacheString)) {
+					validators = ((RevalidationAware) discCache).getValidators(cacheString);
+					if (validators == null) {
+						validators = new CacheValidators();
+					}
+					imageStream = revalidateCachedImage((RevalidationAware) discCache, validators);
+				}
+				if (imageStream == null) {
+					stats.recordDiscCacheHit();
+					return imageFile;
+				}
+			}
+
+			if (loggingEnabled) L.i(LOG_LOAD_IMAGE_FROM_INTERNET, memoryCacheKey);
+			stats.recordDiscCacheMiss();
+
+			PartialFile partialFile = new PartialFile(imageFile);
+			ContentRange range = new ContentRange(0);
+			if (imageStream == null) {
+				validators = partialFile.getValidators();
+				range = new ContentRange(partialFile.getLength());
+				if (loggingEnabled && range.getOffset() > 0) L.i(LOG_RESUME_DOWNLOADING, range.getOffset(), memoryCacheKey);
+				long downloadStartTime = System.nanoTime();
+				imageStream = monitorDownload(downloader.getStreamFromOffset(new URI(uri), range, validators), downloadStartTime);
+			}
+
+			if (loggingEnabled) L.i(LOG_CACHE_IMAGE_ON_DISC, memoryCacheKey);
+			saveImageOnDisc(imageFile, partialFile, imageStream, range, validators);
+			putImageFileIntoDiscCache(imageFile, validators);
+			return imageFile;
+		} catch (IOException e) {
+			L.e(e);
+			fireImageLoadingFailedEvent(FailReason.IO_ERROR);
+			removeFromDiscCache(imageFile);
+		} catch (OutOfMemoryError e) {
+			L.e(e);
+			fireImageLoadingFailedEvent(FailReason.OUT_OF_MEMORY);
+		} catch (Throwable e) {
+			L.e(e);
+			fireImageLoadingFailedEvent(FailReason.UNKNOWN);
+		} finally {
+			inFlightRegistry.unlockDiscEntry(configuration.discCache, cacheString);
+		}
+		return null;
+	}
+
+	/**
+	 * Decodes image which was loaded by network stage and caches bitmap in memory
+	 * 
+	 * @param imageFile Image file in disc cache or <b>null</b> if image was loaded in memory
+	 * @param imageBytes Image loaded in memory (if it isn't cached on disc)
+	 */
+	private Bitmap decodeHandedOffImage(File imageFile, byte[] imageBytes) {
+		Bitmap bitmap = null;
+		try {
+			bitmap = imageFile != null ? decodeCachedImage(imageFile) : decodeImageBytes(imageBytes);
+			if (bitmap == null) {
+				fireImageLoadingFailedEvent(FailReason.IO_ERROR);
+			} else {
+				cacheImageInMemory(bitmap);
+			}
+		} catch (IOException e) {
+			L.e(e);
+			fireImageLoadingFailedEvent(FailReason.IO_ERROR);
+			if (imageFile != null) {
+				removeFromDiscCache(imageFile);
 			}
 		} catch (OutOfMemoryError e) {
 			L.e(e);
@@ -231,90 +677,431 @@ final class LoadAndDisplayImageTask implements Runnable {
 		return bitmap;
 	}
 
-	private Bitmap decodeImage(URI imageUri) throws IOException {
-		Bitmap bmp = null;
+	/** Decodes image which was loaded in memory. Decoder re-reads image from memory if it needs. */
+	private Bitmap decodeImageBytes(final byte[] imageBytes) throws IOException, URISyntaxException {
+		ImageDecoder decoder = new ImageDecoder(new URI(uri), downloader, options) {
+			@Override
+			InputStream openStream() {
+				return new ByteArrayInputStream(imageBytes);
+			}
+		};
+		return decodeImage(setUpImageDecoder(decoder), null);
+	}
 
-		if (configuration.handleOutOfMemory) {
-			bmp = decodeWithOOMHandling(imageUri);
-		} else {
-			ImageDecoder decoder = new ImageDecoder(imageUri, downloader, options);
+	/** Downloads image into disc cache without decoding. Interrupted downloading is kept for resuming. */
+	private void prefetchImageOnDisc() {
+		if (isImageCachedOnDisc()) return;
+
+		InFlightRegistry inFlightRegistry = ImageLoader.getInstance().getInFlightRegistry();
+		inFlightRegistry.lockDiscEntry(configuration.discCache, cacheString);
+		try {
+			// Image could be loaded by another task while this task was waiting
+			if (isImageCachedOnDisc()) return;
+			if (loggingEnabled) L.i(LOG_PREFETCH_IMAGE_ON_DISC, memoryCacheKey);
+
+			File imageFile = configuration.discCache.get(cacheString);
+			PartialFile partialFile = new PartialFile(imageFile);
+			CacheValidators validators = partialFile.getValidators();
+			ContentRange range = new ContentRange(partialFile.getLength());
+			if (loggingEnabled && range.getOffset() > 0) L.i(LOG_RESUME_DOWNLOADING, range.getOffset(), memoryCacheKey);
+			long downloadStartTime = System.nanoTime();
+			InputStream imageStream = monitorDownload(downloader.getStreamFromOffset(new URI(uri), range, validators), downloadStartTime);
+			saveImageOnDisc(imageFile, partialFile, imageStream, range, validators);
+			putImageFileIntoDiscCache(imageFile, validators);
+		} catch (PrefetchPreemptedException e) {
+			// Interrupted downloading is kept for resuming
+		} catch (IOException e) {
+			L.e(e);
+		} catch (URISyntaxException e) {
+			L.e(e);
+		} catch (OutOfMemoryError e) {
+			L.e(e);
+		} finally {
+			inFlightRegistry.unlockDiscEntry(configuration.discCache, cacheString);
+		}
+	}
+
+	/**
+	 * Sends conditional request for expired cached image. If image wasn't modified then its age is refreshed in disc
+	 * cache.
+	 * 
+	 * @param validators Validators of cached image. They're updated by response.
+	 * @return Stream of modified image or <b>null</b> if cached image can be used (it wasn't modified or server is
+	 *         unavailable)
+	 */
+	private InputStream revalidateCachedImage(RevalidationAware discCache, CacheValidators validators) throws URISyntaxException {
+		if (loggingEnabled) L.i(LOG_REVALIDATE_IMAGE, memoryCacheKey);
+
+		InputStream imageStream;
+		try {
+			long downloadStartTime = System.nanoTime();
+			imageStream = monitorDownload(downloader.getStreamIfModified(new URI(uri), validators), downloadStartTime);
+		} catch (IOException e) {
+			// Expired image is better than nothing
+			L.e(e);
+			return null;
+		}
+		if (imageStream == null) {
+			if (loggingEnabled) L.i(LOG_IMAGE_NOT_MODIFIED, memoryCacheKey);
+			discCache.putValidators(cacheString, validators);
+		}
+		return imageStream;
+	}
+
+	/**
+	 * Wraps network stream of image for {@linkplain ImageLoader#getStats() statistics}. Stream of prefetched image is
+	 * also wrapped so that visible request preempts its downloading. Streams of local images aren't wrapped.
+	 * 
+	 * @param startTime Time of request sending ({@link System#nanoTime()})
+	 */
+	private InputStream monitorDownload(InputStream imageStream, long startTime) throws URISyntaxException {
+		if (imageStream == null || !ImageDownloader.isNetworkUri(new URI(uri))) return imageStream;
+
+		InputStream monitoredStream = stats.monitorDownload(imageStream, uri, startTime);
+		return imageLoadingInfo.isPrefetch() ? new PreemptibleInputStream(monitoredStream) : monitoredStream;
+	}
+
+	/**
+	 * Aborts downloading of prefetched image if visible request was submitted after prefetching had got its turn.
+	 * Prefetching into memory isn't preempted if visible requests were subscribed to its loading.
+	 */
+	private void checkPrefetchIsPreempted() throws PrefetchPreemptedException {
+		if (!ImageLoader.getInstance().isPrefetchPreempted(prefetchTurn)) return;
+		if (imageLoadingInfo.prefetchTarget == PrefetchTarget.DISC_AND_MEMORY && !ImageLoader.getInstance().getInFlightRegistry().abandon(memoryCacheKey)) return;
+
+		preempted = true;
+		throw new PrefetchPreemptedException();
+	}
+
+	/** Puts saved image file into disc cache together with validators of downloaded image (if disc cache keeps them) */
+	private void putImageFileIntoDiscCache(File imageFile, CacheValidators validators) {
+		DiscCacheAware discCache = configuration.discCache;
+		discCache.put(cacheString, imageFile);
+		if (discCache instanceof RevalidationAware) {
+			((RevalidationAware) discCache).putValidators(cacheString, validators);
+		}
+	}
+
+	/**
+	 * Decodes image from network stream and saves this stream on disc at the same time. Image file is put into disc
+	 * cache only if the whole stream was saved.
+	 */
+	private Bitmap decodeImageAndSaveOnDisc(File imageFile, PartialFile partialFile, InputStream networkStream, ContentRange range, CacheValidators validators) throws IOException {
+		TeeInputStream imageStream = new TeeInputStream(networkStream, partialFile, range, validators);
+		Bitmap bitmap = null;
+		try {
+			// If stream must be re-opened then it's re-opened from saved file
+			bitmap = decodeImage(imageFile.toURI(), imageStream);
+		} finally {
+			if (bitmap == null || isCancelled() || Thread.currentThread().isInterrupted()) {
+				// Rest of image isn't downloaded needlessly
+				imageStream.abort();
+			}
+			imageStream.close();
+		}
+		if (!imageStream.isStreamCompleted()) {
+			// Image was downloaded partially, so decoded bitmap can be incomplete
+			if (bitmap != null) {
+				bitmap.recycle();
+			}
+			throw new IOException("Image stream was interrupted: " + uri);
+		}
+		if (imageStream.isCommitted()) {
+			putImageFileIntoDiscCache(imageFile, validators);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Decodes image file from disc cache. If {@linkplain ImageLoaderConfiguration#discCacheDerivatives derivatives}
+	 * are kept then the smallest stored derivative which is enough for target size is decoded; if there is no such
+	 * derivative then derivative for target size is created from image file. Image which is
+	 * {@linkplain PackedImageAware packed} by disc cache is small, so it's decoded without derivatives.
+	 */
+	private Bitmap decodeCachedImage(File imageFile) throws IOException {
+		if (!imageFile.exists() && isPackedOnDisc(cacheString)) return decodePackedImage(cacheString, imageFile);
+
+		DiscCacheDerivatives derivatives = configuration.discCacheDerivatives;
+		int bucketIndex = derivatives == null ? -1 : derivatives.getBucketIndex(targetSize);
+		if (bucketIndex < 0) return decodeImage(imageFile.toURI(), null);
+
+		long imageFileLength = imageFile.length();
+		for (int i = bucketIndex; i < derivatives.getBucketCount(); i++) {
+			String derivativeKey = derivatives.generateKey(cacheString, i, imageFileLength);
+			if (!isCachedOnDisc(derivativeKey)) continue;
+
+			if (loggingEnabled) L.i(LOG_LOAD_DERIVATIVE_FROM_DISC_CACHE, derivatives.getBucketSize(i), memoryCacheKey);
+			try {
+				Bitmap bmp = decodeDiscCacheEntry(derivativeKey);
+				if (bmp != null) return bmp;
+			} catch (IOException e) {
+				// Derivative was evicted while decoding, original image is still here
+				L.e(e);
+			}
+		}
+
+		String derivativeKey = createDerivative(imageFile, derivatives, bucketIndex, imageFileLength);
+		if (derivativeKey != null) {
+			Bitmap bmp = decodeDiscCacheEntry(derivativeKey);
+			if (bmp != null) return bmp;
+		}
+		return decodeImage(imageFile.toURI(), null);
+	}
+
+	/**
+	 * Decodes entry of disc cache which is kept in file or is packed
+	 * 
+	 * @return Decoded bitmap or <b>null</b> if there is no entry for incoming key
+	 */
+	private Bitmap decodeDiscCacheEntry(String discCacheKey) throws IOException {
+		File entryFile = configuration.discCache.get(discCacheKey);
+		if (entryFile.exists()) return decodeImage(entryFile.toURI(), null);
+		if (isPackedOnDisc(discCacheKey)) return decodePackedImage(discCacheKey, entryFile);
+		return null;
+	}
+
+	/** Decodes image which is packed by disc cache. Image is read right from storage of disc cache. */
+	private Bitmap decodePackedImage(final String discCacheKey, File imageFile) throws IOException {
+		final PackedImageAware discCache = (PackedImageAware) configuration.discCache;
+		ImageDecoder decoder = new ImageDecoder(imageFile.toURI(), downloader, options) {
+			@Override
+			InputStream openStream() throws IOException {
+				InputStream imageStream = discCache.openPackedImage(discCacheKey);
+				if (imageStream == null) throw new FileNotFoundException("Image isn't packed in disc cache: " + discCacheKey);
+				return imageStream;
+			}
+		};
+		return decodeImage(setUpImageDecoder(decoder), null);
+	}
+
+	/**
+	 * Creates derivative of cached image for bucket and puts it into disc cache. Derivative isn't created if image isn't
+	 * much larger than bucket.
+	 * 
+	 * @return Disc cache key of created derivative or <b>null</b> if derivative wasn't created
+	 */
+	private String createDerivative(File imageFile, DiscCacheDerivatives derivatives, int bucketIndex, long imageFileLength) {
+		BitmapFactory.Options boundsOptions = new BitmapFactory.Options();
+		boundsOptions.inJustDecodeBounds = true;
+		BitmapFactory.decodeFile(imageFile.getPath(), boundsOptions);
+		if (!derivatives.isWorthReducing(boundsOptions.outWidth, boundsOptions.outHeight, bucketIndex)) return null;
+
+		int bucketSize = derivatives.getBucketSize(bucketIndex);
+		if (loggingEnabled) L.i(LOG_CREATE_DERIVATIVE_ON_DISC, bucketSize, memoryCacheKey);
+
+		String derivativeKey = derivatives.generateKey(cacheString, bucketIndex, imageFileLength);
+		File derivativeFile = configuration.discCache.get(derivativeKey);
+		// Tasks for other sizes in the same bucket create the same derivative
+		InFlightRegistry inFlightRegistry = ImageLoader.getInstance().getInFlightRegistry();
+		inFlightRegistry.lockDiscEntry(configuration.discCache, derivativeKey);
+		try {
+			if (isCachedOnDisc(derivativeKey)) return derivativeKey;
+
+			ImageDecoder decoder = new ImageDecoder(imageFile.toURI(), downloader, options);
+			decoder.setMemoryGovernor(configuration.decodingMemoryGovernor);
 			decoder.setLoggingEnabled(loggingEnabled);
-			ViewScaleType viewScaleType = ViewScaleType.fromImageView(imageView);
+			// Smaller side of derivative is equal to bucket size
+			Bitmap bmp = decoder.decode(new ImageSize(bucketSize, bucketSize), ImageScaleType.EXACTLY, ViewScaleType.CROP);
+			if (bmp == null || !compressImageOnDisc(bmp, derivativeFile, derivatives.compressFormat, derivatives.compressQuality)) {
+				return null;
+			}
+			configuration.discCache.put(derivativeKey, derivativeFile);
+			return derivativeKey;
+		} catch (IOException e) {
+			L.e(e);
+			return null;
+		} finally {
+			inFlightRegistry.unlockDiscEntry(configuration.discCache, derivativeKey);
+		}
+	}
+
+	/**
+	 * @param imageUri URI of image
+	 * @param imageStream Already opened stream of image. If it's <b>null</b> then image URI is opened for decoding.
+	 */
+	private Bitmap decodeImage(URI imageUri, InputStream imageStream) throws IOException {
+		return decodeImage(createImageDecoder(imageUri), imageStream);
+	}
+
+	/** @param imageStream Already opened stream of image. If it's <b>null</b> then decoder opens image for decoding. */
+	private Bitmap decodeImage(ImageDecoder decoder, InputStream imageStream) throws IOException {
+		long decodeStartTime = System.nanoTime();
+		Bitmap bmp = null;
+
+		// Decodings are admitted by ImageLoaderConfiguration#decodingMemoryGovernor, so OutOfMemoryError isn't retried:
+		// loading fails with FailReason.OUT_OF_MEMORY
+		ViewScaleType viewScaleType = imageLoadingInfo.viewScaleType;
+		if (imageStream == null) {
 			bmp = decoder.decode(targetSize, options.getImageScaleType(), viewScaleType);
+		} else {
+			bmp = decoder.decode(imageStream, targetSize, options.getImageScaleType(), viewScaleType);
+		}
+		if (bmp != null) {
+			stats.recordDecode(memoryCacheKey, bmp.getRowBytes() * bmp.getHeight(), decodeStartTime);
 		}
 		return bmp;
 	}
 
-	private Bitmap decodeWithOOMHandling(URI imageUri) throws IOException {
-		Bitmap result = null;
-		ImageDecoder decoder = new ImageDecoder(imageUri, downloader, options);
+	private ImageDecoder createImageDecoder(URI imageUri) {
+		return setUpImageDecoder(new ImageDecoder(imageUri, downloader, options));
+	}
+
+	private ImageDecoder setUpImageDecoder(ImageDecoder decoder) {
+		decoder.setBitmapPool(configuration.bitmapPool);
+		decoder.setMemoryGovernor(configuration.decodingMemoryGovernor);
 		decoder.setLoggingEnabled(loggingEnabled);
-		for (int attempt = 1; attempt <= ATTEMPT_COUNT_TO_DECODE_BITMAP; attempt++) {
-			try {
-				ViewScaleType viewScaleType = ViewScaleType.fromImageView(imageView);
-				result = decoder.decode(targetSize, options.getImageScaleType(), viewScaleType);
-			} catch (OutOfMemoryError e) {
-				L.e(e);
+		return decoder;
+	}
 
-				switch (attempt) {
-					case 1:
-						System.gc();
-						break;
-					case 2:
-						configuration.memoryCache.clear();
-						System.gc();
-						break;
-					case 3:
-						throw e;
-				}
-				// Wait some time while GC is working
-				SystemClock.sleep(attempt * 1000);
-				continue;
+	/**
+	 * Saves original image on disc and then reduces it to maximum size for disc cache (if it's defined and image can be
+	 * reduced). Image is written into partial file which is renamed to target file only when image is downloaded
+	 * completely, interrupted downloading is kept for resuming.
+	 * 
+	 * @param imageStream Already opened network stream of image. It's closed after using.
+	 * @param range Range of image content which is provided by stream
+	 */
+	private void saveImageOnDisc(File targetFile, PartialFile partialFile, InputStream imageStream, ContentRange range, CacheValidators validators) throws IOException {
+		try {
+			OutputStream os = partialFile.openForWriting(range, validators);
+			try {
+				FileUtils.copyStream(imageStream, os);
+			} finally {
+				os.close();
 			}
-			break;
+		} catch (IOException e) {
+			partialFile.keepForResuming();
+			throw e;
+		} finally {
+			imageStream.close();
+		}
+		if (!partialFile.commit()) {
+			throw new IOException("Can't save image on disc: " + targetFile);
 		}
-		return result;
-	}
 
-	private void saveImageOnDisc(File targetFile) throws IOException, URISyntaxException {
 		int width = configuration.maxImageWidthForDiscCache;
 		int height = configuration.maxImageHeightForDiscCache;
 		if (width > 0 || height > 0) {
-			// Download, decode, compress and save image
-			ImageSize targetImageSize = new ImageSize(width, height);
-			ImageDecoder decoder = new ImageDecoder(new URI(uri), downloader, options);
-			decoder.setLoggingEnabled(loggingEnabled);
-			Bitmap bmp = decoder.decode(targetImageSize, ImageScaleType.IN_SAMPLE_INT, ViewScaleType.FIT_INSIDE);
+			reduceImageOnDisc(targetFile, new ImageSize(width, height));
+		}
+	}
 
-			OutputStream os = new BufferedOutputStream(new FileOutputStream(targetFile), BUFFER_SIZE);
-			boolean compressedSuccessfully = bmp.compress(configuration.imageCompressFormatForDiscCache, configuration.imageQualityForDiscCache, os);
-			if (compressedSuccessfully) {
-				bmp.recycle();
-				return;
-			}
+	/** Decodes, compresses and saves image file reduced to incoming size. Original file is kept if reducing failed. */
+	private void reduceImageOnDisc(File imageFile, ImageSize targetImageSize) throws IOException {
+		ImageDecoder decoder = new ImageDecoder(imageFile.toURI(), downloader, options);
+		decoder.setMemoryGovernor(configuration.decodingMemoryGovernor);
+		decoder.setLoggingEnabled(loggingEnabled);
+		Bitmap bmp = decoder.decode(targetImageSize, ImageScaleType.IN_SAMPLE_INT, ViewScaleType.FIT_INSIDE);
+		if (bmp != null) {
+			compressImageOnDisc(bmp, imageFile, configuration.imageCompressFormatForDiscCache, configuration.imageQualityForDiscCache);
 		}
+	}
 
-		// If previous compression wasn't needed or failed
-		// Download and save original image
-		InputStream is = downloader.getStream(new URI(uri));
+	/**
+	 * Compresses bitmap into temporary file and then replaces image file by it. Bitmap is recycled.
+	 * 
+	 * @return <b>true</b> - if image file was replaced; <b>false</b> - otherwise (existing image file is kept)
+	 */
+	private boolean compressImageOnDisc(Bitmap bmp, File imageFile, CompressFormat compressFormat, int compressQuality) throws IOException {
+		File tempFile = FileUtils.getTempFile(imageFile);
+		boolean compressedSuccessfully;
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE);
 		try {
-			OutputStream os = new BufferedOutputStream(new FileOutputStream(targetFile), BUFFER_SIZE);
+			compressedSuccessfully = bmp.compress(compressFormat, compressQuality, os);
+		} finally {
+			os.close();
+			bmp.recycle();
+		}
+		if (!compressedSuccessfully || !FileUtils.commitTempFile(tempFile, imageFile)) {
+			tempFile.delete();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Decoding stage of task. Decodes image which was loaded by network stage (into disc cache or in memory), completes
+	 * in-flight loading and posts bitmap for displaying. Holds slot of {@link DecodingHandOff} until decoding is done.
+	 */
+	final class DecodingStageTask implements Runnable {
+
+		private final File imageFile;
+		private final byte[] imageBytes;
+
+		/** @param imageFile Image file in disc cache */
+		DecodingStageTask(File imageFile) {
+			this.imageFile = imageFile;
+			imageBytes = null;
+		}
+
+		/** @param imageBytes Image which was loaded in memory (it isn't cached on disc) */
+		DecodingStageTask(byte[] imageBytes) {
+			this.imageBytes = imageBytes;
+			imageFile = null;
+		}
+
+		@Override
+		public void run() {
+			ImageLoader imageLoader = ImageLoader.getInstance();
+			Bitmap bmp = null;
 			try {
-				FileUtils.copyStream(is, os);
+				bmp = decodeHandedOffImage(imageFile, imageBytes);
 			} finally {
-				os.close();
-		
+				imageLoader.getDecodingHandOff().release();
+				imageLoader.getInFlightRegistry().complete(memoryCacheKey, bmp, failReason);
+			}
+
+			if (bmp == null || checkTaskIsNotActual() || checkTaskIsInterrupted()) {
+				finish();
+			} else {
+				postDisplayBitmapTask(bmp);
+			}
+		}
+
+		/** Is called if task was dropped from queue of decoding stage (ImageLoader was stopped) */
+		void discard() {
+			ImageLoader imageLoader = ImageLoader.getInstance();
+			imageLoader.getDecodingHandOff().release();
+			imageLoader.getInFlightRegistry().complete(memoryCacheKey, null, FailReason.UNKNOWN);
+			finish();
+		}
+	}
+
+	/** Stream of prefetched image. Downloading is checked for preemption before every read. */
+	private final class PreemptibleInputStream extends FilterInputStream {
+
+		PreemptibleInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			checkPrefetchIsPreempted();
+			return super.read();
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException {
+			checkPrefetchIsPreempted();
+			return super.read(buffer, offset, count);
 		}
-		}catch(Exception e){
-			e.printStackTrace();
-		}finally {
-		
-			is.close();
+
+		@Override
+		public long skip(long byteCount) throws IOException {
+			checkPrefetchIsPreempted();
+			return super.skip(byteCount);
 		}
 	}
 
+	/** Is thrown when downloading of prefetched image is aborted because visible request was submitted */
+	private static final class PrefetchPreemptedException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+	}
+
 	private void fireImageLoadingFailedEvent(final FailReason failReason) {
-		if (!Thread.interrupted()) {
+		this.failReason = failReason;
+		if (finish() && !Thread.interrupted()) {
 			handler.post(new Runnable() {
 				@Override
 				public void run() {
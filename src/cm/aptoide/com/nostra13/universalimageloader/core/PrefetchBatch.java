@@ -0,0 +1,43 @@
+package cm.aptoide.com.nostra13.universalimageloader.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageLoadingHandle;
+
+/**
+ * Handle of tasks which were scheduled by one call of
+ * {@link ImageLoader#prefetch(java.util.Collection, cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageSize, cm.aptoide.com.nostra13.universalimageloader.core.assist.PrefetchTarget)
+ * ImageLoader.prefetch(...)}. Cancels all tasks of batch at once.
+ */
+final class PrefetchBatch implements ImageLoadingHandle {
+
+	private final List<LoadAndDisplayImageTask> tasks = new ArrayList<LoadAndDisplayImageTask>();
+	private volatile boolean cancelled;
+
+	void add(LoadAndDisplayImageTask task) {
+		tasks.add(task);
+	}
+
+	int size() {
+		return tasks.size();
+	}
+
+	/** @return <b>true</b> - if some of tasks was cancelled by this call */
+	@Override
+	public boolean cancel() {
+		if (cancelled) return false;
+
+		cancelled = true;
+		boolean result = false;
+		for (LoadAndDisplayImageTask task : tasks) {
+			result |= task.cancel();
+		}
+		return result;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+}
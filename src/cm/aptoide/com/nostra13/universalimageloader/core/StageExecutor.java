@@ -0,0 +1,38 @@
+package cm.aptoide.com.nostra13.universalimageloader.core;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor of visible stage (network or decoding). Counts tasks which are executed at this moment and wakes up waiting
+ * prefetching tasks when some task is finished, so prefetching starts as soon as visible stages become idle.
+ *
+ * @see ImageLoader#waitForPrefetchTurn()
+ */
+final class StageExecutor extends ThreadPoolExecutor {
+
+	private final AtomicInteger runningTaskCount = new AtomicInteger();
+
+	StageExecutor(int poolSize, BlockingQueue<Runnable> taskQueue, ThreadFactory threadFactory) {
+		super(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, taskQueue, threadFactory);
+	}
+
+	@Override
+	protected void beforeExecute(Thread thread, Runnable task) {
+		runningTaskCount.incrementAndGet();
+	}
+
+	@Override
+	protected void afterExecute(Runnable task, Throwable throwable) {
+		runningTaskCount.decrementAndGet();
+		ImageLoader.getInstance().signalPrefetchLane();
+	}
+
+	/** Returns <b>true</b> if stage executes some task or has not cancelled tasks in queue */
+	boolean isBusy() {
+		return runningTaskCount.get() > 0 || !getQueue().isEmpty();
+	}
+}
@@ -0,0 +1,233 @@
+package cm.aptoide.com.nostra13.universalimageloader.core;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageLoaderStatsListener;
+
+/**
+ * Collects statistics of {@link ImageLoader}. Recording is lock-free (counters are {@linkplain StripedCounter striped},
+ * histogram buckets are atomic), so statistics are always collected.
+ *
+ * @see ImageLoaderStats
+ */
+final class StatsRecorder {
+
+	private final StripedCounter memoryCacheHits = new StripedCounter();
+	private final StripedCounter memoryCacheMisses = new StripedCounter();
+	private final StripedCounter discCacheHits = new StripedCounter();
+	private final StripedCounter discCacheMisses = new StripedCounter();
+	private final StripedCounter downloadedBytes = new StripedCounter();
+	private final StripedCounter decodedBytes = new StripedCounter();
+	private final StripedCounter cancelledTasks = new StripedCounter();
+	private final StripedCounter staleTasks = new StripedCounter();
+	private final StripedCounter handOffs = new StripedCounter();
+	private final StripedCounter backpressureWaits = new StripedCounter();
+	private final StripedCounter backpressureWaitMillis = new StripedCounter();
+	private final Histogram downloadLatency = new Histogram();
+	private final Histogram decodeLatency = new Histogram();
+
+	private volatile ImageLoaderStatsListener listener;
+
+	void setListener(ImageLoaderStatsListener listener) {
+		this.listener = listener;
+	}
+
+	void recordMemoryCacheHit() {
+		memoryCacheHits.increment();
+	}
+
+	void recordMemoryCacheMiss() {
+		memoryCacheMisses.increment();
+	}
+
+	void recordDiscCacheHit() {
+		discCacheHits.increment();
+	}
+
+	void recordDiscCacheMiss() {
+		discCacheMisses.increment();
+	}
+
+	void recordCancelledTask() {
+		cancelledTasks.increment();
+	}
+
+	void recordStaleTask() {
+		staleTasks.increment();
+	}
+
+	/** Records hand-off of downloaded image from network stage to decoding stage */
+	void recordHandOff() {
+		handOffs.increment();
+	}
+
+	/**
+	 * Records waiting of network stage for free slot of decoding stage
+	 *
+	 * @param startTime Start time of waiting ({@link System#nanoTime()})
+	 */
+	void recordBackpressure(long startTime) {
+		backpressureWaits.increment();
+		backpressureWaitMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+	}
+
+	/**
+	 * Records decoding of bitmap
+	 *
+	 * @param startTime Start time of decoding ({@link System#nanoTime()})
+	 */
+	void recordDecode(String memoryCacheKey, long bitmapBytes, long startTime) {
+		long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+		decodedBytes.add(bitmapBytes);
+		decodeLatency.record(durationMillis);
+
+		ImageLoaderStatsListener listener = this.listener;
+		if (listener != null) {
+			listener.onImageDecoded(memoryCacheKey, bitmapBytes, durationMillis);
+		}
+	}
+
+	/**
+	 * Wraps network stream of image. Downloading is recorded when end of stream is reached (or when stream is closed
+	 * before its end). Latency ends with the last read of network data, so time of decoding from stream isn't counted.
+	 *
+	 * @param startTime Time of request sending ({@link System#nanoTime()})
+	 */
+	InputStream monitorDownload(InputStream networkStream, String uri, long startTime) {
+		return new DownloadMonitoringInputStream(networkStream, uri, startTime);
+	}
+
+	private void recordDownload(String uri, long bytes, long startTime, long endTime) {
+		long durationMillis = TimeUnit.NANOSECONDS.toMillis(endTime - startTime);
+		downloadedBytes.add(bytes);
+		downloadLatency.record(durationMillis);
+
+		ImageLoaderStatsListener listener = this.listener;
+		if (listener != null) {
+			listener.onImageDownloaded(uri, bytes, durationMillis);
+		}
+	}
+
+	/** Fills statistics snapshot by recorded values */
+	void fill(ImageLoaderStats stats) {
+		stats.memoryCacheHits = memoryCacheHits.sum();
+		stats.memoryCacheMisses = memoryCacheMisses.sum();
+		stats.discCacheHits = discCacheHits.sum();
+		stats.discCacheMisses = discCacheMisses.sum();
+		stats.downloadedBytes = downloadedBytes.sum();
+		stats.decodedBytes = decodedBytes.sum();
+		stats.downloadLatency = downloadLatency.snapshot();
+		stats.decodeLatency = decodeLatency.snapshot();
+		stats.cancelledTaskCount = cancelledTasks.sum();
+		stats.staleTaskCount = staleTasks.sum();
+		stats.handOffCount = handOffs.sum();
+		stats.backpressureWaitCount = backpressureWaits.sum();
+		stats.backpressureWaitMillis = backpressureWaitMillis.sum();
+	}
+
+	/** Fixed-bucket latency histogram */
+	private static class Histogram {
+
+		private final AtomicLongArray counts = new AtomicLongArray(LatencyHistogram.BUCKET_COUNT);
+		private final StripedCounter totalMillis = new StripedCounter();
+
+		void record(long millis) {
+			counts.incrementAndGet(LatencyHistogram.getBucketIndex(millis));
+			totalMillis.add(millis);
+		}
+
+		LatencyHistogram snapshot() {
+			long[] snapshot = new long[LatencyHistogram.BUCKET_COUNT];
+			for (int bucket = 0; bucket < snapshot.length; bucket++) {
+				snapshot[bucket] = counts.get(bucket);
+			}
+			return new LatencyHistogram(snapshot, totalMillis.sum());
+		}
+	}
+
+	/** Counts bytes which are read from network stream and records downloading at end of stream or on closing */
+	private class DownloadMonitoringInputStream extends FilterInputStream {
+
+		private final String uri;
+		private final long startTime;
+		private long readBytes;
+		private long markedReadBytes;
+		/** Time ({@link System#nanoTime()}) of the last read which returned data */
+		private long lastReadTime;
+		private boolean recorded;
+
+		DownloadMonitoringInputStream(InputStream in, String uri, long startTime) {
+			super(in);
+			this.uri = uri;
+			this.startTime = startTime;
+			lastReadTime = startTime;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b == -1) {
+				recordOnce();
+			} else {
+				readBytes++;
+				lastReadTime = System.nanoTime();
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException {
+			int read = in.read(buffer, offset, count);
+			if (read == -1) {
+				recordOnce();
+			} else if (read > 0) {
+				readBytes += read;
+				lastReadTime = System.nanoTime();
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(n);
+			if (skipped > 0) {
+				readBytes += skipped;
+				lastReadTime = System.nanoTime();
+			}
+			return skipped;
+		}
+
+		@Override
+		public synchronized void mark(int readLimit) {
+			in.mark(readLimit);
+			markedReadBytes = readBytes;
+		}
+
+		@Override
+		public synchronized void reset() throws IOException {
+			in.reset();
+			readBytes = markedReadBytes;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				in.close();
+			} finally {
+				// Stream could be closed before its end (e.g. decoder didn't read image trailer)
+				recordOnce();
+			}
+		}
+
+		private void recordOnce() {
+			if (!recorded) {
+				recorded = true;
+				recordDownload(uri, readBytes, startTime, lastReadTime);
+			}
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package cm.aptoide.com.nostra13.universalimageloader.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free counter which is split into several cells. Threads add to different cells (cell is chosen by thread ID), so
+ * loading threads don't contend for the same memory. Value of counter is sum of all cells.
+ */
+final class StripedCounter {
+
+	/** Must be power of 2 */
+	private static final int STRIPE_COUNT = 8;
+	/** Cells are placed in different cache lines (64 bytes) to avoid false sharing */
+	private static final int CELL_PADDING = 8;
+
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPE_COUNT * CELL_PADDING);
+
+	void increment() {
+		add(1);
+	}
+
+	void add(long value) {
+		int stripe = (int) Thread.currentThread().getId() & (STRIPE_COUNT - 1);
+		cells.getAndAdd(stripe * CELL_PADDING, value);
+	}
+
+	/** Returns current value of counter. Value isn't atomic snapshot if counter is updated concurrently. */
+	long sum() {
+		long sum = 0;
+		for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+			sum += cells.get(stripe * CELL_PADDING);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,59 @@
+package cm.aptoide.com.nostra13.universalimageloader.core;
+
+import android.widget.ImageView;
+
+import cm.aptoide.api.pt.R;
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.ImageLoadingHandle;
+
+/**
+ * Bookkeeping of {@link ImageLoader} for one {@link ImageView}. Holder is created once per view and is kept in view's
+ * {@linkplain ImageView#setTag(int, Object) tag}, so display requests don't allocate anything for it.<br />
+ * Request token is increased on every display request and cancellation for view. Task remembers token of its request
+ * and compares it with current token of view to know whether view was reused for another image - without locks and
+ * string comparing.<br />
+ * Token and memory cache key are changed on UI thread only.
+ *
+ * @see ImageLoadingInfo#isViewReused()
+ */
+final class ViewRequestHolder {
+
+	volatile int requestToken;
+	/** Memory cache key of image which is loaded into view at this moment (or <b>null</b>) */
+	volatile String memoryCacheKey;
+	/** Pending task of view (or <b>null</b>) */
+	volatile ImageLoadingHandle task;
+
+	private ViewRequestHolder() {
+	}
+
+	/** Returns holder of view or <b>null</b> if nothing was displayed in view by ImageLoader */
+	static ViewRequestHolder get(ImageView imageView) {
+		return (ViewRequestHolder) imageView.getTag(R.id.image_loader_view_holder);
+	}
+
+	/** Returns holder of view, holder is created if needed. Must be called on UI thread. */
+	static ViewRequestHolder obtain(ImageView imageView) {
+		ViewRequestHolder holder = get(imageView);
+		if (holder == null) {
+			holder = new ViewRequestHolder();
+			imageView.setTag(R.id.image_loader_view_holder, holder);
+		}
+		return holder;
+	}
+
+	/** Makes all previous requests for view not actual and returns their pending task (if any) */
+	ImageLoadingHandle invalidate() {
+		requestToken++;
+		memoryCacheKey = null;
+		ImageLoadingHandle pendingTask = task;
+		task = null;
+		return pendingTask;
+	}
+
+	/** Forgets task if it's still pending task of view. Can be called on any thread. */
+	void detach(ImageLoadingHandle finishedTask) {
+		if (task == finishedTask) {
+			task = null;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package cm.aptoide.com.nostra13.universalimageloader.core.assist;
+
+/**
+ * Bounded pool of byte arrays of the same size. Allows to reuse buffers instead of allocating them for every image
+ * decoding. If pool is empty then new array is created, if pool is full then returned array is dropped.
+ */
+public final class ByteArrayPool {
+
+	private final int arraySize;
+	private final byte[][] arrays;
+	private int count = 0;
+
+	/**
+	 * @param arraySize Size of pooled arrays (in bytes)
+	 * @param maxPooledArrays Maximum count of arrays which can be kept in pool
+	 */
+	public ByteArrayPool(int arraySize, int maxPooledArrays) {
+		this.arraySize = arraySize;
+		this.arrays = new byte[maxPooledArrays][];
+	}
+
+	/** Returns array from pool or new array if pool is empty */
+	public byte[] obtain() {
+		synchronized (arrays) {
+			if (count > 0) {
+				count--;
+				byte[] array = arrays[count];
+				arrays[count] = null;
+				return array;
+			}
+		}
+		return new byte[arraySize];
+	}
+
+	/** Returns array to pool. Arrays of foreign size are ignored. */
+	public void release(byte[] array) {
+		if (array == null || array.length != arraySize) return;
+
+		synchronized (arrays) {
+			if (count < arrays.length) {
+				arrays[count++] = array;
+			}
+		}
+	}
+
+	public int getArraySize() {
+		return arraySize;
+	}
+}
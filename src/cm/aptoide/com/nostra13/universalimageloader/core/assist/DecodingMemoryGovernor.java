@@ -0,0 +1,109 @@
+package cm.aptoide.com.nostra13.universalimageloader.core.assist;
+
+import java.util.LinkedList;
+
+import android.graphics.Bitmap;
+
+/**
+ * Admission controller for image decoding. Every decoding declares predicted size of its bitmap (it's known after
+ * decoding of image bounds) and starts only when this size fits into budget of memory for decodings which are in
+ * progress. So several huge images aren't decoded at the same time and {@link OutOfMemoryError} is prevented instead
+ * of being handled.<br />
+ * Decoding which is larger than the whole budget is started when no other decoding is in progress. Waiting decodings
+ * are admitted in order of arrival, so large decoding isn't starved by small ones.
+ */
+public class DecodingMemoryGovernor {
+
+	private final long budget;
+
+	/** Guarded by "this" */
+	private long inFlightBytes;
+	/** Decodings which wait for memory in order of arrival. Guarded by "this" */
+	private final LinkedList<Object> waiters = new LinkedList<Object>();
+
+	/** @param budget Max summary size (in bytes) of bitmaps which are decoded at the same time */
+	public DecodingMemoryGovernor(long budget) {
+		if (budget <= 0) throw new IllegalArgumentException("budget must be positive");
+
+		this.budget = budget;
+	}
+
+	/**
+	 * Waits until decoding of bitmap of incoming size fits into budget and reserves memory for it. Reserved memory must
+	 * be {@linkplain #release(long) released} after decoding. Thread which already holds reserved memory mustn't call
+	 * this method: it should release its memory and acquire the new total, otherwise it can wait for itself.
+	 *
+	 * @throws InterruptedException if current thread was interrupted while waiting
+	 */
+	public synchronized void acquire(long bytes) throws InterruptedException {
+		if (waiters.isEmpty() && fits(bytes)) {
+			inFlightBytes += bytes;
+			return;
+		}
+
+		Object waiter = new Object();
+		waiters.addLast(waiter);
+		try {
+			while (waiters.getFirst() != waiter || !fits(bytes)) {
+				wait();
+			}
+		} finally {
+			waiters.remove(waiter);
+			// Next waiter became head of queue
+			notifyAll();
+		}
+		inFlightBytes += bytes;
+	}
+
+	private boolean fits(long bytes) {
+		return inFlightBytes == 0 || inFlightBytes + bytes <= budget;
+	}
+
+	/** Releases memory which was reserved by {@link #acquire(long)} */
+	public synchronized void release(long bytes) {
+		inFlightBytes -= bytes;
+		notifyAll();
+	}
+
+	/** Returns max summary size (in bytes) of bitmaps which are decoded at the same time */
+	public long getBudget() {
+		return budget;
+	}
+
+	/** Returns summary size (in bytes) of bitmaps which are decoded at this moment */
+	public synchronized long getInFlightBytes() {
+		return inFlightBytes;
+	}
+
+	/** Returns number of decodings which are waiting for memory */
+	public synchronized int getQueuedDecodeCount() {
+		return waiters.size();
+	}
+
+	/**
+	 * Predicts size (in bytes) of bitmap which will be decoded from image of incoming size
+	 *
+	 * @param imageWidth Width of original image
+	 * @param imageHeight Height of original image
+	 * @param sampleSize {@link android.graphics.BitmapFactory.Options#inSampleSize Sample size} of decoding
+	 * @param config Config of decoded bitmap
+	 */
+	public static long predictBitmapBytes(int imageWidth, int imageHeight, int sampleSize, Bitmap.Config config) {
+		if (imageWidth <= 0 || imageHeight <= 0) return 0;
+		if (sampleSize < 1) sampleSize = 1;
+
+		long width = (imageWidth + sampleSize - 1) / sampleSize;
+		long height = (imageHeight + sampleSize - 1) / sampleSize;
+		return width * height * getBytesPerPixel(config);
+	}
+
+	private static int getBytesPerPixel(Bitmap.Config config) {
+		if (config == Bitmap.Config.ALPHA_8) {
+			return 1;
+		} else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+			return 2;
+		} else {
+			return 4;
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package cm.aptoide.com.nostra13.universalimageloader.core.assist;
+
+import cm.aptoide.com.nostra13.universalimageloader.core.ImageLoader;
+
+/**
+ * Listener for measurements of image loading. Methods are called on loading threads right after measurement, so they
+ * should return quickly.
+ *
+ * @see ImageLoader#setStatsListener(ImageLoaderStatsListener)
+ * @see ImageLoader#getStats()
+ */
+public interface ImageLoaderStatsListener {
+
+	/**
+	 * Is called when network stream of image was closed
+	 *
+	 * @param uri Image URI
+	 * @param bytes Number of bytes which were read from network stream
+	 * @param durationMillis Time from request sending to closing of stream (it includes decoding of image if image is
+	 *            decoded from network stream)
+	 */
+	void onImageDownloaded(String uri, long bytes, long durationMillis);
+
+	/**
+	 * Is called when image was decoded
+	 *
+	 * @param memoryCacheKey Memory cache key of image
+	 * @param bitmapBytes Size of decoded bitmap (in bytes)
+	 * @param durationMillis Duration of decoding
+	 */
+	void onImageDecoded(String memoryCacheKey, long bitmapBytes, long durationMillis);
+}
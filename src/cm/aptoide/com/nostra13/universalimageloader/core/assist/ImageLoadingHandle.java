@@ -0,0 +1,28 @@
+package cm.aptoide.com.nostra13.universalimageloader.core.assist;
+
+import cm.aptoide.com.nostra13.universalimageloader.core.ImageLoader;
+
+/**
+ * Handle of scheduled image loading task. Is returned by {@link ImageLoader#displayImage(String, android.widget.ImageView)
+ * ImageLoader.displayImage(...)} and {@link ImageLoader#loadImage(android.content.Context, String, ImageLoadingListener)
+ * ImageLoader.loadImage(...)} methods. Handle of
+ * {@linkplain ImageLoader#prefetch(java.util.Collection, ImageSize, PrefetchTarget) prefetching} cancels the whole
+ * batch of prefetched images.
+ *
+ * @see ImageLoader#cancelDisplayTask(android.widget.ImageView)
+ */
+public interface ImageLoadingHandle {
+
+	/**
+	 * Cancels loading task. If task is waiting in queue then it won't be executed at all, if task is running then it's
+	 * stopped at nearest check point and loaded image won't be displayed.<br />
+	 * {@link ImageLoadingListener#onLoadingCancelled()} is fired once (on UI thread).
+	 *
+	 * @return <b>true</b> - if task was cancelled by this call; <b>false</b> - if task was already cancelled or
+	 *         finished
+	 */
+	boolean cancel();
+
+	/** Returns <b>true</b> if task was cancelled */
+	boolean isCancelled();
+}
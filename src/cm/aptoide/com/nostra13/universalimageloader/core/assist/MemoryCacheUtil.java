@@ -7,6 +7,7 @@ import java.util.List;
 import android.graphics.Bitmap;
 
 import cm.aptoide.com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import cm.aptoide.com.nostra13.universalimageloader.cache.memory.impl.UriIndexedMemoryCache;
 import cm.aptoide.com.nostra13.universalimageloader.core.ImageLoaderConfiguration;
 
 
@@ -17,28 +18,51 @@ import cm.aptoide.com.nostra13.universalimageloader.core.ImageLoaderConfiguratio
  */
 public final class MemoryCacheUtil {
 
-	private static final String URI_AND_SIZE_SEPARATOR = "_";
-	private static final String MEMORY_CACHE_KEY_FORMAT = "%1$s" + URI_AND_SIZE_SEPARATOR + "%2$dx%3$d";
+	private static final char URI_AND_SIZE_SEPARATOR = '_';
+	private static final char WIDTH_AND_HEIGHT_SEPARATOR = 'x';
+	/** Max length of size part of key ("_" + 2 int values + "x") */
+	private static final int MAX_SIZE_PART_LENGTH = 24;
 
 	private MemoryCacheUtil() {
 	}
 
 	/**
 	 * Generates key for memory cache for incoming image (URI + size).<br />
-	 * Pattern for cache key - {@value #MEMORY_CACHE_KEY_FORMAT}, where (1) - image URI, (2) - image width, (3) - image
-	 * height.
+	 * Pattern for cache key - <b>[imageUri]_[width]x[height]</b>.
 	 */
 	public static String generateKey(String imageUri, ImageSize targetSize) {
-		return String.format(MEMORY_CACHE_KEY_FORMAT, imageUri, targetSize.getWidth(), targetSize.getHeight());
+		StringBuilder key = new StringBuilder(imageUri.length() + MAX_SIZE_PART_LENGTH);
+		key.append(imageUri).append(URI_AND_SIZE_SEPARATOR);
+		key.append(targetSize.getWidth()).append(WIDTH_AND_HEIGHT_SEPARATOR).append(targetSize.getHeight());
+		return key.toString();
 	}
 
+	/** Returns image URI which incoming memory cache key was {@linkplain #generateKey(String, ImageSize) generated} for */
+	public static String getImageUri(String memoryCacheKey) {
+		return memoryCacheKey.substring(0, getImageUriLength(memoryCacheKey));
+	}
+
+	private static int getImageUriLength(String memoryCacheKey) {
+		int separatorIndex = memoryCacheKey.lastIndexOf(URI_AND_SIZE_SEPARATOR);
+		return separatorIndex < 0 ? memoryCacheKey.length() : separatorIndex;
+	}
+
+	/** Creates comparator which considers keys of the same image URI as equal. Keys are compared without copying. */
 	public static Comparator<String> createFuzzyKeyComparator() {
 		return new Comparator<String>() {
 			@Override
 			public int compare(String key1, String key2) {
-				String imageUri1 = key1.substring(0, key1.lastIndexOf(URI_AND_SIZE_SEPARATOR));
-				String imageUri2 = key2.substring(0, key2.lastIndexOf(URI_AND_SIZE_SEPARATOR));
-				return imageUri1.compareTo(imageUri2);
+				int length1 = getImageUriLength(key1);
+				int length2 = getImageUriLength(key2);
+				int length = Math.min(length1, length2);
+				for (int i = 0; i < length; i++) {
+					char c1 = key1.charAt(i);
+					char c2 = key2.charAt(i);
+					if (c1 != c2) {
+						return c1 - c2;
+					}
+				}
+				return length1 - length2;
 			}
 		};
 	}
@@ -51,9 +75,10 @@ public final class MemoryCacheUtil {
 	 */
 	public static List<Bitmap> findCachedBitmapsForImageUri(String imageUri, MemoryCacheAware<String, Bitmap> memoryCache) {
 		List<Bitmap> values = new ArrayList<Bitmap>();
-		for (String key : memoryCache.keys()) {
-			if (key.startsWith(imageUri)) {
-				values.add(memoryCache.get(key));
+		for (String key : findCacheKeysForImageUri(imageUri, memoryCache)) {
+			Bitmap bitmap = memoryCache.get(key);
+			if (bitmap != null) {
+				values.add(bitmap);
 			}
 		}
 		return values;
@@ -63,12 +88,18 @@ public final class MemoryCacheUtil {
 	 * Searches all keys in memory cache which are corresponded to incoming URI.<br />
 	 * <b>Note:</b> Memory cache can contain multiple sizes of the same image if only you didn't set
 	 * {@link ImageLoaderConfiguration.Builder#denyCacheImageMultipleSizesInMemory()
-	 * denyCacheImageMultipleSizesInMemory()} option in {@linkplain ImageLoaderConfiguration configuration}
+	 * denyCacheImageMultipleSizesInMemory()} option in {@linkplain ImageLoaderConfiguration configuration}<br />
+	 * Keys are taken from index if memory cache is {@link UriIndexedMemoryCache} (such keys can be already evicted from
+	 * cache), otherwise all cache keys are scanned.
 	 */
 	public static List<String> findCacheKeysForImageUri(String imageUri, MemoryCacheAware<String, Bitmap> memoryCache) {
+		if (memoryCache instanceof UriIndexedMemoryCache) {
+			return ((UriIndexedMemoryCache) memoryCache).keysForImageUri(imageUri);
+		}
+
 		List<String> values = new ArrayList<String>();
 		for (String key : memoryCache.keys()) {
-			if (key.startsWith(imageUri)) {
+			if (isKeyOfImageUri(key, imageUri)) {
 				values.add(key);
 			}
 		}
@@ -82,14 +113,13 @@ public final class MemoryCacheUtil {
 	 * denyCacheImageMultipleSizesInMemory()} option in {@linkplain ImageLoaderConfiguration configuration}
 	 */
 	public static void removeFromCache(String imageUri, MemoryCacheAware<String, Bitmap> memoryCache) {
-		List<String> keysToRemove = new ArrayList<String>();
-		for (String key : memoryCache.keys()) {
-			if (key.startsWith(imageUri)) {
-				keysToRemove.add(key);
-			}
-		}
-		for (String keyToRemove : keysToRemove) {
+		for (String keyToRemove : findCacheKeysForImageUri(imageUri, memoryCache)) {
 			memoryCache.remove(keyToRemove);
 		}
 	}
+
+	private static boolean isKeyOfImageUri(String key, String imageUri) {
+		return key.length() > imageUri.length() && key.charAt(imageUri.length()) == URI_AND_SIZE_SEPARATOR
+				&& key.startsWith(imageUri) && key.indexOf(URI_AND_SIZE_SEPARATOR, imageUri.length() + 1) < 0;
+	}
 }
@@ -0,0 +1,178 @@
+package cm.aptoide.com.nostra13.universalimageloader.core.assist;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import cm.aptoide.com.nostra13.universalimageloader.core.download.CacheValidators;
+import cm.aptoide.com.nostra13.universalimageloader.core.download.ContentRange;
+import cm.aptoide.com.nostra13.universalimageloader.utils.FileUtils;
+import cm.aptoide.com.nostra13.universalimageloader.utils.L;
+
+/**
+ * Partially downloaded image file. Content is written into <b>.part</b> file which is renamed to target file only when
+ * image is downloaded completely (and its length matches total length of image reported by server).<br />
+ * If downloading is interrupted then <b>.part</b> file is kept together with validator of image (in <b>.part.meta</b>
+ * file), so downloading can be resumed from the last received byte by HTTP <b>Range</b> request. Partial content
+ * without {@linkplain CacheValidators#getIfRangeValidator() validator} can't be resumed safely, so it's deleted.
+ *
+ * @see cm.aptoide.com.nostra13.universalimageloader.core.download.ImageDownloader#getStreamFromOffset(java.net.URI,
+ *      ContentRange, CacheValidators)
+ */
+public class PartialFile {
+
+	private static final String LOG_INCOMPLETE_FILE = "Downloaded %1$d bytes of %2$d. File isn't saved. [%3$s]";
+
+	private static final String PART_FILE_SUFFIX = ".part";
+	private static final String META_FILE_SUFFIX = ".meta";
+	private static final String META_ETAG = "etag";
+	private static final String META_LAST_MODIFIED = "lastModified";
+	private static final String META_TOTAL_LENGTH = "totalLength";
+
+	private static final int BUFFER_SIZE = 8 * 1024; // 8 Kb
+
+	private final File targetFile;
+	private final File partFile;
+	private final File metaFile;
+
+	private long totalLength = -1;
+
+	/** @param targetFile File which downloaded image is saved to */
+	public PartialFile(File targetFile) {
+		this.targetFile = targetFile;
+		this.partFile = new File(targetFile.getPath() + PART_FILE_SUFFIX);
+		this.metaFile = new File(partFile.getPath() + META_FILE_SUFFIX);
+	}
+
+	/** Returns number of bytes which were downloaded before and can be resumed (<b>0</b> if there are no such bytes) */
+	public long getLength() {
+		if (!metaFile.exists()) return 0;
+
+		long length = partFile.length();
+		long storedTotalLength = readStoredTotalLength();
+		if (storedTotalLength >= 0 && length >= storedTotalLength) {
+			// Nothing to resume, such file wasn't committed because of failure
+			discard();
+			return 0;
+		}
+		return length;
+	}
+
+	/** Returns validators of partially downloaded image (empty validators if there is no partial content) */
+	public CacheValidators getValidators() {
+		Properties meta = readMeta();
+		if (meta == null) return new CacheValidators();
+
+		return new CacheValidators(meta.getProperty(META_ETAG), meta.getProperty(META_LAST_MODIFIED), -1);
+	}
+
+	/**
+	 * Opens partial file for writing of received content. Content is appended to partial file if it continues downloaded
+	 * bytes, otherwise partial file is rewritten. Validators and total length of image are stored for resuming.
+	 * 
+	 * @param range Range of received content
+	 * @param validators Validators of received image
+	 * @throws IOException if received content doesn't continue downloaded bytes or file can't be opened
+	 */
+	public OutputStream openForWriting(ContentRange range, CacheValidators validators) throws IOException {
+		boolean append = range.getOffset() > 0;
+		if (append && range.getOffset() != getLength()) {
+			discard();
+			throw new IOException("Received content (from byte " + range.getOffset() + ") doesn't continue partial file " + partFile);
+		}
+		totalLength = range.getTotalLength();
+		if (append && totalLength < 0) {
+			// Server didn't report total length in response for resumed downloading, so stored length is used
+			totalLength = readStoredTotalLength();
+		}
+		if (validators.getIfRangeValidator() != null) {
+			writeMeta(validators);
+		} else {
+			metaFile.delete();
+		}
+		return new BufferedOutputStream(new FileOutputStream(partFile, append), BUFFER_SIZE);
+	}
+
+	/**
+	 * Renames completely downloaded partial file to target file. Partial file isn't renamed if its length doesn't match
+	 * total length of image: shorter file is kept for resuming, longer file is deleted.
+	 * 
+	 * @return <b>true</b> - if image was saved in target file
+	 */
+	public boolean commit() {
+		if (totalLength >= 0 && partFile.length() != totalLength) {
+			L.w(LOG_INCOMPLETE_FILE, partFile.length(), totalLength, targetFile);
+			if (partFile.length() < totalLength) {
+				keepForResuming();
+			} else {
+				discard();
+			}
+			return false;
+		}
+		metaFile.delete();
+		return FileUtils.commitTempFile(partFile, targetFile);
+	}
+
+	/** Keeps downloaded bytes for resuming of downloading if it's possible, otherwise deletes them */
+	public void keepForResuming() {
+		if (!metaFile.exists()) {
+			partFile.delete();
+		}
+	}
+
+	/** Deletes downloaded bytes */
+	public void discard() {
+		partFile.delete();
+		metaFile.delete();
+	}
+
+	private long readStoredTotalLength() {
+		Properties meta = readMeta();
+		if (meta == null) return -1;
+
+		try {
+			return Long.parseLong(meta.getProperty(META_TOTAL_LENGTH, "-1"));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/** Returns stored meta data or <b>null</b> if there is no meta data (or it can't be read) */
+	private Properties readMeta() {
+		if (!metaFile.exists()) return null;
+
+		Properties meta = new Properties();
+		try {
+			InputStream is = new FileInputStream(metaFile);
+			try {
+				meta.load(is);
+			} finally {
+				is.close();
+			}
+			return meta;
+		} catch (IOException e) {
+			L.e(e);
+			discard();
+			return null;
+		}
+	}
+
+	private void writeMeta(CacheValidators validators) throws IOException {
+		Properties meta = new Properties();
+		if (validators.getETag() != null) meta.setProperty(META_ETAG, validators.getETag());
+		if (validators.getLastModified() != null) meta.setProperty(META_LAST_MODIFIED, validators.getLastModified());
+		meta.setProperty(META_TOTAL_LENGTH, String.valueOf(totalLength));
+
+		OutputStream os = new FileOutputStream(metaFile);
+		try {
+			meta.store(os, null);
+		} finally {
+			os.close();
+		}
+	}
+}
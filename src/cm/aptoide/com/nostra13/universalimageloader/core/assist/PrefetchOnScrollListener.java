@@ -0,0 +1,139 @@
+package cm.aptoide.com.nostra13.universalimageloader.core.assist;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
+
+import cm.aptoide.com.nostra13.universalimageloader.core.ImageLoader;
+
+/**
+ * {@link PauseOnScrollListener} which also {@linkplain ImageLoader#prefetch(java.util.Collection, ImageSize,
+ * PrefetchTarget) prefetches} images of next list items when list view stops scrolling. Images of N positions which
+ * follow visible items in direction of the last scrolling are prefetched. Previous prefetching is cancelled when new one
+ * is started.
+ */
+public class PrefetchOnScrollListener extends PauseOnScrollListener {
+
+	/** Provides image URIs of list items */
+	public interface ImageUriProvider {
+		/**
+		 * Returns URI of image for item at incoming position of list view (header views are counted too) or <b>null</b>
+		 * if item has no image
+		 */
+		String getImageUri(int position);
+	}
+
+	private final ImageUriProvider uriProvider;
+	private final int prefetchCount;
+	private final ImageSize imageSize;
+	private final ViewScaleType viewScaleType;
+	private final PrefetchTarget target;
+
+	private int firstVisibleItem;
+	private int visibleItemCount;
+	private int totalItemCount;
+	private boolean scrollingUp;
+	private ImageLoadingHandle prefetching;
+
+	/**
+	 * @param pauseOnScroll Whether {@linkplain ImageLoader#pause() pause ImageLoader} during touch scrolling
+	 * @param pauseOnFling Whether {@linkplain ImageLoader#pause() pause ImageLoader} during fling
+	 * @param uriProvider Provider of image URIs of list items
+	 * @param prefetchCount Number of items which are prefetched ahead of visible items
+	 * @param imageSize Size of image views of list items
+	 * @param target Target cache of prefetched images
+	 */
+	public PrefetchOnScrollListener(boolean pauseOnScroll, boolean pauseOnFling, ImageUriProvider uriProvider, int prefetchCount, ImageSize imageSize,
+			PrefetchTarget target) {
+		this(pauseOnScroll, pauseOnFling, uriProvider, prefetchCount, imageSize, null, target, null);
+	}
+
+	/**
+	 * @param pauseOnScroll Whether {@linkplain ImageLoader#pause() pause ImageLoader} during touch scrolling
+	 * @param pauseOnFling Whether {@linkplain ImageLoader#pause() pause ImageLoader} during fling
+	 * @param uriProvider Provider of image URIs of list items
+	 * @param prefetchCount Number of items which are prefetched ahead of visible items
+	 * @param imageSize Size of image views of list items
+	 * @param target Target cache of prefetched images
+	 * @param customListener Your custom {@link OnScrollListener} for {@linkplain AbsListView list view} which also will
+	 *            be get scroll events
+	 */
+	public PrefetchOnScrollListener(boolean pauseOnScroll, boolean pauseOnFling, ImageUriProvider uriProvider, int prefetchCount, ImageSize imageSize,
+			PrefetchTarget target, OnScrollListener customListener) {
+		this(pauseOnScroll, pauseOnFling, uriProvider, prefetchCount, imageSize, null, target, customListener);
+	}
+
+	/**
+	 * @param pauseOnScroll Whether {@linkplain ImageLoader#pause() pause ImageLoader} during touch scrolling
+	 * @param pauseOnFling Whether {@linkplain ImageLoader#pause() pause ImageLoader} during fling
+	 * @param uriProvider Provider of image URIs of list items
+	 * @param prefetchCount Number of items which are prefetched ahead of visible items
+	 * @param imageSize Size of image views of list items
+	 * @param viewScaleType {@linkplain ViewScaleType#fromImageView(android.widget.ImageView) Scale type} of image views
+	 *            of list items. Prefetched images are put into memory cache only if it's defined.
+	 * @param target Target cache of prefetched images
+	 * @param customListener Your custom {@link OnScrollListener} for {@linkplain AbsListView list view} which also will
+	 *            be get scroll events (can be <b>null</b>)
+	 */
+	public PrefetchOnScrollListener(boolean pauseOnScroll, boolean pauseOnFling, ImageUriProvider uriProvider, int prefetchCount, ImageSize imageSize,
+			ViewScaleType viewScaleType, PrefetchTarget target, OnScrollListener customListener) {
+		super(pauseOnScroll, pauseOnFling, customListener);
+		this.uriProvider = uriProvider;
+		this.prefetchCount = prefetchCount;
+		this.imageSize = imageSize;
+		this.viewScaleType = viewScaleType;
+		this.target = target;
+	}
+
+	@Override
+	public void onScrollStateChanged(AbsListView view, int scrollState) {
+		super.onScrollStateChanged(view, scrollState);
+		if (scrollState == OnScrollListener.SCROLL_STATE_IDLE) {
+			prefetchAhead();
+		}
+	}
+
+	@Override
+	public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+		if (firstVisibleItem != this.firstVisibleItem) {
+			scrollingUp = firstVisibleItem < this.firstVisibleItem;
+		}
+		this.firstVisibleItem = firstVisibleItem;
+		this.visibleItemCount = visibleItemCount;
+		this.totalItemCount = totalItemCount;
+		super.onScroll(view, firstVisibleItem, visibleItemCount, totalItemCount);
+	}
+
+	private void prefetchAhead() {
+		if (prefetching != null) {
+			prefetching.cancel();
+			prefetching = null;
+		}
+
+		List<String> uris = new ArrayList<String>(prefetchCount);
+		if (scrollingUp) {
+			int end = Math.max(firstVisibleItem - prefetchCount, 0);
+			for (int position = firstVisibleItem - 1; position >= end; position--) {
+				addImageUri(uris, position);
+			}
+		} else {
+			int start = firstVisibleItem + visibleItemCount;
+			int end = Math.min(start + prefetchCount, totalItemCount);
+			for (int position = start; position < end; position++) {
+				addImageUri(uris, position);
+			}
+		}
+		if (!uris.isEmpty()) {
+			prefetching = ImageLoader.getInstance().prefetch(uris, imageSize, viewScaleType, target);
+		}
+	}
+
+	private void addImageUri(List<String> uris, int position) {
+		String uri = uriProvider.getImageUri(position);
+		if (uri != null) {
+			uris.add(uri);
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package cm.aptoide.com.nostra13.universalimageloader.core.assist;
+
+import cm.aptoide.com.nostra13.universalimageloader.core.ImageLoader;
+
+/**
+ * Defines where {@linkplain ImageLoader#prefetch(java.util.Collection, ImageSize, PrefetchTarget) prefetched} images
+ * are put
+ */
+public enum PrefetchTarget {
+	/** Image is downloaded into disc cache, it isn't decoded */
+	DISC,
+	/**
+	 * Image is downloaded into disc cache, decoded and put into memory cache. Memory cache is used only if scale type
+	 * of views is {@linkplain ImageLoader#prefetch(java.util.Collection, ImageSize, ViewScaleType, PrefetchTarget)
+	 * defined}.
+	 */
+	DISC_AND_MEMORY
+}
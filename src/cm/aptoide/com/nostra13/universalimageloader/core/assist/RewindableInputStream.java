@@ -0,0 +1,137 @@
+package cm.aptoide.com.nostra13.universalimageloader.core.assist;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stream which remembers first bytes read from wrapped stream in bounded buffer (taken from {@link ByteArrayPool}) and
+ * can be {@linkplain #rewind() rewound} to the beginning once. Used to decode image bounds and then image itself from
+ * the same stream without its re-opening.<br />
+ * Stream doesn't support {@link #mark(int)}/{@link #reset()}, so consumers (e.g.
+ * {@link android.graphics.BitmapFactory BitmapFactory}) wrap it in their own buffered stream.
+ */
+public class RewindableInputStream extends FilterInputStream {
+
+	private final ByteArrayPool bufferPool;
+
+	private byte[] buffer;
+	/** Count of bytes stored in buffer */
+	private int count = 0;
+	/** Read position. Position inside buffer if it's less than {@link #count} */
+	private int position = 0;
+	/** Whether read bytes are recorded into buffer */
+	private boolean recording = true;
+
+	public RewindableInputStream(InputStream in, ByteArrayPool bufferPool) {
+		super(in);
+		this.bufferPool = bufferPool;
+		this.buffer = bufferPool.obtain();
+	}
+
+	/**
+	 * Rewinds stream to the beginning.
+	 * 
+	 * @return <b>true</b> - if stream was rewound; <b>false</b> - if more bytes than buffer size were read from stream
+	 *         (or stream was already rewound) so stream can't be rewound.
+	 */
+	public boolean rewind() {
+		if (!recording || buffer == null) {
+			return false;
+		}
+		recording = false;
+		position = 0;
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (position < count) {
+			return buffer[position++] & 0xFF;
+		}
+		int b = in.read();
+		if (b != -1 && recording) {
+			if (count < buffer.length) {
+				buffer[count++] = (byte) b;
+				position = count;
+			} else {
+				recording = false;
+			}
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+
+		if (position < count) {
+			int n = Math.min(len, count - position);
+			System.arraycopy(buffer, position, b, off, n);
+			position += n;
+			return n;
+		}
+		int n = in.read(b, off, len);
+		if (n > 0 && recording) {
+			if (count + n <= buffer.length) {
+				System.arraycopy(b, off, buffer, count, n);
+				count += n;
+				position = count;
+			} else {
+				recording = false;
+			}
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		if (n <= 0) return 0;
+
+		if (position < count) {
+			int skipped = (int) Math.min(n, count - position);
+			position += skipped;
+			return skipped;
+		}
+		if (!recording) {
+			return in.skip(n);
+		}
+		// Skipped bytes must be recorded too
+		byte[] skipBuffer = new byte[(int) Math.min(n, 2048)];
+		int read = read(skipBuffer, 0, skipBuffer.length);
+		return read < 0 ? 0 : read;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (count - position) + in.available();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void mark(int readlimit) {
+		// Not supported
+	}
+
+	@Override
+	public void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	/** Closes wrapped stream and returns buffer to pool */
+	@Override
+	public void close() throws IOException {
+		if (buffer != null) {
+			bufferPool.release(buffer);
+			buffer = null;
+			count = 0;
+			position = 0;
+			recording = false;
+		}
+		super.close();
+	}
+}
@@ -0,0 +1,189 @@
+package cm.aptoide.com.nostra13.universalimageloader.core.assist;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import cm.aptoide.com.nostra13.universalimageloader.core.download.CacheValidators;
+import cm.aptoide.com.nostra13.universalimageloader.core.download.ContentRange;
+import cm.aptoide.com.nostra13.universalimageloader.utils.L;
+
+/**
+ * Stream which writes all bytes read from wrapped stream into file. So image can be decoded from network stream and
+ * saved in disc cache at the same time.<br />
+ * Bytes are written into {@linkplain PartialFile partial file}. On {@link #close()} the rest of wrapped stream is
+ * read (if consumer didn't read it to the end) and partial file is renamed to target file only if the whole stream was
+ * read successfully, so partially written file never appears in cache. If stream is interrupted or consumer
+ * {@linkplain #abort() aborted} reading then received bytes are kept for resuming of downloading (if it's possible). If file can't be written (e.g. disc is full) then stream
+ * continues to provide bytes for consumer, just file isn't saved.
+ */
+public class TeeInputStream extends FilterInputStream {
+
+	private static final int BUFFER_SIZE = 8 * 1024; // 8 Kb
+
+	private final PartialFile partialFile;
+	/** Expected number of bytes in stream or <b>-1</b> if it's unknown */
+	private final long expectedLength;
+	private long readLength = 0;
+
+	/** Output stream of partial file. Is <b>null</b> if file writing failed. */
+	private OutputStream fileStream;
+	private boolean endOfStream = false;
+	private boolean aborted = false;
+	private boolean closed = false;
+	private boolean committed = false;
+
+	/**
+	 * @param in Stream to read from
+	 * @param partialFile File to save stream content to
+	 * @param range Range of image content which is provided by stream
+	 * @param validators Validators of image
+	 */
+	public TeeInputStream(InputStream in, PartialFile partialFile, ContentRange range, CacheValidators validators) {
+		super(in);
+		this.partialFile = partialFile;
+		this.expectedLength = range.getTotalLength() < 0 ? -1 : range.getTotalLength() - range.getOffset();
+		try {
+			fileStream = partialFile.openForWriting(range, validators);
+		} catch (IOException e) {
+			L.e(e);
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = in.read();
+		if (b == -1) {
+			endOfStream = true;
+			return b;
+		}
+		readLength++;
+		if (fileStream != null) {
+			try {
+				fileStream.write(b);
+			} catch (IOException e) {
+				onWriteFailed(e);
+			}
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int count) throws IOException {
+		int readCount = in.read(buffer, offset, count);
+		if (readCount == -1) {
+			endOfStream = true;
+			return readCount;
+		}
+		readLength += readCount;
+		if (readCount > 0 && fileStream != null) {
+			try {
+				fileStream.write(buffer, offset, readCount);
+			} catch (IOException e) {
+				onWriteFailed(e);
+			}
+		}
+		return readCount;
+	}
+
+	/** Skipped bytes are read from wrapped stream, so they are written into file too */
+	@Override
+	public long skip(long byteCount) throws IOException {
+		byte[] buffer = new byte[(int) Math.min(byteCount, BUFFER_SIZE)];
+		long skipped = 0;
+		while (skipped < byteCount) {
+			int readCount = read(buffer, 0, (int) Math.min(byteCount - skipped, buffer.length));
+			if (readCount == -1) break;
+			skipped += readCount;
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	/**
+	 * Marks that consumer doesn't need the rest of stream (e.g. decoding failed or task was cancelled), so
+	 * {@link #close()} doesn't download it. Received bytes are kept for resuming.
+	 */
+	public void abort() {
+		aborted = true;
+	}
+
+	/**
+	 * Reads the rest of wrapped stream (into file if it's still written) unless reading was {@linkplain #abort()
+	 * aborted}, closes wrapped stream and saves file if the whole stream was read.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+
+		try {
+			if (!endOfStream && !aborted) {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				while (read(buffer, 0, BUFFER_SIZE) != -1) {
+					// Drain stream into file
+				}
+			}
+		} catch (IOException e) {
+			// Stream wasn't read completely, file won't be saved
+		} finally {
+			in.close();
+			finishFile();
+		}
+	}
+
+	/** Returns <b>true</b> if stream content was completely saved into target file */
+	public boolean isCommitted() {
+		return committed;
+	}
+
+	/**
+	 * Returns <b>true</b> if wrapped stream was read to the end and its length matches length of image reported by
+	 * server (i.e. consumer got complete content)
+	 */
+	public boolean isStreamCompleted() {
+		return endOfStream && (expectedLength < 0 || readLength == expectedLength);
+	}
+
+	private void finishFile() {
+		if (fileStream == null) return;
+
+		boolean written = endOfStream;
+		try {
+			fileStream.close();
+		} catch (IOException e) {
+			written = false;
+		}
+		fileStream = null;
+		if (written) {
+			committed = partialFile.commit();
+		} else {
+			partialFile.keepForResuming();
+		}
+	}
+
+	private void onWriteFailed(IOException e) {
+		L.e(e);
+		try {
+			fileStream.close();
+		} catch (IOException closeException) {
+			// Do nothing
+		}
+		fileStream = null;
+		partialFile.discard();
+	}
+}
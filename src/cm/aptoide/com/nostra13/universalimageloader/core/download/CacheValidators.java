@@ -0,0 +1,98 @@
+package cm.aptoide.com.nostra13.universalimageloader.core.download;
+
+/**
+ * HTTP validators of cached image: <b>ETag</b>, <b>Last-Modified</b> and <b>max-age</b> of <b>Cache-Control</b>
+ * response headers. They're stored together with cached image and allow to revalidate expired image by conditional
+ * request instead of its downloading.
+ *
+ * @see ImageDownloader#getStreamIfModified(java.net.URI, CacheValidators)
+ * @see cm.aptoide.com.nostra13.universalimageloader.cache.disc.RevalidationAware
+ */
+public class CacheValidators {
+
+	private static final String MAX_AGE_DIRECTIVE = "max-age=";
+	private static final String WEAK_ETAG_PREFIX = "W/";
+
+	private String eTag;
+	private String lastModified;
+	private long maxAge = -1;
+
+	public CacheValidators() {
+	}
+
+	/**
+	 * @param eTag Value of <b>ETag</b> header (can be null)
+	 * @param lastModified Value of <b>Last-Modified</b> header (can be null)
+	 * @param maxAge Max age of image (in seconds) or <b>-1</b> if it's unknown
+	 */
+	public CacheValidators(String eTag, String lastModified, long maxAge) {
+		this.eTag = eTag;
+		this.lastModified = lastModified;
+		this.maxAge = maxAge;
+	}
+
+	/** Returns value of <b>ETag</b> header or <b>null</b> */
+	public String getETag() {
+		return eTag;
+	}
+
+	/** Returns value of <b>Last-Modified</b> header or <b>null</b> */
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	/** Returns max age of image (in seconds) or <b>-1</b> if server didn't define it */
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/** Returns <b>true</b> if conditional request can be sent with these validators */
+	public boolean canRevalidate() {
+		return eTag != null || lastModified != null;
+	}
+
+	/**
+	 * Returns validator for <b>If-Range</b> header (strong ETag or Last-Modified date) or <b>null</b> if partially
+	 * downloaded image can't be safely resumed with these validators
+	 */
+	public String getIfRangeValidator() {
+		if (eTag != null && !eTag.startsWith(WEAK_ETAG_PREFIX)) {
+			return eTag;
+		}
+		return lastModified;
+	}
+
+	/** Replaces validators by headers of full response (status 200) */
+	public void set(String eTag, String lastModified, String cacheControl) {
+		this.eTag = eTag;
+		this.lastModified = lastModified;
+		this.maxAge = parseMaxAge(cacheControl);
+	}
+
+	/** Updates validators by headers of <b>304 Not Modified</b> response. Headers which weren't sent don't change. */
+	public void refresh(String eTag, String lastModified, String cacheControl) {
+		if (eTag != null) this.eTag = eTag;
+		if (lastModified != null) this.lastModified = lastModified;
+		if (cacheControl != null) this.maxAge = parseMaxAge(cacheControl);
+	}
+
+	private static long parseMaxAge(String cacheControl) {
+		if (cacheControl == null) return -1;
+
+		int start = cacheControl.indexOf(MAX_AGE_DIRECTIVE);
+		if (start < 0) return -1;
+
+		start += MAX_AGE_DIRECTIVE.length();
+		int end = start;
+		while (end < cacheControl.length() && Character.isDigit(cacheControl.charAt(end))) {
+			end++;
+		}
+		if (end == start) return -1;
+
+		try {
+			return Long.parseLong(cacheControl.substring(start, end));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
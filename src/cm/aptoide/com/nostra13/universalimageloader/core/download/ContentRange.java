@@ -0,0 +1,63 @@
+package cm.aptoide.com.nostra13.universalimageloader.core.download;
+
+/**
+ * Range of image bytes. Before request it defines offset from which image is requested, after response it's updated
+ * by range which was received from server.
+ *
+ * @see ImageDownloader#getStreamFromOffset(java.net.URI, ContentRange, CacheValidators)
+ */
+public class ContentRange {
+
+	private static final String BYTES_UNIT = "bytes ";
+
+	private long offset;
+	private long totalLength = -1;
+
+	/** @param offset Offset (in bytes) of requested content */
+	public ContentRange(long offset) {
+		this.offset = offset;
+	}
+
+	/** Returns offset (in bytes) of the first byte of content */
+	public long getOffset() {
+		return offset;
+	}
+
+	/** Returns total length (in bytes) of image or <b>-1</b> if it's unknown */
+	public long getTotalLength() {
+		return totalLength;
+	}
+
+	/**
+	 * Sets range of received content
+	 * 
+	 * @param offset Offset (in bytes) of the first byte of content
+	 * @param totalLength Total length (in bytes) of image or <b>-1</b> if it's unknown
+	 */
+	public void set(long offset, long totalLength) {
+		this.offset = offset;
+		this.totalLength = totalLength;
+	}
+
+	/**
+	 * Sets range of received content by value of <b>Content-Range</b> header (e.g. <b>"bytes 1000-4999/5000"</b>)
+	 * 
+	 * @return <b>false</b> - if header value can't be parsed
+	 */
+	public boolean parse(String contentRange) {
+		if (contentRange == null || !contentRange.startsWith(BYTES_UNIT)) return false;
+
+		int dashIndex = contentRange.indexOf('-', BYTES_UNIT.length());
+		int slashIndex = contentRange.indexOf('/', BYTES_UNIT.length());
+		if (dashIndex < 0 || slashIndex < dashIndex) return false;
+
+		try {
+			long start = Long.parseLong(contentRange.substring(BYTES_UNIT.length(), dashIndex).trim());
+			String total = contentRange.substring(slashIndex + 1).trim();
+			set(start, "*".equals(total) ? -1 : Long.parseLong(total));
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+}
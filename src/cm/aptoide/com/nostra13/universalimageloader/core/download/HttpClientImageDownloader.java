@@ -4,8 +4,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.entity.BufferedHttpEntity;
@@ -26,4 +28,91 @@ public class HttpClientImageDownloader extends ImageDownloader {
 		BufferedHttpEntity bufHttpEntity = new BufferedHttpEntity(entity);
 		return bufHttpEntity.getContent();
 	}
+
+	@Override
+	protected InputStream getStreamFromNetworkIfModified(URI imageUri, CacheValidators validators) throws IOException {
+		HttpGet httpRequest = new HttpGet(imageUri.toString());
+		if (validators.getETag() != null) {
+			httpRequest.addHeader(HEADER_IF_NONE_MATCH, validators.getETag());
+		}
+		if (validators.getLastModified() != null) {
+			httpRequest.addHeader(HEADER_IF_MODIFIED_SINCE, validators.getLastModified());
+		}
+		HttpResponse response = httpClient.execute(httpRequest);
+		HttpEntity entity = response.getEntity();
+
+		String eTag = getHeaderValue(response, HEADER_ETAG);
+		String lastModified = getHeaderValue(response, HEADER_LAST_MODIFIED);
+		String cacheControl = getHeaderValue(response, HEADER_CACHE_CONTROL);
+		int statusCode = response.getStatusLine().getStatusCode();
+		if (statusCode == HttpStatus.SC_NOT_MODIFIED) {
+			validators.refresh(eTag, lastModified, cacheControl);
+			if (entity != null) {
+				entity.consumeContent();
+			}
+			return null;
+		}
+		if (entity == null || statusCode != HttpStatus.SC_OK) {
+			// Cached image and its validators are kept
+			rejectResponse(response, entity, imageUri);
+		}
+		validators.set(eTag, lastModified, cacheControl);
+		BufferedHttpEntity bufHttpEntity = new BufferedHttpEntity(entity);
+		return bufHttpEntity.getContent();
+	}
+
+	@Override
+	protected InputStream getStreamFromNetworkFromOffset(URI imageUri, ContentRange range, CacheValidators validators) throws IOException {
+		HttpGet httpRequest = new HttpGet(imageUri.toString());
+		String ifRangeValidator = validators.getIfRangeValidator();
+		if (range.getOffset() > 0 && ifRangeValidator != null) {
+			// Range is counted in bytes of not encoded image
+			httpRequest.addHeader(HEADER_ACCEPT_ENCODING, ENCODING_IDENTITY);
+			httpRequest.addHeader(HEADER_RANGE, "bytes=" + range.getOffset() + "-");
+			httpRequest.addHeader(HEADER_IF_RANGE, ifRangeValidator);
+		}
+		HttpResponse response = httpClient.execute(httpRequest);
+		HttpEntity entity = response.getEntity();
+
+		String eTag = getHeaderValue(response, HEADER_ETAG);
+		String lastModified = getHeaderValue(response, HEADER_LAST_MODIFIED);
+		String cacheControl = getHeaderValue(response, HEADER_CACHE_CONTROL);
+		int statusCode = response.getStatusLine().getStatusCode();
+		if (statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && range.getOffset() > 0) {
+			// Partial content is stale, the whole image is downloaded
+			if (entity != null) {
+				entity.consumeContent();
+			}
+			range.set(0, -1);
+			return getStreamFromNetworkFromOffset(imageUri, range, validators);
+		}
+		if (entity == null || (statusCode != HttpStatus.SC_OK && statusCode != HttpStatus.SC_PARTIAL_CONTENT)) {
+			rejectResponse(response, entity, imageUri);
+		}
+		if (statusCode == HttpStatus.SC_PARTIAL_CONTENT) {
+			if (!range.parse(getHeaderValue(response, HEADER_CONTENT_RANGE))) {
+				entity.consumeContent();
+				throw new IOException("Partial content without valid Content-Range: " + imageUri);
+			}
+			validators.refresh(eTag, lastModified, cacheControl);
+		} else {
+			range.set(0, entity.getContentLength());
+			validators.set(eTag, lastModified, cacheControl);
+		}
+		BufferedHttpEntity bufHttpEntity = new BufferedHttpEntity(entity);
+		return bufHttpEntity.getContent();
+	}
+
+	/** Consumes entity of unexpected response (so error page isn't saved as image) and throws exception */
+	private static void rejectResponse(HttpResponse response, HttpEntity entity, URI imageUri) throws IOException {
+		if (entity != null) {
+			entity.consumeContent();
+		}
+		throw new IOException("Unexpected response " + response.getStatusLine() + ": " + imageUri);
+	}
+
+	private static String getHeaderValue(HttpResponse response, String name) {
+		Header header = response.getFirstHeader(name);
+		return header == null ? null : header.getValue();
+	}
 }
@@ -20,18 +20,82 @@ public abstract class ImageDownloader {
 
 	protected static final int BUFFER_SIZE = 8 * 1024; // 8 Kb
 
+	protected static final String HEADER_ETAG = "ETag";
+	protected static final String HEADER_LAST_MODIFIED = "Last-Modified";
+	protected static final String HEADER_CACHE_CONTROL = "Cache-Control";
+	protected static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+	protected static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+	protected static final String HEADER_RANGE = "Range";
+	protected static final String HEADER_IF_RANGE = "If-Range";
+	protected static final String HEADER_CONTENT_RANGE = "Content-Range";
+	protected static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+	/** Ranges are counted in bytes of not encoded image, so compressed responses aren't accepted for range requests */
+	protected static final String ENCODING_IDENTITY = "identity";
+
 	/** Retrieves {@link InputStream} of image by URI. Image can be located as in the network and on local file system. */
 	public InputStream getStream(URI imageUri) throws IOException {
-		String scheme = imageUri.getScheme();
-		if (PROTOCOL_HTTP.equals(scheme) || PROTOCOL_HTTPS.equals(scheme) || PROTOCOL_FTP.equals(scheme)) {
+		if (isNetworkUri(imageUri)) {
 			return getStreamFromNetwork(imageUri);
-		} else if (PROTOCOL_FILE.equals(scheme)) {
+		} else if (PROTOCOL_FILE.equals(imageUri.getScheme())) {
 			return getStreamFromFile(imageUri);
 		} else {
 			return getStreamFromOtherSource(imageUri);
 		}
 	}
 
+	/** Returns <b>true</b> if image of incoming URI is retrieved from network */
+	public static boolean isNetworkUri(URI imageUri) {
+		String scheme = imageUri.getScheme();
+		return PROTOCOL_HTTP.equals(scheme) || PROTOCOL_HTTPS.equals(scheme) || PROTOCOL_FTP.equals(scheme);
+	}
+
+	/**
+	 * Retrieves {@link InputStream} of image by URI if image was modified since it was cached. Conditional request is
+	 * sent for HTTP images if incoming validators {@linkplain CacheValidators#canRevalidate() allow it}, other images
+	 * are always retrieved.<br />
+	 * Incoming validators are updated by headers of response, so they can be stored with cached image.
+	 * 
+	 * @param imageUri URI of image
+	 * @param validators Validators of cached image. Pass empty validators to download image unconditionally and to get
+	 *            validators of downloaded image.
+	 * @return Stream of image or <b>null</b> if server answered that image wasn't modified
+	 */
+	public InputStream getStreamIfModified(URI imageUri, CacheValidators validators) throws IOException {
+		String scheme = imageUri.getScheme();
+		if (PROTOCOL_HTTP.equals(scheme) || PROTOCOL_HTTPS.equals(scheme)) {
+			return getStreamFromNetworkIfModified(imageUri, validators);
+		} else {
+			return getStream(imageUri);
+		}
+	}
+
+	/**
+	 * Retrieves {@link InputStream} of image bytes starting from offset of incoming range. Used for resuming of
+	 * interrupted downloading: HTTP <b>Range</b> request is sent with <b>If-Range</b> condition (built from incoming
+	 * validators), so server returns the whole image if image was modified since its partial downloading. Other images
+	 * are always retrieved from the beginning.<br />
+	 * Incoming range is updated by response: its offset becomes offset of the first byte of returned stream (<b>0</b> if
+	 * the whole image is returned) and total length of image is set (if it's known). Incoming validators are updated
+	 * by headers of response.<br />
+	 * If server can't satisfy requested range (partial content is longer than image, e.g. image was changed without
+	 * change of its validator) then the whole image is requested again.
+	 * 
+	 * @param imageUri URI of image
+	 * @param range Range of requested content. Offset <b>0</b> means the whole image.
+	 * @param validators Validators of partially downloaded image
+	 * @return Stream of image content
+	 */
+	public InputStream getStreamFromOffset(URI imageUri, ContentRange range, CacheValidators validators) throws IOException {
+		String scheme = imageUri.getScheme();
+		if (PROTOCOL_HTTP.equals(scheme) || PROTOCOL_HTTPS.equals(scheme)) {
+			return getStreamFromNetworkFromOffset(imageUri, range, validators);
+		} else {
+			range.set(0, -1);
+			validators.set(null, null, null);
+			return getStream(imageUri);
+		}
+	}
+
 	/**
 	 * Retrieves {@link InputStream} of image by URI from other source. Should be overriden by successors to implement
 	 * image downloading from special sources (not local file and not web URL).
@@ -43,8 +107,31 @@ public abstract class ImageDownloader {
 	/** Retrieves {@link InputStream} of image by URI (image is located in the network) */
 	protected abstract InputStream getStreamFromNetwork(URI imageUri) throws IOException;
 
+	/**
+	 * Retrieves {@link InputStream} of image by URI (image is located in the network) if image was modified. Should be
+	 * overridden by successors which support conditional requests, by default image is always retrieved.
+	 * 
+	 * @see #getStreamIfModified(URI, CacheValidators)
+	 */
+	protected InputStream getStreamFromNetworkIfModified(URI imageUri, CacheValidators validators) throws IOException {
+		return getStreamFromNetwork(imageUri);
+	}
+
+	/**
+	 * Retrieves {@link InputStream} of image bytes by URI (image is located in the network) starting from offset of
+	 * incoming range. Should be overridden by successors which support range requests, by default the whole image is
+	 * retrieved.
+	 * 
+	 * @see #getStreamFromOffset(URI, ContentRange, CacheValidators)
+	 */
+	protected InputStream getStreamFromNetworkFromOffset(URI imageUri, ContentRange range, CacheValidators validators) throws IOException {
+		range.set(0, -1);
+		validators.set(null, null, null);
+		return getStreamFromNetworkIfModified(imageUri, validators);
+	}
+
 	/** Retrieves {@link InputStream} of image by URI (image is located on the local file system or SD card) */
 	protected InputStream getStreamFromFile(URI imageUri) throws IOException {
 		return new BufferedInputStream(imageUri.toURL().openStream(), BUFFER_SIZE);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,262 @@
+package cm.aptoide.com.nostra13.universalimageloader.core.download;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+
+import cm.aptoide.com.nostra13.universalimageloader.core.assist.FlushedInputStream;
+
+/**
+ * Implementation of ImageDownloader which uses {@link HttpClient} and streams response entity directly to consumer
+ * (unlike {@link HttpClientImageDownloader} it doesn't buffer the whole image in memory). Connections are kept alive
+ * and are reused from pool of {@link ThreadSafeClientConnManager}, compressed responses (gzip) are accepted.<br />
+ * Connection is released when returned stream is closed: it's returned into pool if entity was read to the end,
+ * otherwise request is aborted and connection is closed (so the rest of image isn't downloaded needlessly).<br />
+ * Images are downloaded by network stage, by decoding stage (when expired cached image is revalidated) and by
+ * prefetching thread, so pool size should be equal to
+ * {@linkplain cm.aptoide.com.nostra13.universalimageloader.core.ImageLoaderConfiguration.Builder#threadPoolSize(int)
+ * thread pool size} + {@linkplain cm.aptoide.com.nostra13.universalimageloader.core.ImageLoaderConfiguration.Builder#decodingThreadPoolSize(int)
+ * decoding thread pool size} + 1 for every loading thread to have its own connection. If pool is exhausted then
+ * request waits for free connection not longer than connect timeout.
+ */
+public class StreamingHttpClientImageDownloader extends ImageDownloader {
+
+	/** {@value} */
+	public static final int DEFAULT_HTTP_CONNECT_TIMEOUT = 5 * 1000; // milliseconds
+	/** {@value} */
+	public static final int DEFAULT_HTTP_READ_TIMEOUT = 20 * 1000; // milliseconds
+
+	private static final String ENCODING_GZIP = "gzip";
+
+	private final HttpClient httpClient;
+
+	/** @param maxConnections Size of connection pool */
+	public StreamingHttpClientImageDownloader(int maxConnections) {
+		this(maxConnections, DEFAULT_HTTP_CONNECT_TIMEOUT, DEFAULT_HTTP_READ_TIMEOUT);
+	}
+
+	/**
+	 * @param maxConnections Size of connection pool
+	 * @param connectTimeout Connect timeout (in milliseconds). It also limits waiting for free connection of pool.
+	 * @param readTimeout Read timeout (in milliseconds)
+	 */
+	public StreamingHttpClientImageDownloader(int maxConnections, int connectTimeout, int readTimeout) {
+		this(createHttpClient(maxConnections, connectTimeout, readTimeout));
+	}
+
+	/**
+	 * @param httpClient HTTP client which is used for image downloading. It must be thread-safe (must use
+	 *            {@link ThreadSafeClientConnManager}).
+	 */
+	public StreamingHttpClientImageDownloader(HttpClient httpClient) {
+		this.httpClient = httpClient;
+	}
+
+	private static HttpClient createHttpClient(int maxConnections, int connectTimeout, int readTimeout) {
+		HttpParams params = new BasicHttpParams();
+		HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+		HttpConnectionParams.setConnectionTimeout(params, connectTimeout);
+		HttpConnectionParams.setSoTimeout(params, readTimeout);
+		HttpConnectionParams.setSocketBufferSize(params, BUFFER_SIZE);
+		HttpConnectionParams.setStaleCheckingEnabled(params, true);
+		ConnManagerParams.setMaxTotalConnections(params, maxConnections);
+		ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(maxConnections));
+		// Request doesn't wait for connection of exhausted pool forever
+		ConnManagerParams.setTimeout(params, connectTimeout);
+
+		SchemeRegistry schemeRegistry = new SchemeRegistry();
+		schemeRegistry.register(new Scheme(PROTOCOL_HTTP, PlainSocketFactory.getSocketFactory(), 80));
+		schemeRegistry.register(new Scheme(PROTOCOL_HTTPS, SSLSocketFactory.getSocketFactory(), 443));
+
+		ClientConnectionManager connectionManager = new ThreadSafeClientConnManager(params, schemeRegistry);
+		return new DefaultHttpClient(connectionManager, params);
+	}
+
+	@Override
+	protected InputStream getStreamFromNetwork(URI imageUri) throws IOException {
+		return getStreamFromNetworkIfModified(imageUri, new CacheValidators());
+	}
+
+	@Override
+	protected InputStream getStreamFromNetworkIfModified(URI imageUri, CacheValidators validators) throws IOException {
+		HttpGet httpRequest = new HttpGet(imageUri.toString());
+		httpRequest.addHeader(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+		if (validators.getETag() != null) {
+			httpRequest.addHeader(HEADER_IF_NONE_MATCH, validators.getETag());
+		}
+		if (validators.getLastModified() != null) {
+			httpRequest.addHeader(HEADER_IF_MODIFIED_SINCE, validators.getLastModified());
+		}
+		return execute(httpRequest, imageUri, validators, null);
+	}
+
+	@Override
+	protected InputStream getStreamFromNetworkFromOffset(URI imageUri, ContentRange range, CacheValidators validators) throws IOException {
+		HttpGet httpRequest = new HttpGet(imageUri.toString());
+		String ifRangeValidator = validators.getIfRangeValidator();
+		if (range.getOffset() > 0 && ifRangeValidator != null) {
+			// Range is counted in bytes of not encoded image
+			httpRequest.addHeader(HEADER_ACCEPT_ENCODING, ENCODING_IDENTITY);
+			httpRequest.addHeader(HEADER_RANGE, "bytes=" + range.getOffset() + "-");
+			httpRequest.addHeader(HEADER_IF_RANGE, ifRangeValidator);
+		} else {
+			httpRequest.addHeader(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+		}
+		return execute(httpRequest, imageUri, validators, range);
+	}
+
+	/**
+	 * Executes request and returns stream of response entity
+	 * 
+	 * @param range Range to update by response (for range requests) or <b>null</b>
+	 * @return Stream of image or <b>null</b> if server answered that image wasn't modified
+	 */
+	private InputStream execute(HttpGet httpRequest, URI imageUri, CacheValidators validators, ContentRange range) throws IOException {
+		HttpResponse response = httpClient.execute(httpRequest);
+		HttpEntity entity = response.getEntity();
+
+		String eTag = getHeaderValue(response, HEADER_ETAG);
+		String lastModified = getHeaderValue(response, HEADER_LAST_MODIFIED);
+		String cacheControl = getHeaderValue(response, HEADER_CACHE_CONTROL);
+		int statusCode = response.getStatusLine().getStatusCode();
+		if (statusCode == HttpStatus.SC_NOT_MODIFIED) {
+			validators.refresh(eTag, lastModified, cacheControl);
+			if (entity != null) {
+				entity.consumeContent();
+			}
+			return null;
+		}
+		if (statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && range != null && range.getOffset() > 0) {
+			// Partial content is stale, the whole image is downloaded
+			if (entity != null) {
+				entity.consumeContent();
+			}
+			range.set(0, -1);
+			return getStreamFromNetworkFromOffset(imageUri, range, validators);
+		}
+		if (statusCode >= HttpStatus.SC_MULTIPLE_CHOICES || entity == null) {
+			if (entity != null) {
+				entity.consumeContent();
+			}
+			throw new IOException("Unexpected response " + response.getStatusLine() + ": " + imageUri);
+		}
+		if (statusCode == HttpStatus.SC_PARTIAL_CONTENT) {
+			if (range == null || !range.parse(getHeaderValue(response, HEADER_CONTENT_RANGE))) {
+				httpRequest.abort();
+				throw new IOException("Partial content without valid Content-Range: " + imageUri);
+			}
+			validators.refresh(eTag, lastModified, cacheControl);
+		} else {
+			if (range != null) {
+				// Length of compressed response isn't length of image
+				range.set(0, isGzipEncoded(entity) ? -1 : entity.getContentLength());
+			}
+			validators.set(eTag, lastModified, cacheControl);
+		}
+
+		InputStream imageStream = new ConnectionReleasingInputStream(entity.getContent(), httpRequest);
+		if (isGzipEncoded(entity)) {
+			imageStream = new GZIPInputStream(imageStream, BUFFER_SIZE);
+		}
+		return new FlushedInputStream(new BufferedInputStream(imageStream, BUFFER_SIZE));
+	}
+
+	/** Closes idle connections and shuts down connection pool. Downloader can't be used after this call. */
+	public void shutdown() {
+		httpClient.getConnectionManager().shutdown();
+	}
+
+	private static boolean isGzipEncoded(HttpEntity entity) {
+		Header contentEncoding = entity.getContentEncoding();
+		return contentEncoding != null && ENCODING_GZIP.equalsIgnoreCase(contentEncoding.getValue());
+	}
+
+	private static String getHeaderValue(HttpResponse response, String name) {
+		Header header = response.getFirstHeader(name);
+		return header == null ? null : header.getValue();
+	}
+
+	/**
+	 * Stream of response entity. On closing it returns connection into pool if entity was read to the end (or only few
+	 * bytes remain unread, e.g. trailer of gzip stream), otherwise it aborts request.
+	 */
+	private static class ConnectionReleasingInputStream extends FilterInputStream {
+
+		/** Max number of unread bytes which are read on closing to keep connection alive */
+		private static final int MAX_BYTES_TO_DRAIN = 2 * 1024;
+
+		private final HttpGet request;
+		private boolean endOfStream = false;
+
+		ConnectionReleasingInputStream(InputStream in, HttpGet request) {
+			super(in);
+			this.request = request;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b == -1) endOfStream = true;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException {
+			int read = in.read(buffer, offset, count);
+			if (read == -1) endOfStream = true;
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!endOfStream) {
+				drain();
+			}
+			if (endOfStream) {
+				// Entity is consumed, so connection is returned into pool
+				in.close();
+			} else {
+				// Reading the rest of entity is more expensive than new connection
+				request.abort();
+			}
+		}
+
+		private void drain() {
+			byte[] buffer = new byte[MAX_BYTES_TO_DRAIN];
+			int drained = 0;
+			try {
+				while (drained < MAX_BYTES_TO_DRAIN) {
+					int read = read(buffer, 0, MAX_BYTES_TO_DRAIN - drained);
+					if (read == -1) break;
+					drained += read;
+				}
+			} catch (IOException e) {
+				// Connection is broken, request will be aborted
+			}
+		}
+	}
+}
@@ -3,6 +3,7 @@ package cm.aptoide.com.nostra13.universalimageloader.core.download;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URLConnection;
 
@@ -20,6 +21,8 @@ public class URLConnectionImageDownloader extends ImageDownloader {
 	/** {@value} */
 	public static final int DEFAULT_HTTP_READ_TIMEOUT = 20 * 1000; // milliseconds
 
+	private static final int HTTP_REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+
 	private int connectTimeout;
 	private int readTimeout;
 
@@ -34,9 +37,68 @@ public class URLConnectionImageDownloader extends ImageDownloader {
 
 	@Override
 	public InputStream getStreamFromNetwork(URI imageUri) throws IOException {
+		URLConnection conn = openConnection(imageUri);
+		return new FlushedInputStream(new BufferedInputStream(conn.getInputStream(), BUFFER_SIZE));
+	}
+
+	@Override
+	protected InputStream getStreamFromNetworkIfModified(URI imageUri, CacheValidators validators) throws IOException {
+		URLConnection conn = openConnection(imageUri);
+		if (validators.getETag() != null) {
+			conn.setRequestProperty(HEADER_IF_NONE_MATCH, validators.getETag());
+		}
+		if (validators.getLastModified() != null) {
+			conn.setRequestProperty(HEADER_IF_MODIFIED_SINCE, validators.getLastModified());
+		}
+
+		if (conn instanceof HttpURLConnection && ((HttpURLConnection) conn).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+			validators.refresh(conn.getHeaderField(HEADER_ETAG), conn.getHeaderField(HEADER_LAST_MODIFIED), conn.getHeaderField(HEADER_CACHE_CONTROL));
+			((HttpURLConnection) conn).disconnect();
+			return null;
+		}
+		InputStream imageStream = conn.getInputStream();
+		validators.set(conn.getHeaderField(HEADER_ETAG), conn.getHeaderField(HEADER_LAST_MODIFIED), conn.getHeaderField(HEADER_CACHE_CONTROL));
+		return new FlushedInputStream(new BufferedInputStream(imageStream, BUFFER_SIZE));
+	}
+
+	@Override
+	protected InputStream getStreamFromNetworkFromOffset(URI imageUri, ContentRange range, CacheValidators validators) throws IOException {
+		URLConnection conn = openConnection(imageUri);
+		String ifRangeValidator = validators.getIfRangeValidator();
+		if (range.getOffset() > 0 && ifRangeValidator != null) {
+			// Range is counted in bytes of not encoded image
+			conn.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_IDENTITY);
+			conn.setRequestProperty(HEADER_RANGE, "bytes=" + range.getOffset() + "-");
+			conn.setRequestProperty(HEADER_IF_RANGE, ifRangeValidator);
+
+			if (conn instanceof HttpURLConnection && ((HttpURLConnection) conn).getResponseCode() == HTTP_REQUESTED_RANGE_NOT_SATISFIABLE) {
+				// Partial content is stale, the whole image is downloaded
+				((HttpURLConnection) conn).disconnect();
+				range.set(0, -1);
+				return getStreamFromNetworkFromOffset(imageUri, range, validators);
+			}
+		}
+
+		InputStream imageStream = conn.getInputStream();
+		boolean partialContent = conn instanceof HttpURLConnection && ((HttpURLConnection) conn).getResponseCode() == HttpURLConnection.HTTP_PARTIAL;
+		if (partialContent && range.parse(conn.getHeaderField(HEADER_CONTENT_RANGE))) {
+			validators.refresh(conn.getHeaderField(HEADER_ETAG), conn.getHeaderField(HEADER_LAST_MODIFIED), conn.getHeaderField(HEADER_CACHE_CONTROL));
+		} else if (partialContent) {
+			imageStream.close();
+			throw new IOException("Partial content without valid Content-Range: " + imageUri);
+		} else {
+			// Length of encoded (compressed) response isn't length of image
+			boolean encoded = conn.getContentEncoding() != null && !ENCODING_IDENTITY.equalsIgnoreCase(conn.getContentEncoding());
+			range.set(0, encoded ? -1 : conn.getContentLength());
+			validators.set(conn.getHeaderField(HEADER_ETAG), conn.getHeaderField(HEADER_LAST_MODIFIED), conn.getHeaderField(HEADER_CACHE_CONTROL));
+		}
+		return new FlushedInputStream(new BufferedInputStream(imageStream, BUFFER_SIZE));
+	}
+
+	private URLConnection openConnection(URI imageUri) throws IOException {
 		URLConnection conn = imageUri.toURL().openConnection();
 		conn.setConnectTimeout(connectTimeout);
 		conn.setReadTimeout(readTimeout);
-		return new FlushedInputStream(new BufferedInputStream(conn.getInputStream(), BUFFER_SIZE));
+		return conn;
 	}
-}
\ No newline at end of file
+}
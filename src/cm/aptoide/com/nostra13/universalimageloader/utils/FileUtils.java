@@ -1,5 +1,6 @@
 package cm.aptoide.com.nostra13.universalimageloader.utils;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -12,10 +13,32 @@ import java.io.OutputStream;
 public final class FileUtils {
 
 	private static final int BUFFER_SIZE = 8 * 1024; // 8 KB 
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
 
 	private FileUtils() {
 	}
 
+	/**
+	 * Returns temporary file for writing of incoming file. File is written into temporary file and then is
+	 * {@linkplain #commitTempFile(File, File) renamed}, so partially written file never appears under its name.
+	 */
+	public static File getTempFile(File file) {
+		return new File(file.getPath() + TEMP_FILE_SUFFIX);
+	}
+
+	/** Renames temporary file to target file (replaces it). Temporary file is deleted if renaming failed. */
+	public static boolean commitTempFile(File tempFile, File targetFile) {
+		if (tempFile.renameTo(targetFile)) {
+			return true;
+		}
+		targetFile.delete();
+		if (tempFile.renameTo(targetFile)) {
+			return true;
+		}
+		tempFile.delete();
+		return false;
+	}
+
 	public static void copyStream(InputStream is, OutputStream os) throws IOException {
 		byte[] bytes = new byte[BUFFER_SIZE];
 		while (true) {